@@ -0,0 +1,477 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static etherip.EtherNetIP.logger;
+import static etherip.protocol.Encapsulation.Command.SendRRData;
+import static etherip.protocol.Encapsulation.Command.UnRegisterSession;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import etherip.data.CipException;
+import etherip.data.Identity;
+import etherip.protocol.CIPMultiRequestProtocol;
+import etherip.protocol.CIPReadRequest;
+import etherip.protocol.Encapsulation;
+import etherip.protocol.EventLoop;
+import etherip.protocol.EventLoopConnection;
+import etherip.protocol.GetIdentityProtocol;
+import etherip.protocol.MRChipReadProtocol;
+import etherip.protocol.MRChipWriteFragmentedProtocol;
+import etherip.protocol.MRChipWriteProtocol;
+import etherip.protocol.MessageRouterProtocol;
+import etherip.protocol.ProtocolAdapter;
+import etherip.protocol.RegisterSession;
+import etherip.protocol.SendRRDataProtocol;
+import etherip.types.CIPData;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+
+/**
+ * Asynchronous API for an EtherNet/IP device
+ * <p>
+ * Like {@link EtherNetIP}, but methods return a {@link CompletableFuture} instead of waiting for the result. Requests are handled by an {@link EventLoop}, so many devices can be accessed
+ * concurrently without a thread per device. Requests to one device are handled one at a time in the order they were submitted.
+ * <p>
+ * Each request times out after the timeout of this API, see {@link #withTimeout(long, TimeUnit)}. Cancelling a future removes its requests if they have not been sent, otherwise the response is
+ * ignored.
+ * <p>
+ * Futures complete on the event loop thread. Dependent stages that block must use an <code>...Async</code> method with their own executor.
+ * <p>
+ * Tag values that do not fit one message are written in fragments. Reading them requires {@link EtherNetIP#readTagFragmented(String, short)}.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AsyncEtherNetIP implements AutoCloseable
+{
+    final private String address;
+    final private int slot;
+    final private EventLoopConnection connection;
+    final private long timeout_ms;
+
+    /**
+     * Initialize
+     * <p>
+     * Starts to connect via TCP. Call {@link #connect()} before other requests.
+     *
+     * @param loop
+     *            {@link EventLoop} that may be shared by many devices
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @throws Exception
+     *             on error
+     */
+    public AsyncEtherNetIP(final EventLoop loop, final String address,
+            final int slot) throws Exception
+    {
+        this(address, slot, loop.connectTcp(address, slot), 2000);
+    }
+
+    private AsyncEtherNetIP(final String address, final int slot,
+            final EventLoopConnection connection, final long timeout_ms)
+    {
+        this.address = address;
+        this.slot = slot;
+        this.connection = connection;
+        this.timeout_ms = timeout_ms;
+    }
+
+    /**
+     * Get API with a different timeout
+     * <p>
+     * The returned API uses the same connection, only the requests submitted through it use the new timeout, for example
+     * <code>device.withTimeout(500, TimeUnit.MILLISECONDS).readTag("fast")</code>.
+     *
+     * @param timeout
+     *            Timeout for each network request
+     * @param unit
+     *            Unit of the timeout
+     * @return {@link AsyncEtherNetIP}
+     */
+    public AsyncEtherNetIP withTimeout(final long timeout, final TimeUnit unit)
+    {
+        return new AsyncEtherNetIP(this.address, this.slot, this.connection,
+                unit.toMillis(timeout));
+    }
+
+    /** @return {@link EventLoopConnection} */
+    public EventLoopConnection getConnection()
+    {
+        return this.connection;
+    }
+
+    /**
+     * Submit requests
+     *
+     * @param requests
+     *            Requests to submit
+     * @param result
+     *            Called on success of all requests to obtain the result
+     * @return {@link CompletableFuture} for the result
+     */
+    private <T> CompletableFuture<T> submit(final Encapsulation[] requests,
+            final Callable<T> result)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(requests.length);
+        for (final Encapsulation request : requests)
+        {
+            this.connection.submit(request, this.timeout_ms, error ->
+            {
+                if (error != null)
+                {
+                    future.completeExceptionally(error);
+                }
+                else if (remaining.decrementAndGet() == 0)
+                {
+                    try
+                    {
+                        future.complete(result.call());
+                    }
+                    catch (final Exception ex)
+                    {
+                        future.completeExceptionally(ex);
+                    }
+                }
+            });
+        }
+        future.whenComplete((value, error) ->
+        {
+            // When cancelled or failed, don't send what's still queued
+            if (error != null)
+            {
+                for (final Encapsulation request : requests)
+                {
+                    this.connection.cancel(request);
+                }
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> submit(final Encapsulation request,
+            final Callable<T> result)
+    {
+        return this.submit(new Encapsulation[] { request }, result);
+    }
+
+    /**
+     * Register session
+     *
+     * @return {@link CompletableFuture} that completes once the device can be used
+     */
+    public CompletableFuture<Void> connect()
+    {
+        final RegisterSession register = new RegisterSession();
+        return this.submit(register, () ->
+        {
+            this.connection.setSession(register.getSession());
+            return null;
+        });
+    }
+
+    /** @return {@link CompletableFuture} for the {@link Identity} of the device */
+    public CompletableFuture<Identity> getIdentity()
+    {
+        final GetIdentityProtocol attr_proto = new GetIdentityProtocol();
+        final Encapsulation encap = new Encapsulation(SendRRData,
+                this.connection.getSession(),
+                new SendRRDataProtocol(new MessageRouterProtocol(
+                        CNService.Get_Attribute_All, CNPath.Identity(),
+                        attr_proto)));
+        return this.submit(encap, attr_proto::getValue);
+    }
+
+    /**
+     * Read a single scalar tag
+     *
+     * @param tag
+     *            Name of tag
+     * @return {@link CompletableFuture} for the current value of the tag
+     */
+    public CompletableFuture<CIPData> readTag(final String tag)
+    {
+        return this.readTag(tag, (short) 1);
+    }
+
+    /**
+     * Read a single array tag
+     *
+     * @param tag
+     *            Name of tag
+     * @param count
+     *            Number of array elements to read
+     * @return {@link CompletableFuture} for the current value of the tag
+     */
+    public CompletableFuture<CIPData> readTag(final String tag,
+            final short count)
+    {
+        return this.readTag(this.connection.createReadRequest(tag, count));
+    }
+
+    /**
+     * Read a tag
+     *
+     * @param request
+     *            Definition of the read request
+     * @return {@link CompletableFuture} for the current value of the tag
+     */
+    public CompletableFuture<CIPData> readTag(final CIPReadRequest request)
+    {
+        final MRChipReadProtocol cip_read = new MRChipReadProtocol(request);
+        return this.submit(this.connection.createEncapsulation(cip_read),
+                cip_read::getData);
+    }
+
+    /**
+     * Read multiple scalar tags
+     * <p>
+     * Tags are read in as few network transactions as the message size limits allow.
+     *
+     * @param tags
+     *            Tag names
+     * @return {@link CompletableFuture} for the current values of the tags
+     */
+    public CompletableFuture<CIPData[]> readTags(final String... tags)
+    {
+        final CIPReadRequest[] requests = new CIPReadRequest[tags.length];
+        for (int i = 0; i < tags.length; ++i)
+        {
+            requests[i] = this.connection.createReadRequest(tags[i],
+                    (short) 1);
+        }
+        return this.readTags(requests);
+    }
+
+    /**
+     * Read multiple tags
+     * <p>
+     * Tags are read in as few network transactions as the message size limits allow, based on the expected response size of each request. Reads whose replies turn out to be too large are
+     * repeated.
+     *
+     * @param requests
+     *            Definitions of the read requests
+     * @return {@link CompletableFuture} for the current values of the tags
+     */
+    public CompletableFuture<CIPData[]> readTags(
+            final CIPReadRequest... requests)
+    {
+        final MRChipReadProtocol[] reads = new MRChipReadProtocol[requests.length];
+        final int[] response_sizes = new int[requests.length];
+        for (int i = 0; i < reads.length; ++i)
+        {
+            reads[i] = new MRChipReadProtocol(requests[i]);
+            response_sizes[i] = requests[i].getResponseSize();
+        }
+        final CompletableFuture<CIPData[]> result = new CompletableFuture<>();
+        this.readTags(reads, reads, response_sizes, 0, result);
+        return result;
+    }
+
+    /**
+     * Submit reads, repeat those whose replies did not fit
+     *
+     * @param reads
+     *            All reads
+     * @param pending
+     *            Reads to submit
+     * @param response_sizes
+     *            Expected response size of each pending read
+     * @param attempt
+     *            0 for the initial submission, 1 for the first repetition, ..
+     * @param result
+     *            Completed with the values of all reads
+     */
+    private void readTags(final MRChipReadProtocol[] reads,
+            final MessageRouterProtocol[] pending, final int[] response_sizes,
+            final int attempt, final CompletableFuture<CIPData[]> result)
+    {
+        final CompletableFuture<Void> done = this.submit(
+                this.connection.createMultiRequest(pending, response_sizes),
+                () -> null);
+        // Cancelling the result cancels the pending requests
+        result.whenComplete((values, error) ->
+        {
+            if (error != null)
+            {
+                done.cancel(false);
+            }
+        });
+        done.whenComplete((ignored, error) ->
+        {
+            if (error != null && !(error instanceof CipException))
+            {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (error != null)
+            {
+                final MessageRouterProtocol[] repeat = CIPMultiRequestProtocol
+                        .getReadsToRepeat(reads);
+                final int size = this.connection
+                        .getRepeatedReadResponseSize(attempt);
+                if (repeat.length > 0 && size > 0)
+                {
+                    final int[] sizes = new int[repeat.length];
+                    Arrays.fill(sizes, size);
+                    this.readTags(reads, repeat, sizes, attempt + 1, result);
+                    return;
+                }
+                if (attempt == 0)
+                {
+                    result.completeExceptionally(error);
+                    return;
+                }
+            }
+            try
+            {
+                // After repeating some reads, check all of them
+                if (attempt > 0)
+                {
+                    CIPMultiRequestProtocol.checkReplies(reads,
+                            error != null ? (CipException) error
+                                    : new Exception("Missing reply"));
+                }
+                final CIPData[] results = new CIPData[reads.length];
+                for (int i = 0; i < results.length; ++i)
+                {
+                    results[i] = reads[i].getData();
+                }
+                result.complete(results);
+            }
+            catch (final Exception ex)
+            {
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * Write a tag
+     * <p>
+     * Values that do not fit one message are written in fragments.
+     *
+     * @param tag
+     *            Tag name
+     * @param value
+     *            Value to write
+     * @return {@link CompletableFuture} that completes once the value has been written
+     */
+    public CompletableFuture<Void> writeTag(final String tag,
+            final CIPData value)
+    {
+        final CNPath path = this.connection.getTagPath(tag);
+        final MRChipWriteProtocol cip_write = new MRChipWriteProtocol(path,
+                value);
+        if (cip_write.getRequestSize() <= this.connection.getMaxMessageSize())
+        {
+            return this.submit(this.connection.createEncapsulation(cip_write),
+                    () -> null);
+        }
+
+        final MRChipWriteFragmentedProtocol[] writes;
+        try
+        {
+            writes = MRChipWriteFragmentedProtocol.createFragments(tag, path,
+                    value, this.connection.getMaxMessageSize(), null);
+        }
+        catch (final Exception ex)
+        {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        final Encapsulation[] encaps = new Encapsulation[writes.length];
+        for (int i = 0; i < writes.length; ++i)
+        {
+            encaps[i] = this.connection.createEncapsulation(writes[i]);
+        }
+        return this.submit(encaps, () -> null);
+    }
+
+    /**
+     * Write multiple tags
+     * <p>
+     * Tags are written in as few network transactions as the message size limits allow.
+     *
+     * @param tags
+     *            Tag names to write
+     * @param values
+     *            Values to write
+     * @return {@link CompletableFuture} that completes once all values have been written
+     */
+    public CompletableFuture<Void> writeTags(final String[] tags,
+            final CIPData[] values)
+    {
+        if (tags.length != values.length)
+        {
+            throw new IllegalArgumentException("Got " + tags.length
+                    + " tags but " + values.length + " values");
+        }
+        final MRChipWriteProtocol[] writes = new MRChipWriteProtocol[tags.length];
+        final int[] response_sizes = new int[tags.length];
+        for (int i = 0; i < tags.length; ++i)
+        {
+            writes[i] = new MRChipWriteProtocol(
+                    this.connection.getTagPath(tags[i]), values[i]);
+            response_sizes[i] = MRChipWriteProtocol.RESPONSE_SIZE;
+        }
+        return this.submit(
+                this.connection.createMultiRequest(writes, response_sizes),
+                () -> null);
+    }
+
+    /**
+     * Close connection to device
+     * <p>
+     * Un-registers the session after the requests submitted so far have been handled, then closes the connection.
+     */
+    @Override
+    public void close() throws Exception
+    {
+        final int session = this.connection.getSession();
+        if (session == 0 || !this.connection.isOpen())
+        {
+            this.connection.close();
+            return;
+        }
+        this.connection.send(new Encapsulation(UnRegisterSession, session,
+                new ProtocolAdapter()), error ->
+                {
+                    if (error != null)
+                    {
+                        logger.log(Level.WARNING, "Error un-registering session: "
+                                + error.getLocalizedMessage(), error);
+                    }
+                    // Cannot read after this point because device will close the connection
+                    try
+                    {
+                        this.connection.close();
+                    }
+                    catch (final Exception ex)
+                    {
+                        logger.log(Level.WARNING, "Error closing connection", ex);
+                    }
+                });
+    }
+
+    /** @return String representation for debugging */
+    @Override
+    public String toString()
+    {
+        return "AsyncEtherNetIP " + this.address + ", slot " + this.slot;
+    }
+}
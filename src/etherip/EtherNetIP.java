@@ -9,24 +9,39 @@ package etherip;
 
 import static etherip.protocol.Encapsulation.Command.SendRRData;
 import static etherip.protocol.Encapsulation.Command.UnRegisterSession;
-import static etherip.types.CNPath.MessageRouter;
+import static etherip.types.CNPath.ConnectionManager;
 import static etherip.types.CNService.Get_Attribute_All;
 import static etherip.types.CNService.Get_Attribute_Single;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import etherip.data.CipException;
 import etherip.data.ConnectionData;
 import etherip.data.EthernetLink;
+import etherip.data.FragmentedWriteException;
 import etherip.data.Identity;
 import etherip.data.InterfaceConfiguration;
+import etherip.data.Symbol;
+import etherip.data.SymbolTable;
 import etherip.data.TcpIpInterface;
-import etherip.protocol.CIPMultiRequestProtocol;
+import etherip.protocol.BlockingTcpConnection;
+import etherip.protocol.CIPReadRequest;
 import etherip.protocol.Connection;
 import etherip.protocol.ConnectionDataProtocol;
 import etherip.protocol.Encapsulation;
+import etherip.protocol.EventLoop;
+import etherip.protocol.ForwardCloseProtocol;
+import etherip.protocol.ForwardOpenProtocol;
+import etherip.protocol.GetAttributeListProtocol;
 import etherip.protocol.GetConnectionDataProtocol;
 import etherip.protocol.GetEthernetLinkProtocol;
 import etherip.protocol.GetHexStringDataProtocol;
@@ -40,19 +55,25 @@ import etherip.protocol.GetTcpIpInterfaceProtocol;
 import etherip.protocol.ListIdenties;
 import etherip.protocol.ListServices;
 import etherip.protocol.ListServicesProtocol.Service;
+import etherip.protocol.MRChipReadFragmentedProtocol;
 import etherip.protocol.MRChipReadProtocol;
+import etherip.protocol.MRChipWriteFragmentedProtocol;
 import etherip.protocol.MRChipWriteProtocol;
+import etherip.protocol.MRReadTemplateProtocol;
+import etherip.protocol.MRSymbolListProtocol;
 import etherip.protocol.MessageRouterProtocol;
 import etherip.protocol.ProtocolAdapter;
 import etherip.protocol.RegisterSession;
 import etherip.protocol.SendRRDataProtocol;
 import etherip.protocol.TcpConnection;
+import etherip.protocol.TemplateAttributesProtocol;
 import etherip.protocol.UdpConnection;
 import etherip.protocol.UnconnectedSendProtocol;
 import etherip.types.CIPData;
 import etherip.types.CNClassPath;
 import etherip.types.CNPath;
 import etherip.types.CNService;
+import etherip.types.Template;
 
 /**
  * API for communicating via EtherNet/IP
@@ -67,10 +88,22 @@ public class EtherNetIP implements AutoCloseable
     final public static Logger logger = Logger
             .getLogger(EtherNetIP.class.getName());
 
+    /** Attributes of the controller object 0xAC that change when tags are edited */
+    final private static short[] SYMBOL_SIGNATURE_ATTRIBUTES = { 1, 2, 3, 4, 10 };
+
     final private String address;
     final private int slot;
     private Connection connection = null;
 
+    /** Templates that have been read, by instance
+     *  <p>
+     *  SYNC on access
+     */
+    final private Map<Integer, Template> templates = new HashMap<>();
+
+    /** Batches single-tag reads and writes, or <code>null</code> */
+    private volatile TagBatcher batcher = null;
+
     /**
      * Initialize
      *
@@ -92,6 +125,31 @@ public class EtherNetIP implements AutoCloseable
         this.registerSession();
     }
 
+    /**
+     * Connect to device via TCP with blocking socket I/O, register session
+     * <p>
+     * Suitable for many connections handled by virtual threads.
+     *
+     * @see BlockingTcpConnection
+     */
+    public void connectTcpBlocking() throws Exception
+    {
+        this.connection = new BlockingTcpConnection(this.address, this.slot);
+        this.registerSession();
+    }
+
+    /**
+     * Connect to device via TCP handled by an {@link EventLoop}, register session
+     *
+     * @param loop
+     *            {@link EventLoop} that may be shared by many devices
+     */
+    public void connectTcp(final EventLoop loop) throws Exception
+    {
+        this.connection = loop.connectTcp(this.address, this.slot);
+        this.registerSession();
+    }
+
     /**
      * Connect to device via UDP, register session
      */
@@ -100,6 +158,70 @@ public class EtherNetIP implements AutoCloseable
         this.connection = new UdpConnection(this.address, this.slot);
     }
 
+    /**
+     * Allow use by multiple threads
+     * <p>
+     * Calls from several threads are queued and handled one after the other by an I/O thread, in the order they were made. Without a queue, only one thread at a time may use this
+     * {@link EtherNetIP}. Must be called after connecting, before other threads use this {@link EtherNetIP}.
+     *
+     * @param capacity
+     *            Maximum number of waiting calls, 0 to remove the queue
+     * @throws Exception
+     *             on error
+     * @see Connection#setRequestQueue(int)
+     */
+    public void setRequestQueue(final int capacity) throws Exception
+    {
+        this.connection.setRequestQueue(capacity);
+    }
+
+    /**
+     * Combine concurrent single-tag reads and writes
+     * <p>
+     * When enabled, {@link #readTag(String)} and {@link #writeTag(String, CIPData)} from several threads are combined into multi-requests, see {@link TagBatcher}. Other calls are not affected,
+     * so threads that also use those should enable the request queue, see {@link #setRequestQueue(int)}.
+     *
+     * @param window_ms
+     *            Time that the first request of a batch waits for more requests
+     * @param max_batch
+     *            Number of requests that trigger a batch before the window has passed, 0 to disable batching
+     */
+    public void setBatching(final long window_ms, final int max_batch)
+    {
+        this.batcher = max_batch > 0
+                ? new TagBatcher(this.connection, window_ms, max_batch)
+                : null;
+    }
+
+    /**
+     * Configure pipelining of requests
+     * <p>
+     * Reading or writing many tags can require several network transactions. With a depth above 1, up to that many requests are sent before waiting for responses. Only supported for TCP.
+     *
+     * @param depth
+     *            Maximum number of outstanding requests, 1 to disable pipelining
+     */
+    public void setPipelineDepth(final int depth)
+    {
+        this.connection.setPipelineDepth(depth);
+    }
+
+    /**
+     * Configure buffer sizes
+     * <p>
+     * Must be called after connecting. Larger buffers allow more tags per network transaction, limited by the message size of the protocol. {@link #forwardOpen()} enlarges the buffers as needed for
+     * the negotiated connection size.
+     *
+     * @param send_size
+     *            Size of the buffer for requests
+     * @param receive_size
+     *            Size of the buffer for responses
+     */
+    public void setBufferSizes(final int send_size, final int receive_size)
+    {
+        this.connection.setBufferSizes(send_size, receive_size);
+    }
+
     /**
      * List supported services
      * <p>
@@ -160,6 +282,81 @@ public class EtherNetIP implements AutoCloseable
         this.connection.setSession(register.getSession());
     }
 
+    /**
+     * Open connection for connected messaging
+     * <p>
+     * Attempts a Large Forward_Open, falling back to a standard Forward_Open if the device does not support that. The buffers of the connection are enlarged to the negotiated connection size.
+     * <p>
+     * From then on, tags are read and written on the connection instead of sending unconnected messages.
+     *
+     * @throws Exception
+     *             on error
+     */
+    public void forwardOpen() throws Exception
+    {
+        try
+        {
+            this.forwardOpen(ForwardOpenProtocol.LARGE_CONNECTION_SIZE);
+            return;
+        }
+        catch (final CipException ex)
+        {
+            logger.log(Level.FINE,
+                    "Large Forward Open failed, trying standard Forward Open",
+                    ex);
+        }
+        this.forwardOpen(ForwardOpenProtocol.STANDARD_CONNECTION_SIZE);
+    }
+
+    /**
+     * Open connection for connected messaging
+     *
+     * @param size
+     *            Requested connection size in bytes
+     * @throws Exception
+     *             on error
+     */
+    public void forwardOpen(final int size) throws Exception
+    {
+        if (this.connection.isConnected())
+        {
+            throw new IllegalStateException("Connection is already open");
+        }
+        final ForwardOpenProtocol forward_open = new ForwardOpenProtocol(
+                this.slot, size);
+        final Encapsulation encap = new Encapsulation(SendRRData,
+                this.connection.getSession(),
+                new SendRRDataProtocol(new MessageRouterProtocol(
+                        forward_open.getService(), ConnectionManager(),
+                        forward_open)));
+        this.connection.execute(encap);
+        this.connection.setConnected(forward_open);
+        logger.log(Level.FINE, "Opened connection of {0} bytes", size);
+    }
+
+    /**
+     * Close connection that was opened by {@link #forwardOpen()}, returning to unconnected messages
+     *
+     * @throws Exception
+     *             on error
+     */
+    public void forwardClose() throws Exception
+    {
+        final ForwardOpenProtocol forward_open = this.connection.getConnected();
+        if (forward_open == null)
+        {
+            return;
+        }
+        this.connection.setConnected(null);
+        final Encapsulation encap = new Encapsulation(SendRRData,
+                this.connection.getSession(),
+                new SendRRDataProtocol(new MessageRouterProtocol(
+                        CNService.CM_Forward_Close, ConnectionManager(),
+                        new ForwardCloseProtocol(this.slot,
+                                forward_open.getSerial()))));
+        this.connection.execute(encap);
+    }
+
     // Turning off the formatter for the gradual form layout in methods.
     // With this style more readable the structure of the encapsulation in the packet.
     //@formatter:off
@@ -413,13 +610,185 @@ public class EtherNetIP implements AutoCloseable
         return attr_proto.getValue();
     }
 
+    /** Read signature of the controller's tags
+     *  <p>
+     *  Obtains attributes of the controller object 0xAC which change
+     *  whenever tags or programs are edited.
+     *  @return Signature of the controller's tags
+     *  @throws Exception on error
+     */
+    public String readSymbolSignature() throws Exception
+    {
+        final GetAttributeListProtocol attributes = new GetAttributeListProtocol(SYMBOL_SIGNATURE_ATTRIBUTES);
+        this.connection.execute(this.connection.createEncapsulation(
+            new MessageRouterProtocol(CNService.Get_Attribute_List, CNPath.ControllerInfo().instance(1), attributes)));
+        final StringBuilder signature = new StringBuilder();
+        for (byte b : attributes.getData())
+            signature.append(String.format("%02X", b));
+        return signature.toString();
+    }
+
+    /** Read the controller's symbol table
+     *  <p>
+     *  Lists all controller-scoped tags and all program-scoped tags
+     *  with their Symbol Object instance, type and dimensions.
+     *  @return {@link SymbolTable}
+     *  @throws Exception on error
+     */
+    public SymbolTable readSymbolTable() throws Exception
+    {
+        final SymbolTable symbols = new SymbolTable(this.readSymbolSignature());
+        final List<Symbol> programs = new ArrayList<>();
+        for (Symbol symbol : this.readSymbols(null))
+        {
+            symbols.add(symbol);
+            if (symbol.isProgram())
+                programs.add(symbol);
+        }
+        for (Symbol program : programs)
+            for (Symbol symbol : this.readSymbols(program.getName()))
+                symbols.add(symbol);
+        logger.log(Level.FINE, "Read {0}", symbols);
+        return symbols;
+    }
+
+    /** Read the controller's symbol table, using a cache file
+     *  <p>
+     *  When the cache file exists and its signature matches the controller,
+     *  the symbol table is loaded from the file.
+     *  Otherwise it is read from the controller and saved to the file.
+     *  @param cache Cache {@link File}
+     *  @return {@link SymbolTable}
+     *  @throws Exception on error
+     */
+    public SymbolTable readSymbolTable(final File cache) throws Exception
+    {
+        final String signature = this.readSymbolSignature();
+        if (cache.exists())
+        {
+            try
+            {
+                final SymbolTable symbols = SymbolTable.load(cache);
+                if (symbols.getSignature().equals(signature))
+                {
+                    logger.log(Level.FINE, "Loaded {0} from {1}", new Object[] { symbols, cache });
+                    return symbols;
+                }
+                logger.log(Level.FINE, "Symbol table in {0} is outdated", cache);
+            }
+            catch (final IOException ex)
+            {
+                logger.log(Level.WARNING, "Cannot load symbol table from " + cache, ex);
+            }
+        }
+        final SymbolTable symbols = this.readSymbolTable();
+        try
+        {
+            symbols.save(cache);
+        }
+        catch (final IOException ex)
+        {
+            logger.log(Level.WARNING, "Cannot save symbol table to " + cache, ex);
+        }
+        return symbols;
+    }
+
+    /** @param program Program name, or <code>null</code> for controller-scoped symbols
+     *  @return Symbols
+     *  @throws Exception on error
+     */
+    private List<Symbol> readSymbols(final String program) throws Exception
+    {
+        final List<Symbol> symbols = new ArrayList<>();
+        int start = 0;
+        MRSymbolListProtocol list;
+        do
+        {
+            list = new MRSymbolListProtocol(program, start);
+            this.connection.execute(this.connection.createEncapsulation(list));
+            for (Symbol symbol : list.getSymbols())
+            {
+                symbols.add(symbol);
+                start = Math.max(start, symbol.getInstance() + 1);
+            }
+            if (! list.isComplete()  &&  list.getSymbols().isEmpty())
+                throw new Exception("Partial symbol list did not return any symbols");
+        }
+        while (! list.isComplete());
+        return symbols;
+    }
+
+    /** Read template of a user-defined structure
+     *  <p>
+     *  Templates are cached, so each template is only read once.
+     *  @param instance Template Object instance, see {@link Symbol#getTypeCode()}
+     *  @return {@link Template}
+     *  @throws Exception on error
+     */
+    public Template readTemplate(final int instance) throws Exception
+    {
+        synchronized (this.templates)
+        {
+            final Template template = this.templates.get(instance);
+            if (template != null)
+                return template;
+        }
+
+        final TemplateAttributesProtocol attributes = new TemplateAttributesProtocol();
+        this.connection.execute(this.connection.createEncapsulation(
+            new MessageRouterProtocol(CNService.Get_Attribute_List, CNPath.Template().instance(instance), attributes)));
+
+        final int size = attributes.getDefinitionSize();
+        final ByteBuffer definition = ByteBuffer.allocate(size);
+        definition.order(Connection.BYTE_ORDER);
+        MRReadTemplateProtocol read;
+        do
+        {
+            read = new MRReadTemplateProtocol(instance, definition.position(), size - definition.position(), definition);
+            this.connection.execute(this.connection.createEncapsulation(read));
+            if (! read.isComplete()  &&  read.getFragmentSize() <= 0)
+                throw new Exception("Partial transfer of template " + instance + " did not return any data");
+        }
+        while (! read.isComplete());
+        definition.flip();
+
+        final Template template = Template.decode(instance, attributes.getHandle(), attributes.getMemberCount(),
+                                                  attributes.getStructureSize(), definition);
+        logger.log(Level.FINE, "Read {0}", template);
+        synchronized (this.templates)
+        {
+            this.templates.put(instance, template);
+        }
+        return template;
+    }
+
+    /** Address tags by their Symbol Object instance
+     *  <p>
+     *  Tags that are in the symbol table are then read and written
+     *  with a short class 0x6B instance path instead of their name,
+     *  which saves the device a name lookup and allows more tags per message.
+     *  Also applies to {@link TagList}s processed on this connection.
+     *  @param symbols {@link SymbolTable} obtained from {@link #readSymbolTable()},
+     *                 or <code>null</code> to address tags by name
+     */
+    public void setSymbolTable(final SymbolTable symbols)
+    {
+        this.connection.setSymbolTable(symbols);
+    }
+
 	/** Read a single scalar tag
+	 *  <p>
+	 *  Combined with concurrent calls when batching is enabled,
+	 *  see {@link #setBatching(long, int)}.
 	 *  @param tag Name of tag
 	 *  @return Current value of the tag
 	 *  @throws Exception on error
 	 */
 	public CIPData readTag(final String tag) throws Exception
 	{
+	    final TagBatcher batcher = this.batcher;
+	    if (batcher != null)
+	        return batcher.read(tag);
 		return this.readTag(tag, (short) 1);
 	}
 
@@ -431,19 +800,170 @@ public class EtherNetIP implements AutoCloseable
      */
 	public CIPData readTag(final String tag, final short count) throws Exception
 	{
-		final MRChipReadProtocol cip_read = new MRChipReadProtocol(tag, count);
-		final Encapsulation encap =
-			new Encapsulation(SendRRData, this.connection.getSession(),
-				new SendRRDataProtocol(
-					new UnconnectedSendProtocol(this.slot,
-					    cip_read)));
-		this.connection.execute(encap);
+		final MRChipReadProtocol cip_read = new MRChipReadProtocol(this.connection.getTagPath(tag), count);
+		try
+		{
+		    this.connection.execute(this.connection.createEncapsulation(cip_read));
+		}
+		catch (final CipException ex)
+		{
+		    if (ex.getStatusCode() != MRChipReadFragmentedProtocol.PARTIAL_TRANSFER)
+		        throw ex;
+		    logger.log(Level.FINE, "Tag {0} does not fit one message, reading fragments", tag);
+		    return this.readTagFragmented(tag, count);
+		}
 
 		return cip_read.getData();
 	}
 
+    /** Read a single array tag without copying its data
+     *  <p>
+     *  The returned value is a read-only view of the connection's receive buffer,
+     *  see {@link CIPData#isView()}.
+     *  It is only valid until the next request on this connection.
+     *  Use {@link CIPData#copy()} to keep it.
+     *  A tag that does not fit one message is read in fragments
+     *  and returned as a regular copy.
+     *  <p>
+     *  When a request queue is configured, see {@link #setRequestQueue(int)},
+     *  the receive buffer is shared by all threads and the value is returned as a copy.
+     *  @param tag Name of tag
+     *  @param count Number of array elements to read
+     *  @return Current value of the tag
+     *  @throws Exception on error
+     */
+    public CIPData readTagView(final String tag, final short count) throws Exception
+    {
+        final boolean view = ! this.connection.hasRequestQueue();
+        final MRChipReadProtocol cip_read = new MRChipReadProtocol(this.connection.getTagPath(tag), count, view);
+        try
+        {
+            this.connection.execute(this.connection.createEncapsulation(cip_read));
+        }
+        catch (final CipException ex)
+        {
+            if (ex.getStatusCode() != MRChipReadFragmentedProtocol.PARTIAL_TRANSFER)
+                throw ex;
+            return this.readTagFragmented(tag, count);
+        }
+        return cip_read.getData();
+    }
+
+    /** Read an array tag in fragments
+     *  <p>
+     *  Uses Read Tag Fragmented to handle arrays that do not fit one message.
+     *  @param tag Name of tag
+     *  @param count Number of array elements to read
+     *  @return Current value of the tag
+     *  @throws Exception on error
+     */
+    public CIPData readTagFragmented(final String tag, final short count) throws Exception
+    {
+        final int fragment = this.connection.getMaxMessageSize();
+        // Leave room for STRUCT detail at the start
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 2*fragment);
+        buffer.order(Connection.BYTE_ORDER);
+        buffer.position(2);
+        final CNPath path = this.connection.getTagPath(tag);
+        MRChipReadFragmentedProtocol read;
+        do
+        {
+            if (buffer.remaining() < fragment)
+            {
+                final ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+                larger.order(Connection.BYTE_ORDER);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            read = new MRChipReadFragmentedProtocol(path, count, buffer.position() - 2, buffer);
+            this.connection.execute(this.connection.createEncapsulation(read));
+            checkFragment(tag, read);
+        }
+        while (! read.isComplete());
+
+        final int start;
+        if (read.getType() == CIPData.Type.STRUCT)
+        {
+            buffer.putShort(0, read.getStructDetail());
+            start = 0;
+        }
+        else
+            start = 2;
+        final byte[] raw = new byte[buffer.position() - start];
+        buffer.flip();
+        buffer.position(start);
+        buffer.get(raw);
+        return new CIPData(read.getType(), raw);
+    }
+
+    /** Read an array tag into existing data
+     *  <p>
+     *  Uses Read Tag Fragmented to place the value of the tag
+     *  into the data without allocating a new {@link CIPData}.
+     *  @param tag Name of tag
+     *  @param data {@link CIPData} of the tag's type, receives as many elements as it holds
+     *  @throws Exception on error
+     */
+    public void readTag(final String tag, final CIPData data) throws Exception
+    {
+        final short count = (short) data.getElementCount();
+        final CNPath path = this.connection.getTagPath(tag);
+        int offset = 0;
+        MRChipReadFragmentedProtocol read;
+        do
+        {
+            read = new MRChipReadFragmentedProtocol(path, count, offset, data);
+            this.connection.execute(this.connection.createEncapsulation(read));
+            checkFragment(tag, read);
+            offset += read.getFragmentSize();
+        }
+        while (! read.isComplete());
+    }
 
-    /** Read multiple scalar tags in one network transaction
+    /** Read an array tag into a buffer
+     *  <p>
+     *  Uses Read Tag Fragmented to place the raw data of the tag
+     *  into the buffer, starting at its current position.
+     *  Numbers are in {@link Connection#BYTE_ORDER}.
+     *  For a STRUCT, the structure detail is not placed in the buffer.
+     *  @param tag Name of tag
+     *  @param count Number of array elements to read
+     *  @param buffer {@link ByteBuffer} with enough room for the data
+     *  @return Data type of the tag
+     *  @throws Exception on error
+     */
+    public CIPData.Type readTag(final String tag, final short count, final ByteBuffer buffer) throws Exception
+    {
+        final CNPath path = this.connection.getTagPath(tag);
+        final int start = buffer.position();
+        MRChipReadFragmentedProtocol read;
+        do
+        {
+            read = new MRChipReadFragmentedProtocol(path, count, buffer.position() - start, buffer);
+            this.connection.execute(this.connection.createEncapsulation(read));
+            checkFragment(tag, read);
+        }
+        while (! read.isComplete());
+        return read.getType();
+    }
+
+    /** @param tag Name of tag
+     *  @param read Fragmented read that was just executed
+     *  @throws Exception if a partial transfer did not make progress
+     */
+    private static void checkFragment(final String tag, final MRChipReadFragmentedProtocol read) throws Exception
+    {
+        if (! read.isComplete()  &&  read.getFragmentSize() <= 0)
+            throw new Exception("Partial transfer of tag " + tag + " did not return any data");
+    }
+
+
+    /** Read multiple scalar tags
+     *  <p>
+     *  Tags are read in as few network transactions as the message size limits allow,
+     *  based on the response sizes expected from the symbol table, if available.
+     *  Reads whose replies turn out to be too large are repeated.
      *  @param tags Tag names
      *  @return Current values of the tags
      *  @throws Exception on error
@@ -451,18 +971,14 @@ public class EtherNetIP implements AutoCloseable
 	public CIPData[] readTags(final String... tags) throws Exception
 	{
 	    final MRChipReadProtocol[] reads = new MRChipReadProtocol[tags.length];
+	    final int[] response_sizes = new int[tags.length];
 	    for (int i=0; i<reads.length; ++i)
         {
-            reads[i] = new MRChipReadProtocol(tags[i]);
+            reads[i] = new MRChipReadProtocol(this.connection.createReadRequest(tags[i], (short) 1));
+            response_sizes[i] = reads[i].getRequest().getResponseSize();
         }
 
-	    final Encapsulation encap =
-            new Encapsulation(SendRRData, this.connection.getSession(),
-                new SendRRDataProtocol(
-                    new UnconnectedSendProtocol(this.slot,
-                        new MessageRouterProtocol(CNService.CIP_MultiRequest, MessageRouter(),
-                            new CIPMultiRequestProtocol(reads)))));
-	    this.connection.execute(encap);
+	    this.executeMultiRequest(reads, response_sizes);
 
 	    final CIPData[] results = new CIPData[reads.length];
         for (int i=0; i<results.length; ++i)
@@ -473,24 +989,122 @@ public class EtherNetIP implements AutoCloseable
         return results;
     }
 
+    /** Create definition of a read request
+     *  <p>
+     *  The definition can be used with {@link #readTag(CIPReadRequest)}
+     *  and {@link #readTags(CIPReadRequest...)} over and over.
+     *  It uses the symbol table of this connection at the time
+     *  the definition is created.
+     *  @param tag Name of tag
+     *  @param count Number of array elements to read
+     *  @return {@link CIPReadRequest}
+     *  @throws Exception on error
+     */
+    public CIPReadRequest createReadRequest(final String tag, final short count) throws Exception
+    {
+        return this.connection.createReadRequest(tag, count);
+    }
+
+    /** Read a tag
+     *  @param request Definition of the read request
+     *  @return Current value of the tag
+     *  @throws Exception on error
+     */
+    public CIPData readTag(final CIPReadRequest request) throws Exception
+    {
+        final MRChipReadProtocol cip_read = new MRChipReadProtocol(request);
+        this.connection.execute(this.connection.createEncapsulation(cip_read));
+        return cip_read.getData();
+    }
+
+    /** Read multiple tags
+     *  <p>
+     *  Tags are read in as few network transactions as the message size limits allow,
+     *  based on the expected response size of each request.
+     *  Reads whose replies turn out to be too large are repeated.
+     *  @param requests Definitions of the read requests
+     *  @return Current values of the tags
+     *  @throws Exception on error
+     */
+    public CIPData[] readTags(final CIPReadRequest... requests) throws Exception
+    {
+        final MRChipReadProtocol[] reads = new MRChipReadProtocol[requests.length];
+        final int[] response_sizes = new int[requests.length];
+        for (int i=0; i<reads.length; ++i)
+        {
+            reads[i] = new MRChipReadProtocol(requests[i]);
+            response_sizes[i] = requests[i].getResponseSize();
+        }
+
+        this.executeMultiRequest(reads, response_sizes);
+
+        final CIPData[] results = new CIPData[reads.length];
+        for (int i=0; i<results.length; ++i)
+            results[i] = reads[i].getData();
+        return results;
+    }
+
 	/** Write a tag
+	 *  <p>
+	 *  Values that do not fit one message are written in fragments.
 	 *  @param tag Tag name
 	 *  @param value Value to write
 	 *  @throws Exception on error
 	 */
 	public void writeTag(final String tag, final CIPData value) throws Exception
 	{
-	    final MRChipWriteProtocol cip_write = new MRChipWriteProtocol(tag, value);
+	    final MRChipWriteProtocol cip_write = new MRChipWriteProtocol(this.connection.getTagPath(tag), value);
+	    if (cip_write.getRequestSize() > this.connection.getMaxMessageSize())
+	    {
+	        this.writeTagFragmented(tag, value, null);
+	        return;
+	    }
+	    final TagBatcher batcher = this.batcher;
+	    if (batcher != null)
+	    {
+	        batcher.write(tag, value);
+	        return;
+	    }
+        this.connection.execute(this.connection.createEncapsulation(cip_write));
+    }
 
-	    final Encapsulation encap =
-	            new Encapsulation(SendRRData, this.connection.getSession(),
-                    new SendRRDataProtocol(
-	                    new UnconnectedSendProtocol(this.slot,
-	                            cip_write)));
-        this.connection.execute(encap);
+    /** Write a tag in fragments
+     *  <p>
+     *  Uses Write Tag Fragmented to split the value by byte offset
+     *  into fragments that each fit one message.
+     *  The fragments are pipelined when the connection supports it,
+     *  see {@link #setPipelineDepth(int)}.
+     *  @param tag Tag name
+     *  @param value Value to write
+     *  @param listener {@link WriteProgressListener} or <code>null</code>
+     *  @throws FragmentedWriteException with the offset of the first fragment that was not written
+     *  @throws Exception on other errors
+     */
+    public void writeTagFragmented(final String tag, final CIPData value, final WriteProgressListener listener) throws Exception
+    {
+        final MRChipWriteFragmentedProtocol[] writes = MRChipWriteFragmentedProtocol.createFragments(
+                tag, this.connection.getTagPath(tag), value, this.connection.getMaxMessageSize(), listener);
+        final Encapsulation[] encaps = new Encapsulation[writes.length];
+        for (int i=0; i<writes.length; ++i)
+            encaps[i] = this.connection.createEncapsulation(writes[i]);
+        logger.log(Level.FINE, "Writing {0} bytes of tag {1} in {2} fragments",
+                   new Object[] { value.getDataSize(), tag, writes.length });
+        try
+        {
+            this.connection.execute(encaps);
+        }
+        catch (final Exception ex)
+        {
+            for (final MRChipWriteFragmentedProtocol write : writes)
+                if (! write.isDone())
+                    throw new FragmentedWriteException(tag, write.getOffset(), ex);
+            throw ex;
+        }
     }
 
-	/** Write multiple tags in one network transaction
+	/** Write multiple tags
+     *  <p>
+     *  Tags are written in as few network transactions as the message size limits allow.
 	 *  @param tags Tag names to write
 	 *  @param values Values to write
 	 *  @throws Exception on error
@@ -502,20 +1116,26 @@ public class EtherNetIP implements AutoCloseable
             throw new IllegalArgumentException("Got " + tags.length + " tags but " + values.length + " values");
         }
         final MRChipWriteProtocol[] writes = new MRChipWriteProtocol[tags.length];
+        final int[] response_sizes = new int[tags.length];
         for (int i=0; i<tags.length; ++i)
         {
-            writes[i] = new MRChipWriteProtocol(tags[i], values[i]);
+            writes[i] = new MRChipWriteProtocol(this.connection.getTagPath(tags[i]), values[i]);
+            response_sizes[i] = MRChipWriteProtocol.RESPONSE_SIZE;
         }
 
-        final Encapsulation encap =
-                new Encapsulation(SendRRData, this.connection.getSession(),
-                    new SendRRDataProtocol(
-                        new UnconnectedSendProtocol(this.slot,
-                                new MessageRouterProtocol(CNService.CIP_MultiRequest, MessageRouter(),
-                                        new CIPMultiRequestProtocol(writes)))));
-        this.connection.execute(encap);
+        this.executeMultiRequest(writes, response_sizes);
     }
 
+	/** Execute services in as few multi-requests as possible
+	 *  @param services Read or write requests
+	 *  @param response_sizes Expected response size of each service
+	 *  @throws Exception on error
+	 */
+	private void executeMultiRequest(final MessageRouterProtocol[] services, final int[] response_sizes) throws Exception
+	{
+	    this.connection.executeMultiRequest(services, response_sizes);
+	}
+
 	//@formatter:on
 
     /** Unregister session (device will close connection) */
@@ -527,6 +1147,16 @@ public class EtherNetIP implements AutoCloseable
             {
                 return;
             }
+            try
+            {
+                this.forwardClose();
+            }
+            catch (final Exception ex)
+            {
+                logger.log(Level.WARNING,
+                        "Error closing connection: " + ex.getLocalizedMessage(),
+                        ex);
+            }
             this.connection.write(new Encapsulation(UnRegisterSession,
                     this.connection.getSession(), new ProtocolAdapter()));
             // Cannot read after this point because PLC will close the connection
@@ -545,6 +1175,8 @@ public class EtherNetIP implements AutoCloseable
     {
         if (this.connection != null)
         {
+            // Handle queued requests, then close on this thread
+            this.connection.setRequestQueue(0);
             this.unregisterSession();
             this.connection.close();
         }
@@ -90,6 +90,9 @@ public class Tag
     /** Current value, or the value to be written */
     private CIPData data = null;
 
+    /** Previous value, reused for the next read when updating in place */
+    private CIPData spare = null;
+
     /** State */
     private State state = State.READING;
 
@@ -167,14 +170,32 @@ public class Tag
      * Get current value of the tag.
      * <p>
      * This is either the most recent value read from the device, or the value that is about to be written to the device.
+     * <p>
+     * <b>Note:</b> When the {@link TagList} updates values in place, see {@link TagList#setUpdateInPlace(boolean)}, the returned {@link CIPData} is recycled. After the next
+     * {@link TagList#process(etherip.protocol.Connection)}, it becomes the spare into which the following value is read, so its content changes, possibly while it is still being used. Use
+     * {@link #getValueSnapshot()} to obtain a value that remains unchanged.
      *
-     * @return {@link CIPData}
+     * @return {@link CIPData}, may be <code>null</code>
      */
     synchronized public CIPData getValue()
     {
         return this.data;
     }
 
+    /**
+     * Get a copy of the current value of the tag.
+     * <p>
+     * Unlike {@link #getValue()}, the copy is never recycled by the {@link TagList}.
+     *
+     * @return Copy of the {@link CIPData}, may be <code>null</code>
+     * @throws Exception
+     *             on error
+     */
+    synchronized public CIPData getValueSnapshot() throws Exception
+    {
+        return this.data == null ? null : this.data.copy();
+    }
+
     /**
      * Update value of the tag with data read from device
      * <p>
@@ -199,6 +220,31 @@ public class Tag
         }
     }
 
+    /**
+     * @return Previous value of the tag that may be overwritten with the next value, or <code>null</code>
+     * @see #updateValue(CIPData)
+     */
+    synchronized CIPData getSpare()
+    {
+        return this.spare;
+    }
+
+    /**
+     * Update value of the tag with data read from device, keeping the previous value for reuse
+     * <p>
+     * To be called by {@link TagList} when updating tags in place. The previous value becomes the {@link #getSpare()} into which the next value is read, so that the tag alternates between two
+     * {@link CIPData} instances instead of allocating new data for each update.
+     *
+     * @param data
+     *            {@link CIPData}, usually the one obtained from {@link #getSpare()}
+     */
+    synchronized void updateValue(final CIPData data)
+    {
+        final CIPData previous = this.data;
+        this.setValue(data);
+        this.spare = previous == data ? null : previous;
+    }
+
     /**
      * Set CIP data to be written to the device
      *
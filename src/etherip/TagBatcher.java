@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static etherip.EtherNetIP.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import etherip.data.CipException;
+import etherip.protocol.Connection;
+import etherip.protocol.MRChipReadProtocol;
+import etherip.protocol.MRChipWriteProtocol;
+import etherip.protocol.MessageRouterProtocol;
+import etherip.types.CIPData;
+
+/**
+ * Combines concurrent single-tag reads and writes into multi-requests
+ * <p>
+ * Each call to {@link #read(String)} or {@link #write(String, CIPData)} joins the current batch. The first caller of a batch waits for the batch window to pass, or until the batch holds the
+ * maximum number of requests, and then performs the complete batch in as few multi-requests as the message size allows. The other callers wait for their individual result. No thread is used
+ * beyond those of the callers.
+ * <p>
+ * Batches are performed while synchronized on the connection. If the connection is also used by other code, that code needs to synchronize on the connection as well, or the connection needs a
+ * request queue, see {@link Connection#setRequestQueue(int)}.
+ * <p>
+ * When the device reports an error for some requests of a batch, for example because one of the tags is unknown, only the callers of those requests receive the error. Network errors and timeouts
+ * are reported to all callers of the batch.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TagBatcher
+{
+    /** Request of one caller */
+    private static class Entry
+    {
+        final String tag;
+        /** Value to write, <code>null</code> to read */
+        final CIPData value;
+        final CompletableFuture<CIPData> result = new CompletableFuture<>();
+
+        Entry(final String tag, final CIPData value)
+        {
+            this.tag = tag;
+            this.value = value;
+        }
+
+        MessageRouterProtocol createService(final Connection connection)
+        {
+            if (this.value == null)
+            {
+                return new MRChipReadProtocol(
+                        connection.createReadRequest(this.tag, (short) 1));
+            }
+            return new MRChipWriteProtocol(connection.getTagPath(this.tag),
+                    this.value);
+        }
+
+        void complete(final MessageRouterProtocol service)
+        {
+            this.result.complete(this.value == null
+                    ? ((MRChipReadProtocol) service).getData() : null);
+        }
+    }
+
+    final private Connection connection;
+    final private long window_ns;
+    final private int max_batch;
+
+    /** Current batch, guarded by <code>this</code> */
+    private List<Entry> pending = new ArrayList<>();
+
+    /**
+     * Initialize
+     *
+     * @param connection
+     *            {@link Connection}
+     * @param window_ms
+     *            Time that the first request of a batch waits for more requests
+     * @param max_batch
+     *            Number of requests that trigger a batch before the window has passed
+     */
+    public TagBatcher(final Connection connection, final long window_ms,
+            final int max_batch)
+    {
+        if (window_ms < 0 || max_batch < 1)
+        {
+            throw new IllegalArgumentException("Invalid window " + window_ms
+                    + " ms or batch size " + max_batch);
+        }
+        this.connection = connection;
+        this.window_ns = TimeUnit.MILLISECONDS.toNanos(window_ms);
+        this.max_batch = max_batch;
+    }
+
+    /**
+     * Read a single scalar tag
+     *
+     * @param tag
+     *            Name of tag
+     * @return Current value of the tag
+     * @throws Exception
+     *             on error
+     */
+    public CIPData read(final String tag) throws Exception
+    {
+        return this.handle(new Entry(tag, null));
+    }
+
+    /**
+     * Write a tag
+     * <p>
+     * The value must fit into one message, see {@link EtherNetIP#writeTagFragmented}.
+     *
+     * @param tag
+     *            Tag name
+     * @param value
+     *            Value to write
+     * @throws Exception
+     *             on error
+     */
+    public void write(final String tag, final CIPData value) throws Exception
+    {
+        this.handle(new Entry(tag, value));
+    }
+
+    private CIPData handle(final Entry entry) throws Exception
+    {
+        final boolean leader;
+        synchronized (this)
+        {
+            leader = this.pending.isEmpty();
+            this.pending.add(entry);
+            if (leader)
+            {
+                // Wait for more requests to join the batch
+                final long end = System.nanoTime() + this.window_ns;
+                long wait = this.window_ns;
+                while (this.pending.size() < this.max_batch && wait > 0)
+                {
+                    try
+                    {
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    }
+                    catch (final InterruptedException ex)
+                    {
+                        // Still perform the batch, other callers depend on it
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    wait = end - System.nanoTime();
+                }
+            }
+            else if (this.pending.size() >= this.max_batch)
+            {
+                this.notifyAll();
+            }
+        }
+        if (leader)
+        {
+            this.flush();
+        }
+        try
+        {
+            return entry.result.get();
+        }
+        catch (final ExecutionException ex)
+        {
+            if (ex.getCause() instanceof Exception)
+            {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /** Perform the pending batch */
+    private void flush()
+    {
+        synchronized (this.connection)
+        {
+            // Requests keep joining the batch until the connection is available
+            final List<Entry> batch;
+            synchronized (this)
+            {
+                batch = this.pending;
+                this.pending = new ArrayList<>();
+            }
+            try
+            {
+                this.perform(batch);
+            }
+            finally
+            {
+                // Callers wait without timeout, so each must receive a result
+                for (final Entry entry : batch)
+                {
+                    entry.result.completeExceptionally(
+                            new Exception("Batch request for '" + entry.tag + "' failed"));
+                }
+            }
+        }
+    }
+
+    /** @param batch Entries to perform in multi-requests */
+    private void perform(final List<Entry> batch)
+    {
+        // An entry for which no request can be created fails by itself
+        final List<Entry> entries = new ArrayList<>(batch.size());
+        final List<MessageRouterProtocol> requests = new ArrayList<>(batch.size());
+        for (final Entry entry : batch)
+        {
+            try
+            {
+                requests.add(entry.createService(this.connection));
+                entries.add(entry);
+            }
+            catch (final Exception ex)
+            {
+                entry.result.completeExceptionally(ex);
+            }
+        }
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        final MessageRouterProtocol[] services = requests.toArray(new MessageRouterProtocol[requests.size()]);
+        final int[] response_sizes = new int[services.length];
+        for (int i = 0; i < services.length; ++i)
+        {
+            response_sizes[i] = services[i] instanceof MRChipReadProtocol
+                    ? ((MRChipReadProtocol) services[i]).getRequest().getResponseSize()
+                    : MRChipWriteProtocol.RESPONSE_SIZE;
+        }
+        try
+        {
+            final int transactions = this.connection
+                    .executeMultiRequest(services, response_sizes);
+            logger.log(Level.FINE,
+                    "Batched {0} requests into {1} network transactions",
+                    new Object[] { services.length, transactions });
+            for (int i = 0; i < services.length; ++i)
+            {
+                entries.get(i).complete(services[i]);
+            }
+        }
+        catch (final CipException ex)
+        {
+            // Device reported errors for some requests.
+            // Complete each entry from the status of its own reply.
+            logger.log(Level.FINE, "Batch of " + services.length + " requests had errors", ex);
+            for (int i = 0; i < services.length; ++i)
+            {
+                final int status = services[i].getStatus();
+                if (status == 0)
+                {
+                    entries.get(i).complete(services[i]);
+                }
+                else if (status > 0)
+                {
+                    final int[] ext = services[i].getExtendedStatus();
+                    entries.get(i).result.completeExceptionally(
+                            new CipException(status, ext.length > 0 ? ext[0] : 0));
+                }
+                else
+                {
+                    // No reply, for example when the complete multi-request failed
+                    entries.get(i).result.completeExceptionally(ex);
+                }
+            }
+        }
+        catch (final Exception ex)
+        {
+            // Repeating the requests would most likely fail the same way,
+            // each taking another timeout
+            for (final Entry entry : entries)
+            {
+                entry.result.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -8,23 +8,21 @@
 package etherip;
 
 import static etherip.EtherNetIP.logger;
-import static etherip.protocol.Encapsulation.Command.SendRRData;
-import static etherip.types.CNPath.MessageRouter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import etherip.Tag.State;
-import etherip.protocol.CIPMultiRequestProtocol;
+import etherip.data.SymbolTable;
 import etherip.protocol.Connection;
 import etherip.protocol.Encapsulation;
+import etherip.protocol.ForwardOpenProtocol;
 import etherip.protocol.MRChipReadProtocol;
 import etherip.protocol.MRChipWriteProtocol;
 import etherip.protocol.MessageRouterProtocol;
-import etherip.protocol.SendRRDataProtocol;
-import etherip.protocol.UnconnectedSendProtocol;
-import etherip.types.CNService;
+import etherip.types.CIPData;
 
 /**
  * List of {@link Tag}s on the PLC
@@ -34,23 +32,59 @@ import etherip.types.CNService;
 @SuppressWarnings("nls")
 public class TagList
 {
+    /**
+     * Lock for the tags and cached requests
+     * <p>
+     * A {@link ReentrantLock} instead of a monitor because {@link #process(Connection)} holds it during network I/O, and a monitor would pin a virtual thread to its carrier on older Java
+     * versions.
+     */
+    final private ReentrantLock lock = new ReentrantLock();
+
     /**
      * {@link Tag}s handled by this {@link TagList}
      * <p>
-     * SYNC on <code>this</code> for access
+     * Guarded by <code>lock</code>
      */
     final private List<Tag> tags = new ArrayList<>();
 
+    /** Update values in place? */
+    private volatile boolean update_in_place = false;
+
+    // Requests of the last process() that only read tags,
+    // re-used as long as the tags and the connection remain the same.
+    // Guarded by lock
+
+    /** Read requests for all tags, or <code>null</code> */
+    private MessageRouterProtocol[] cached_reads = null;
+
+    /** Encapsulations for the cached_reads */
+    private Encapsulation[] cached_requests = null;
+
+    /** Connection, its symbol table, connected messaging and message size for which the requests were created */
+    private Connection cached_connection = null;
+    private SymbolTable cached_symbols = null;
+    private ForwardOpenProtocol cached_connected = null;
+    private int cached_limit = 0;
+
     /**
      * @param name
      *            Name of tag to add to list
      * @return {@link Tag}
      */
-    public synchronized Tag add(final String name)
+    public Tag add(final String name)
     {
-        final Tag tag = new Tag(name);
-        this.tags.add(tag);
-        return tag;
+        this.lock.lock();
+        try
+        {
+            final Tag tag = new Tag(name);
+            this.tags.add(tag);
+            this.cached_reads = null;
+            return tag;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
     }
 
     /**
@@ -62,60 +96,147 @@ public class TagList
      * @throws IllegalArgumentException
      *             when tag name not known
      */
-    public synchronized Tag get(final String name)
+    public Tag get(final String name)
     {
-        for (final Tag tag : this.tags)
+        this.lock.lock();
+        try
         {
-            if (tag.getName().equals(name))
+            for (final Tag tag : this.tags)
             {
-                return tag;
+                if (tag.getName().equals(name))
+                {
+                    return tag;
+                }
             }
         }
+        finally
+        {
+            this.lock.unlock();
+        }
         throw new IllegalArgumentException("Unknown tag '" + name + "'");
     }
 
+    /**
+     * Update the values of tags in place
+     * <p>
+     * By default, each {@link #process(Connection)} creates new {@link CIPData} for every tag that is read. When updating in place, each tag alternates between two pre-allocated values which
+     * are overwritten as long as the type and size of the data do not change.
+     * <p>
+     * A {@link CIPData} obtained from {@link Tag#getValue()} then remains valid for one more call to {@link #process(Connection)}, after which its content is replaced. Use
+     * {@link Tag#getValueSnapshot()} to keep it longer.
+     *
+     * @param in_place
+     *            <code>true</code> to update values in place
+     */
+    public void setUpdateInPlace(final boolean in_place)
+    {
+        this.update_in_place = in_place;
+    }
+
     /**
      * Process tags on list
      * <p>
      * Reads most tags and updates their value. Exception are tags marked for writing, which are written once, then reset to read-mode.
+     * <p>
+     * Tags are split into as many network transactions as needed to stay within the message size limits of the connection. When the connection supports it, these transactions are pipelined.
+     * <p>
+     * When all tags are read, the encoded requests are kept and sent again on the next call, until tags are added, tags are written, the size of a value changes, or the connection settings change.
      *
      * @param connection
      *            {@link Connection} to use for the communication
      * @throws Exception
      *             on error
      */
-    public synchronized void process(final Connection connection)
-            throws Exception
+    public void process(final Connection connection) throws Exception
     {
-        // Determine which tags are to read and which to write
-        final MessageRouterProtocol[] readwrite = new MessageRouterProtocol[this.tags
-                .size()];
-        for (int i = 0; i < this.tags.size(); ++i)
+        this.lock.lock();
+        try
         {
-            final Tag tag = this.tags.get(i);
-            synchronized (tag)
+            this.doProcess(connection);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /** @param connection {@link Connection}, called with <code>lock</code> held */
+    private void doProcess(final Connection connection) throws Exception
+    {
+        final boolean in_place = this.update_in_place;
+        final MessageRouterProtocol[] readwrite;
+        final Encapsulation[] requests;
+        if (this.canReuseRequests(connection))
+        {
+            // Send the same reads again, only header fields change
+            readwrite = this.cached_reads;
+            requests = this.cached_requests;
+            for (final Encapsulation request : requests)
             {
-                switch (tag.getState())
+                connection.prepareResend(request);
+            }
+            for (int i = 0; i < readwrite.length; ++i)
+            {
+                ((MRChipReadProtocol) readwrite[i]).setTarget(
+                        in_place ? this.tags.get(i).getSpare() : null);
+            }
+        }
+        else
+        {
+            // Determine which tags are to read and which to write
+            readwrite = new MessageRouterProtocol[this.tags.size()];
+            final int[] response_sizes = new int[readwrite.length];
+            boolean reusable = true;
+            for (int i = 0; i < this.tags.size(); ++i)
+            {
+                final Tag tag = this.tags.get(i);
+                synchronized (tag)
                 {
-                case READING:
-                    readwrite[i] = new MRChipReadProtocol(tag.getName());
-                    break;
-                default:
-                    readwrite[i] = new MRChipWriteProtocol(tag.getName(),
-                            tag.getValue());
-                    tag.setState(State.WRITING);
+                    switch (tag.getState())
+                    {
+                    case READING:
+                        readwrite[i] = new MRChipReadProtocol(
+                                connection.getTagPath(tag.getName()),
+                                (short) 1, in_place ? tag.getSpare() : null);
+                        response_sizes[i] = MRChipReadProtocol
+                                .getResponseSize(tag.getValue());
+                        // Packing is only final once the size of all values is known
+                        if (tag.getValue() == null)
+                        {
+                            reusable = false;
+                        }
+                        break;
+                    default:
+                        readwrite[i] = new MRChipWriteProtocol(
+                                connection.getTagPath(tag.getName()),
+                                tag.getValue());
+                        response_sizes[i] = MRChipWriteProtocol.RESPONSE_SIZE;
+                        tag.setState(State.WRITING);
+                        reusable = false;
+                    }
+                }
+            }
+            // Connected or unconnected depending on the connection
+            requests = connection.createMultiRequest(readwrite, response_sizes);
+            if (reusable)
+            {
+                for (final Encapsulation request : requests)
+                {
+                    request.setReusable();
                 }
+                this.cached_reads = readwrite;
+                this.cached_requests = requests;
+                this.cached_connection = connection;
+                this.cached_symbols = connection.getSymbolTable();
+                this.cached_connected = connection.getConnected();
+                this.cached_limit = connection.getMaxMessageSize();
             }
         }
 
         // Perform the protocol exchange
-        final Encapsulation encap = new Encapsulation(SendRRData,
-                connection.getSession(),
-                new SendRRDataProtocol(new UnconnectedSendProtocol(
-                        connection.getSlot(), new MessageRouterProtocol(
-                                CNService.CIP_MultiRequest, MessageRouter(),
-                                new CIPMultiRequestProtocol(readwrite)))));
-        connection.execute(encap);
+        connection.execute(requests);
+        logger.log(Level.FINE, "Processed {0} tags in {1} requests",
+                new Object[] { readwrite.length, requests.length });
 
         // Handle responses: Fetch data, reset 'write' flags
         for (int i = 0; i < this.tags.size(); ++i)
@@ -128,7 +249,21 @@ public class TagList
                 case READING:
                     // Read, update the tag's value
                     final MRChipReadProtocol reader = (MRChipReadProtocol) readwrite[i];
-                    tag.setValue(reader.getData());
+                    final CIPData value = reader.getData();
+                    // Cached requests were packed for the previous size of the value
+                    if (MRChipReadProtocol.getResponseSize(value) != MRChipReadProtocol
+                            .getResponseSize(tag.getValue()))
+                    {
+                        this.cached_reads = null;
+                    }
+                    if (in_place)
+                    {
+                        tag.updateValue(value);
+                    }
+                    else
+                    {
+                        tag.setValue(value);
+                    }
                     logger.log(Level.FINE, "Read {0}", tag);
                     break;
                 case WRITING:
@@ -146,6 +281,31 @@ public class TagList
         }
     }
 
+    /**
+     * @param connection
+     *            {@link Connection} to use for the next process()
+     * @return <code>true</code> if the cached read requests can be sent again
+     */
+    private boolean canReuseRequests(final Connection connection)
+    {
+        if (this.cached_reads == null || this.cached_connection != connection
+                || this.cached_symbols != connection.getSymbolTable()
+                || this.cached_connected != connection.getConnected()
+                || this.cached_limit != connection.getMaxMessageSize())
+        {
+            return false;
+        }
+        // Tags that are about to be written need new requests
+        for (final Tag tag : this.tags)
+        {
+            if (tag.getState() != State.READING)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,578 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static etherip.EtherNetIP.logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import etherip.data.SymbolTable;
+import etherip.protocol.Connection;
+import etherip.protocol.Encapsulation;
+import etherip.protocol.ForwardOpenProtocol;
+import etherip.protocol.MessageRouterProtocol;
+import etherip.protocol.ProtocolAdapter;
+import etherip.types.CIPData;
+import etherip.types.CIPData.Type;
+import etherip.types.CNService;
+
+/**
+ * Store for the values of many tags
+ * <p>
+ * Alternative to a {@link TagList} for very large numbers of tags that are only read. Instead of a {@link Tag} with its own {@link CIPData}, listeners and lock, each tag is identified by an
+ * <code>int</code> handle. All values are kept in one direct {@link ByteBuffer}, each tag at a fixed offset determined by its type and number of elements when it is added. Responses are decoded
+ * straight into that buffer.
+ * <p>
+ * Only numeric types are supported, since the size of structures is not known up front.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TagStore
+{
+    // SYNC Notes:
+    //
+    // Adding tags and processing them synchronizes on 'this'.
+    // Access to the values, both when decoding responses and
+    // when reading values, synchronizes on 'values',
+    // so values can be read while a process() is waiting
+    // for the network.
+
+    /** Tag values */
+    final private ByteBuffer values;
+
+    /** Handles by tag name */
+    final private Map<String, Integer> handles = new HashMap<>();
+
+    /** Tag names by handle */
+    private String[] names = new String[16];
+
+    /** Data types by handle */
+    private Type[] types = new Type[16];
+
+    /** Number of elements by handle */
+    private short[] counts = new short[16];
+
+    /** Offset into values by handle */
+    private int[] offsets = new int[16];
+
+    /** Handles that have received a value */
+    final private BitSet valid = new BitSet();
+
+    /** Number of tags */
+    private volatile int size = 0;
+
+    // Requests of the last process(),
+    // re-used as long as the tags and the connection remain the same.
+    // SYNC on this
+
+    /** Read requests for all tags, or <code>null</code> */
+    private Encapsulation[] cached_requests = null;
+
+    /** Connection, its symbol table, connected messaging and message size for which the requests were created */
+    private Connection cached_connection = null;
+    private SymbolTable cached_symbols = null;
+    private ForwardOpenProtocol cached_connected = null;
+    private int cached_limit = 0;
+
+    /**
+     * Initialize
+     *
+     * @param capacity
+     *            Number of bytes available for the values of all tags
+     */
+    public TagStore(final int capacity)
+    {
+        this.values = ByteBuffer.allocateDirect(capacity);
+        this.values.order(Connection.BYTE_ORDER);
+    }
+
+    /**
+     * Add scalar tag
+     *
+     * @param name
+     *            Tag name
+     * @param type
+     *            Data type of the tag
+     * @return Handle of the tag
+     * @throws Exception
+     *             on error
+     * @see #add(String, Type, int)
+     */
+    public int add(final String name, final Type type) throws Exception
+    {
+        return this.add(name, type, 1);
+    }
+
+    /**
+     * Add tag
+     *
+     * @param name
+     *            Tag name
+     * @param type
+     *            Data type of the tag
+     * @param elements
+     *            Number of array elements to read
+     * @return Handle of the tag
+     * @throws Exception
+     *             if the type is not numeric, the tag is already in the store, or the store is full
+     */
+    public synchronized int add(final String name, final Type type,
+            final int elements) throws Exception
+    {
+        final int element_size = type.getElementSize();
+        if (element_size <= 0)
+        {
+            throw new Exception("Type " + type + " not handled");
+        }
+        if (this.handles.containsKey(name))
+        {
+            throw new Exception("Tag '" + name + "' is already in store");
+        }
+        // Align each value on its element size
+        final int offset;
+        if (this.size > 0)
+        {
+            final int last = this.size - 1;
+            final int end = this.offsets[last]
+                    + this.types[last].getElementSize() * this.counts[last];
+            offset = (end + element_size - 1) / element_size * element_size;
+        }
+        else
+        {
+            offset = 0;
+        }
+        if (offset + element_size * elements > this.values.capacity())
+        {
+            throw new Exception("Tag '" + name + "' does not fit, store of "
+                    + this.values.capacity() + " bytes is full");
+        }
+
+        final int handle = this.size;
+        if (handle >= this.names.length)
+        {
+            final int length = 2 * this.names.length;
+            this.names = Arrays.copyOf(this.names, length);
+            this.types = Arrays.copyOf(this.types, length);
+            this.counts = Arrays.copyOf(this.counts, length);
+            this.offsets = Arrays.copyOf(this.offsets, length);
+        }
+        this.names[handle] = name;
+        this.types[handle] = type;
+        this.counts[handle] = (short) elements;
+        this.offsets[handle] = offset;
+        this.handles.put(name, handle);
+        this.size = handle + 1;
+        this.cached_requests = null;
+        return handle;
+    }
+
+    /** @return Number of tags in the store */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Locate tag for name
+     *
+     * @param name
+     *            Tag name
+     * @return Handle of the tag
+     * @throws IllegalArgumentException
+     *             when tag name not known
+     */
+    public synchronized int getHandle(final String name)
+    {
+        final Integer handle = this.handles.get(name);
+        if (handle == null)
+        {
+            throw new IllegalArgumentException("Unknown tag '" + name + "'");
+        }
+        return handle;
+    }
+
+    /**
+     * @param handle
+     *            Handle of the tag
+     * @return Tag name
+     */
+    public String getName(final int handle)
+    {
+        return this.names[this.checkHandle(handle)];
+    }
+
+    /**
+     * @param handle
+     *            Handle of the tag
+     * @return Data type of the tag
+     */
+    public Type getType(final int handle)
+    {
+        return this.types[this.checkHandle(handle)];
+    }
+
+    /**
+     * @param handle
+     *            Handle of the tag
+     * @return Number of elements
+     */
+    public int getElementCount(final int handle)
+    {
+        return this.counts[this.checkHandle(handle)];
+    }
+
+    /**
+     * @param handle
+     *            Handle of the tag
+     * @return <code>true</code> if a value has been read for the tag
+     */
+    public boolean isValid(final int handle)
+    {
+        this.checkHandle(handle);
+        synchronized (this.values)
+        {
+            return this.valid.get(handle);
+        }
+    }
+
+    /** @return handle */
+    private int checkHandle(final int handle)
+    {
+        if (handle < 0 || handle >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Invalid handle " + handle
+                    + ", store has " + this.size + " tags");
+        }
+        return handle;
+    }
+
+    /** @return Offset of an element in the values */
+    private int getOffset(final int handle, final int index)
+    {
+        this.checkHandle(handle);
+        if (index < 0 || index >= this.counts[handle])
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " of "
+                    + this.counts[handle] + " elements of tag '"
+                    + this.names[handle] + "'");
+        }
+        return this.offsets[handle] + this.types[handle].getElementSize() * index;
+    }
+
+    /** @return Value at offset as long, floating point types truncated */
+    private long readLong(final Type type, final int offset)
+    {
+        switch (type)
+        {
+        case USINT:
+            return this.values.get(offset) & 0xFF;
+        case INT:
+            return this.values.getShort(offset);
+        case UINT:
+            return this.values.getShort(offset) & 0xFFFF;
+        case DINT:
+        case BITS:
+            return this.values.getInt(offset);
+        case UDINT:
+            return this.values.getInt(offset) & 0xFFFFFFFFL;
+        case LINT:
+            return this.values.getLong(offset);
+        case REAL:
+            return (long) this.values.getFloat(offset);
+        case LREAL:
+            return (long) this.values.getDouble(offset);
+        default:
+            return this.values.get(offset);
+        }
+    }
+
+    /** @return Value at offset as double */
+    private double readDouble(final Type type, final int offset)
+    {
+        switch (type)
+        {
+        case REAL:
+            return this.values.getFloat(offset);
+        case LREAL:
+            return this.values.getDouble(offset);
+        default:
+            return this.readLong(type, offset);
+        }
+    }
+
+    /**
+     * Read value as integer
+     *
+     * @param handle
+     *            Handle of the tag
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Integer value of requested element. Floating point types are truncated.
+     * @throws IndexOutOfBoundsException
+     *             if handle or index are invalid
+     */
+    public int getInt(final int handle, final int index)
+            throws IndexOutOfBoundsException
+    {
+        return (int) this.getLong(handle, index);
+    }
+
+    /**
+     * Read value as long
+     *
+     * @param handle
+     *            Handle of the tag
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Integer value of requested element. Floating point types are truncated.
+     * @throws IndexOutOfBoundsException
+     *             if handle or index are invalid
+     */
+    public long getLong(final int handle, final int index)
+            throws IndexOutOfBoundsException
+    {
+        final int offset = this.getOffset(handle, index);
+        synchronized (this.values)
+        {
+            return this.readLong(this.types[handle], offset);
+        }
+    }
+
+    /**
+     * Read value as float
+     *
+     * @param handle
+     *            Handle of the tag
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Floating point value of requested element
+     * @throws IndexOutOfBoundsException
+     *             if handle or index are invalid
+     */
+    public float getFloat(final int handle, final int index)
+            throws IndexOutOfBoundsException
+    {
+        return (float) this.getDouble(handle, index);
+    }
+
+    /**
+     * Read value as double
+     *
+     * @param handle
+     *            Handle of the tag
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Floating point value of requested element
+     * @throws IndexOutOfBoundsException
+     *             if handle or index are invalid
+     */
+    public double getDouble(final int handle, final int index)
+            throws IndexOutOfBoundsException
+    {
+        final int offset = this.getOffset(handle, index);
+        synchronized (this.values)
+        {
+            return this.readDouble(this.types[handle], offset);
+        }
+    }
+
+    /**
+     * Copy all elements of a tag into array
+     *
+     * @param handle
+     *            Handle of the tag
+     * @param target
+     *            Array to fill
+     * @return Number of elements that were copied
+     * @throws IndexOutOfBoundsException
+     *             if handle is invalid
+     */
+    public int getFloats(final int handle, final float[] target)
+            throws IndexOutOfBoundsException
+    {
+        final int count = Math.min(target.length, this.getElementCount(handle));
+        final Type type = this.types[handle];
+        final int offset = this.offsets[handle];
+        final int element_size = type.getElementSize();
+        synchronized (this.values)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                target[i] = (float) this.readDouble(type, offset + i * element_size);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get value of a tag as {@link CIPData}
+     * <p>
+     * Convenience method that creates a copy of the value.
+     *
+     * @param handle
+     *            Handle of the tag
+     * @return {@link CIPData}, or <code>null</code> if the tag has no value
+     * @throws Exception
+     *             on error
+     */
+    public CIPData getValue(final int handle) throws Exception
+    {
+        final Type type = this.getType(handle);
+        final byte[] raw = new byte[type.getElementSize() * this.counts[handle]];
+        final int offset = this.offsets[handle];
+        synchronized (this.values)
+        {
+            if (!this.valid.get(handle))
+            {
+                return null;
+            }
+            for (int i = 0; i < raw.length; ++i)
+            {
+                raw[i] = this.values.get(offset + i);
+            }
+        }
+        return new CIPData(type, raw);
+    }
+
+    /**
+     * Read all tags in the store
+     * <p>
+     * Tags are split into as many network transactions as needed to stay within the message size limits of the connection.
+     *
+     * @param connection
+     *            {@link Connection} to use for the communication
+     * @throws Exception
+     *             on error, including a tag that returns data of an unexpected type or size
+     */
+    public synchronized void process(final Connection connection)
+            throws Exception
+    {
+        if (this.canReuseRequests(connection))
+        {
+            // Send the same reads again, only header fields change
+            for (final Encapsulation request : this.cached_requests)
+            {
+                connection.prepareResend(request);
+            }
+        }
+        else
+        {
+            final MessageRouterProtocol[] reads = new MessageRouterProtocol[this.size];
+            final int[] response_sizes = new int[reads.length];
+            for (int i = 0; i < reads.length; ++i)
+            {
+                reads[i] = new MessageRouterProtocol(CNService.CIP_ReadData,
+                        connection.getTagPath(this.names[i]), new Reader(i));
+                // Header, type, data
+                response_sizes[i] = 4 + 2
+                        + this.types[i].getElementSize() * this.counts[i];
+            }
+            final Encapsulation[] requests = connection.createMultiRequest(reads,
+                    response_sizes);
+            for (final Encapsulation request : requests)
+            {
+                request.setReusable();
+            }
+            this.cached_requests = requests;
+            this.cached_connection = connection;
+            this.cached_symbols = connection.getSymbolTable();
+            this.cached_connected = connection.getConnected();
+            this.cached_limit = connection.getMaxMessageSize();
+        }
+        connection.execute(this.cached_requests);
+        logger.log(Level.FINE, "Processed {0} stored tags in {1} requests",
+                new Object[] { this.size, this.cached_requests.length });
+    }
+
+    /**
+     * @param connection
+     *            {@link Connection} to use for the next process()
+     * @return <code>true</code> if the cached requests can be sent again
+     */
+    private boolean canReuseRequests(final Connection connection)
+    {
+        return this.cached_requests != null
+                && this.cached_connection == connection
+                && this.cached_symbols == connection.getSymbolTable()
+                && this.cached_connected == connection.getConnected()
+                && this.cached_limit == connection.getMaxMessageSize();
+    }
+
+    /** Protocol body for {@link CNService#CIP_ReadData} that decodes into the values */
+    class Reader extends ProtocolAdapter
+    {
+        final private int handle;
+
+        Reader(final int handle)
+        {
+            this.handle = handle;
+        }
+
+        @Override
+        public int getRequestSize()
+        {
+            return 2;
+        }
+
+        @Override
+        public void encode(final ByteBuffer buf, final StringBuilder log)
+        {
+            buf.putShort(TagStore.this.counts[this.handle]);
+            if (log != null)
+            {
+                log.append("UINT elements           : ")
+                        .append(TagStore.this.counts[this.handle])
+                        .append("\n");
+            }
+        }
+
+        @Override
+        public void decode(final ByteBuffer buf, final int available,
+                final StringBuilder log) throws Exception
+        {
+            final Type type = Type.forCode(buf.getShort());
+            final int size = available - 2;
+            final Type expected = TagStore.this.types[this.handle];
+            if (type != expected || size != expected.getElementSize()
+                    * TagStore.this.counts[this.handle])
+            {
+                throw new Exception("Tag '" + TagStore.this.names[this.handle]
+                        + "' returned " + size + " bytes of " + type
+                        + " instead of " + TagStore.this.counts[this.handle]
+                        + " " + expected);
+            }
+            if (log != null)
+            {
+                log.append("USINT type, data        : ").append(type)
+                        .append(", ").append(size).append(" bytes\n");
+            }
+            final int limit = buf.limit();
+            buf.limit(buf.position() + size);
+            synchronized (TagStore.this.values)
+            {
+                TagStore.this.values.limit(TagStore.this.values.capacity());
+                TagStore.this.values.position(TagStore.this.offsets[this.handle]);
+                TagStore.this.values.put(buf);
+                TagStore.this.valid.set(this.handle);
+            }
+            buf.limit(limit);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TagStore: " + this.size + " tags";
+    }
+}
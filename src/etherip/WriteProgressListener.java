@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+/**
+ * Listener to the progress of a fragmented write
+ *
+ * @author Kay Kasemir
+ */
+public interface WriteProgressListener
+{
+    /**
+     * A fragment of the data has been written
+     * <p>
+     * Called from the thread that handles the network communication. Fragments may be confirmed while later fragments are still being sent.
+     *
+     * @param tag
+     *            Name of the tag
+     * @param offset
+     *            Byte offset of the fragment
+     * @param length
+     *            Number of bytes in the fragment
+     * @param total
+     *            Total number of bytes to write
+     */
+    public void fragmentWritten(String tag, int offset, int length, int total);
+}
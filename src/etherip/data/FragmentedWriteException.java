@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.data;
+
+/**
+ * Error in a fragmented write
+ * <p>
+ * Identifies the first fragment that was not confirmed by the device. Data before that offset has been written.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class FragmentedWriteException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String tag;
+
+    private final int offset;
+
+    /**
+     * @param tag
+     *            Name of the tag
+     * @param offset
+     *            Byte offset of the first fragment that failed
+     * @param cause
+     *            Original error
+     */
+    public FragmentedWriteException(final String tag, final int offset,
+            final Throwable cause)
+    {
+        super("Writing tag " + tag + " failed at offset " + offset + ": "
+                + cause.getMessage(), cause);
+        this.tag = tag;
+        this.offset = offset;
+    }
+
+    /** @return Name of the tag */
+    public String getTag()
+    {
+        return this.tag;
+    }
+
+    /** @return Byte offset of the first fragment that failed */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+}
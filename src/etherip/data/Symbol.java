@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.data;
+
+/**
+ * Tag in the controller's symbol table
+ * <p>
+ * Instance of the Symbol Object, class 0x6B
+ *
+ * @see 1756-PM020: Symbol Object
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class Symbol
+{
+    /** Symbol type bit that marks a structure */
+    final public static int STRUCTURE = 0x8000;
+
+    /** Symbol type bit that marks a system tag */
+    final public static int SYSTEM = 0x1000;
+
+    /** Prefix of program names */
+    final public static String PROGRAM_PREFIX = "Program:";
+
+    private final String program;
+
+    private final int instance;
+
+    private final String name;
+
+    private final short type;
+
+    private final int element_size;
+
+    private final int[] dimensions;
+
+    /**
+     * @param program
+     *            Program name for a program-scoped tag, <code>null</code> for a controller-scoped tag
+     * @param instance
+     *            Symbol Object instance
+     * @param name
+     *            Tag name, for a program-scoped tag prefixed with the program name as in "Program:Main.tag"
+     * @param type
+     *            Symbol type
+     * @param element_size
+     *            Size of one element in bytes
+     * @param dimensions
+     *            Array dimensions, 0 for unused dimensions
+     */
+    public Symbol(final String program, final int instance, final String name,
+            final short type, final int element_size, final int[] dimensions)
+    {
+        this.program = program;
+        this.instance = instance;
+        this.name = name;
+        this.type = type;
+        this.element_size = element_size;
+        this.dimensions = dimensions;
+    }
+
+    /** @return Program name of a program-scoped tag, <code>null</code> for a controller-scoped tag */
+    public String getProgram()
+    {
+        return this.program;
+    }
+
+    /** @return Symbol Object instance, within the program for a program-scoped tag */
+    public int getInstance()
+    {
+        return this.instance;
+    }
+
+    /** @return Tag name */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /** @return <code>true</code> if this symbol is a program, not a tag */
+    public boolean isProgram()
+    {
+        return this.program == null && this.name.startsWith(PROGRAM_PREFIX);
+    }
+
+    /** @return Size of one element in bytes */
+    public int getElementSize()
+    {
+        return this.element_size;
+    }
+
+    /** @return Array dimensions, 0 for unused dimensions */
+    public int[] getDimensions()
+    {
+        return this.dimensions;
+    }
+
+    /** @return Number of elements, 1 for a scalar */
+    public int getElementCount()
+    {
+        int count = 1;
+        for (int i = 0; i < this.getDimensionCount(); ++i)
+        {
+            count *= Math.max(1, this.dimensions[i]);
+        }
+        return count;
+    }
+
+    /** @return Symbol type: Type code or template ID, structure and dimension bits */
+    public short getType()
+    {
+        return this.type;
+    }
+
+    /** @return <code>true</code> for a structure */
+    public boolean isStructure()
+    {
+        return (this.type & STRUCTURE) != 0;
+    }
+
+    /** @return <code>true</code> for a system tag */
+    public boolean isSystem()
+    {
+        return (this.type & SYSTEM) != 0;
+    }
+
+    /** @return Number of array dimensions, 0 for a scalar */
+    public int getDimensionCount()
+    {
+        return (this.type >> 13) & 0x3;
+    }
+
+    /** @return Atomic type code, or template instance ID for a structure */
+    public int getTypeCode()
+    {
+        return this.isStructure() ? this.type & 0x0FFF : this.type & 0x00FF;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("Symbol ").append(this.name);
+        for (int i = 0; i < this.getDimensionCount(); ++i)
+        {
+            buf.append('[').append(this.dimensions[i]).append(']');
+        }
+        buf.append(String.format(" (instance 0x%X, type 0x%04X, %d bytes)",
+                this.instance, this.type, this.element_size));
+        return buf.toString();
+    }
+}
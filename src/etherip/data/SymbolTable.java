@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Symbol table of a controller
+ * <p>
+ * Tag names on the controller are not case sensitive, so lookup ignores case.
+ * <p>
+ * The table can be saved to a file and loaded from it. The signature identifies the state of the controller's tags, so a saved table can be reused as long as the signature of the controller
+ * has not changed.
+ * <p>
+ * SYNC on <code>this</code> for access
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SymbolTable
+{
+    /** First line of a saved symbol table */
+    private static final String FILE_HEADER = "# EtherIP Symbol Table";
+
+    private final String signature;
+
+    private final Map<String, Symbol> symbols = new LinkedHashMap<>();
+
+    /** Initialize table without signature */
+    public SymbolTable()
+    {
+        this("");
+    }
+
+    /**
+     * @param signature
+     *            Signature of the controller's tags
+     */
+    public SymbolTable(final String signature)
+    {
+        this.signature = signature;
+    }
+
+    private static String key(final String name)
+    {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    /** @return Signature of the controller's tags when the table was read */
+    public String getSignature()
+    {
+        return this.signature;
+    }
+
+    /**
+     * @param symbol
+     *            {@link Symbol} to add
+     */
+    public synchronized void add(final Symbol symbol)
+    {
+        this.symbols.put(key(symbol.getName()), symbol);
+    }
+
+    /**
+     * @param name
+     *            Tag name
+     * @return {@link Symbol} or <code>null</code> when not known
+     */
+    public synchronized Symbol get(final String name)
+    {
+        return this.symbols.get(key(name));
+    }
+
+    /** @return All symbols */
+    public synchronized List<Symbol> getSymbols()
+    {
+        return new ArrayList<>(this.symbols.values());
+    }
+
+    /** @return Number of symbols */
+    public synchronized int size()
+    {
+        return this.symbols.size();
+    }
+
+    /**
+     * Save symbol table to file
+     *
+     * @param file
+     *            {@link File}
+     * @throws IOException
+     *             on error
+     */
+    public synchronized void save(final File file) throws IOException
+    {
+        try (final PrintWriter out = new PrintWriter(
+                Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)))
+        {
+            out.println(FILE_HEADER);
+            out.println(this.signature);
+            for (final Symbol symbol : this.symbols.values())
+            {
+                final int[] dims = symbol.getDimensions();
+                out.println(String.format("%d\t%d\t%d\t%d\t%d\t%d\t%s\t%s",
+                        symbol.getInstance(), symbol.getType() & 0xFFFF,
+                        symbol.getElementSize(), dims[0], dims[1], dims[2],
+                        symbol.getName(),
+                        symbol.getProgram() == null ? ""
+                                : symbol.getProgram()));
+            }
+        }
+    }
+
+    /**
+     * Load symbol table from file
+     *
+     * @param file
+     *            {@link File} created by {@link #save(File)}
+     * @return {@link SymbolTable}
+     * @throws IOException
+     *             on error
+     */
+    public static SymbolTable load(final File file) throws IOException
+    {
+        try (final BufferedReader in = Files.newBufferedReader(file.toPath(),
+                StandardCharsets.UTF_8))
+        {
+            if (!FILE_HEADER.equals(in.readLine()))
+            {
+                throw new IOException("Not a symbol table: " + file);
+            }
+            final String signature = in.readLine();
+            if (signature == null)
+            {
+                throw new IOException("Missing signature in " + file);
+            }
+            final SymbolTable table = new SymbolTable(signature);
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                final String[] items = line.split("\t", -1);
+                if (items.length != 8)
+                {
+                    throw new IOException(
+                            "Invalid symbol '" + line + "' in " + file);
+                }
+                try
+                {
+                    final int[] dims = new int[] { Integer.parseInt(items[3]),
+                            Integer.parseInt(items[4]),
+                            Integer.parseInt(items[5]) };
+                    table.add(new Symbol(
+                            items[7].isEmpty() ? null : items[7],
+                            Integer.parseInt(items[0]),
+                            items[6],
+                            (short) Integer.parseInt(items[1]),
+                            Integer.parseInt(items[2]), dims));
+                }
+                catch (final NumberFormatException ex)
+                {
+                    throw new IOException(
+                            "Invalid symbol '" + line + "' in " + file, ex);
+                }
+            }
+            return table;
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Symbol table with " + this.symbols.size() + " symbols";
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Connection to EtherNet/IP device via TCP that uses blocking socket I/O
+ * <p>
+ * The {@link TcpConnection} waits for each read and write of its asynchronous channel, which involves a thread of the channel group. This connection reads and writes in the calling thread,
+ * with the timeout enforced by the socket. On Java 21 and later, blocking socket I/O in a virtual thread releases the carrier thread while waiting, so many connections can be handled by few
+ * platform threads.
+ *
+ * @author Kay Kasemir
+ */
+public class BlockingTcpConnection extends TcpConnection
+{
+    private final Socket socket;
+    private final ReadableByteChannel in;
+    private final WritableByteChannel out;
+
+    /**
+     * Initialize
+     *
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @throws Exception
+     *             on error
+     */
+    public BlockingTcpConnection(final String address, final int slot)
+            throws Exception
+    {
+        super(address, slot, false);
+        this.socket = new Socket();
+        this.socket.setTcpNoDelay(true);
+        this.socket.connect(new InetSocketAddress(address, this.port),
+                (int) this.timeout_ms);
+        this.socket.setSoTimeout((int) this.timeout_ms);
+        this.in = Channels.newChannel(this.socket.getInputStream());
+        this.out = Channels.newChannel(this.socket.getOutputStream());
+    }
+
+    @Override
+    protected int readSome(final ByteBuffer buf) throws Exception
+    {
+        return this.in.read(buf);
+    }
+
+    @Override
+    protected int writeSome(final ByteBuffer buf) throws Exception
+    {
+        return this.out.write(buf);
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        this.socket.close();
+    }
+
+    @Override
+    public boolean isOpen() throws Exception
+    {
+        return !this.socket.isClosed();
+    }
+}
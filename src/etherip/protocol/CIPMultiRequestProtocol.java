@@ -8,37 +8,175 @@
 package etherip.protocol;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import etherip.data.CipException;
 import etherip.types.CNService;
 
 /**
  * Protocol for {@link CNService#CIP_MultiRequest}
  * <p>
- * Handles several embedded {@link MessageRouterProtocol} read or write requests.
+ * Handles several embedded {@link MessageRouterProtocol} read or write requests. Each embedded reply is decoded even when others report an error, so that the status of each service can be checked
+ * via {@link MessageRouterProtocol#getStatus()}.
  *
  * @author Kay Kasemir
  */
 @SuppressWarnings("nls")
 public class CIPMultiRequestProtocol extends ProtocolAdapter
 {
+    /** Size of the message router request for the multi-request: Service, path to message router */
+    final private static int REQUEST_HEADER_SIZE = 6;
+
+    /** Size of the message router response: Service, reserved, status, extended status size */
+    final private static int RESPONSE_HEADER_SIZE = 4;
+
     final private MessageRouterProtocol[] services;
 
+    /** Request size of each service */
+    final private int[] sizes;
+
+    /** Total request size */
+    final private int request_size;
+
     public CIPMultiRequestProtocol(final MessageRouterProtocol... services)
     {
         this.services = services;
+        this.sizes = new int[services.length];
+        // Size: 'count' + offset to each service
+        int total = 2 + 2 * services.length;
+        // ..plus bytes of each service itself
+        for (int i = 0; i < services.length; ++i)
+        {
+            this.sizes[i] = services[i].getRequestSize();
+            total += this.sizes[i];
+        }
+        this.request_size = total;
     }
 
-    @Override
-    public int getRequestSize()
+    /**
+     * Split services into as many multi-requests as needed to stay within size limits
+     * <p>
+     * Services are kept in their original order. Each multi-request is filled up to the limits, based on the request size and expected response size of each service. A service that alone exceeds a
+     * limit is placed in a multi-request of its own.
+     *
+     * @param services
+     *            {@link MessageRouterProtocol} read or write requests
+     * @param response_sizes
+     *            Expected response size of each service, including its message router response header
+     * @param max_request
+     *            Maximum size of the message router request, i.e. {@link CNService#CIP_MultiRequest} with all the embedded services
+     * @param max_response
+     *            Maximum size of the message router response
+     * @return {@link CIPMultiRequestProtocol}s, each to be sent within a {@link MessageRouterProtocol} for {@link CNService#CIP_MultiRequest}
+     */
+    public static List<CIPMultiRequestProtocol> pack(
+            final MessageRouterProtocol[] services, final int[] response_sizes,
+            final int max_request, final int max_response)
     {
-        // Size: 'count' + offset to each service
-        int total = 2 + 2 * this.services.length;
-        // ..plus bytes of each service itself
-        for (final ProtocolAdapter service : this.services)
+        final List<CIPMultiRequestProtocol> packets = new ArrayList<>();
+        int start = 0;
+        // Size of 'count' in request and response
+        int request = REQUEST_HEADER_SIZE + 2;
+        int response = RESPONSE_HEADER_SIZE + 2;
+        for (int i = 0; i < services.length; ++i)
         {
-            total += service.getRequestSize();
+            // Size of service plus its entry in the offset table
+            final int service_request = 2 + services[i].getRequestSize();
+            final int service_response = 2 + response_sizes[i];
+            if (i > start && (request + service_request > max_request
+                    || response + service_response > max_response))
+            {
+                packets.add(new CIPMultiRequestProtocol(
+                        Arrays.copyOfRange(services, start, i)));
+                start = i;
+                request = REQUEST_HEADER_SIZE + 2;
+                response = RESPONSE_HEADER_SIZE + 2;
+            }
+            request += service_request;
+            response += service_response;
+        }
+        if (start < services.length)
+        {
+            packets.add(new CIPMultiRequestProtocol(
+                    Arrays.copyOfRange(services, start, services.length)));
+        }
+        return packets;
+    }
+
+    /**
+     * Get reads to repeat because their replies did not fit
+     * <p>
+     * Services are packed based on expected response sizes. When a read reports that its reply was too large, the reads without a valid reply may be repeated with larger estimates.
+     *
+     * @param services
+     *            Services that were executed
+     * @return Reads without a valid reply, empty unless at least one read reported that its reply was too large
+     * @see MRChipReadProtocol#isReplyTooLarge(int)
+     */
+    public static MessageRouterProtocol[] getReadsToRepeat(
+            final MessageRouterProtocol[] services)
+    {
+        boolean too_large = false;
+        final List<MessageRouterProtocol> repeat = new ArrayList<>();
+        for (final MessageRouterProtocol service : services)
+        {
+            if (!(service instanceof MRChipReadProtocol))
+            {
+                continue;
+            }
+            final int status = service.getStatus();
+            if (MRChipReadProtocol.isReplyTooLarge(status))
+            {
+                too_large = true;
+                repeat.add(service);
+            }
+            else if (status < 0)
+            {
+                // Not sent or no reply because of a previous error
+                repeat.add(service);
+            }
+        }
+        if (!too_large)
+        {
+            return new MessageRouterProtocol[0];
+        }
+        return repeat.toArray(new MessageRouterProtocol[repeat.size()]);
+    }
+
+    /**
+     * Check that each service received a successful reply
+     *
+     * @param services
+     *            Services that were executed
+     * @param error
+     *            Error to report for services without reply
+     * @throws Exception
+     *             {@link CipException} for the first service that reported an error, or <code>error</code> for the first service without reply
+     */
+    public static void checkReplies(final MessageRouterProtocol[] services,
+            final Exception error) throws Exception
+    {
+        for (final MessageRouterProtocol service : services)
+        {
+            final int status = service.getStatus();
+            if (status > 0)
+            {
+                final int[] ext = service.getExtendedStatus();
+                throw new CipException(status, ext.length > 0 ? ext[0] : 0);
+            }
+            if (status < 0)
+            {
+                throw error;
+            }
         }
-        return total;
+    }
+
+    @Override
+    public int getRequestSize()
+    {
+        return this.request_size;
     }
 
     @Override
@@ -68,7 +206,7 @@ public class CIPMultiRequestProtocol extends ProtocolAdapter
                         .append("\n");
             }
             // Next offset: After bytes for this request
-            offset += this.services[i].getRequestSize();
+            offset += this.sizes[i];
         }
 
         for (int i = 0; i < count; ++i)
@@ -112,37 +250,39 @@ public class CIPMultiRequestProtocol extends ProtocolAdapter
             log.append("UINT count              : ").append(count).append("\n");
         }
 
-        // Offset table
-        final short[] offset = new short[count];
+        // Offset table, read in place
+        final int offsets = buf.position();
         for (int i = 0; i < count; ++i)
         {
-            offset[i] = buf.getShort();
+            final short offset = buf.getShort();
             if (log != null)
             {
-                log.append("UINT offset             : ").append(offset[i])
+                log.append("UINT offset             : ").append(offset)
                         .append("\n");
             }
         }
 
         // Individual replies
+        Exception error = null;
         for (int i = 0; i < count; ++i)
         { // Track buffer offset from start
             final int off = buf.position() - start;
-            if (off != offset[i])
+            final short offset = buf.getShort(offsets + 2 * i);
+            if (off != offset)
             {
                 throw new Exception("Expected response #" + (i + 1)
-                        + " at offset " + offset[i] + ", not " + off);
+                        + " at offset " + offset + ", not " + off);
             }
 
             // Determine length of this section
             final int section_length;
             if (i < count - 1)
             {
-                section_length = offset[i + 1] - off; // .. from offset table
+                section_length = buf.getShort(offsets + 2 * (i + 1)) - off; // .. from offset table
             }
             else
             {
-                section_length = available - offset[i]; // .. from distance to end for last section
+                section_length = available - offset; // .. from distance to end for last section
             }
 
             if (log != null)
@@ -151,12 +291,29 @@ public class CIPMultiRequestProtocol extends ProtocolAdapter
                         .append(" \\/\\/ (offset ").append(off)
                         .append(" bytes)\n");
             }
-            this.services[i].decode(buf, section_length, log);
+            try
+            {
+                this.services[i].decode(buf, section_length, log);
+            }
+            catch (final CipException ex)
+            {
+                // Status is recorded in the service, continue with the next reply
+                if (error == null)
+                {
+                    error = ex;
+                }
+            }
+            buf.position(start + off + section_length);
             if (log != null)
             {
                 log.append("    /\\/\\ response ").append(i + 1)
                         .append(" /\\/\\\n");
             }
         }
+        // Report the first error of an embedded service
+        if (error != null)
+        {
+            throw error;
+        }
     }
 }
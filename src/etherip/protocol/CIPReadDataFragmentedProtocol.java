@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+import etherip.types.CIPData;
+import etherip.types.CIPData.Type;
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#CIP_ReadDataFragmented}
+ * <p>
+ * Requests the data of a tag starting at a byte offset. The received fragment is copied into either a {@link ByteBuffer} or a {@link CIPData}.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CIPReadDataFragmentedProtocol extends ProtocolAdapter
+{
+    private final short count;
+    private final int offset;
+    private final ByteBuffer buffer;
+    private final CIPData data;
+    private Type type = null;
+    private short struct_detail = 0;
+    private int fragment_size = 0;
+
+    /**
+     * Create a fragmented read that places the received bytes into a buffer
+     *
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param buffer
+     *            {@link ByteBuffer} where the fragment is placed, starting at its current position
+     */
+    public CIPReadDataFragmentedProtocol(final short count, final int offset,
+            final ByteBuffer buffer)
+    {
+        this.count = count;
+        this.offset = offset;
+        this.buffer = buffer;
+        this.data = null;
+    }
+
+    /**
+     * Create a fragmented read that places the received bytes into {@link CIPData}
+     *
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param data
+     *            {@link CIPData} where the fragment is placed at the offset. Must be of the type of the tag.
+     */
+    public CIPReadDataFragmentedProtocol(final short count, final int offset,
+            final CIPData data)
+    {
+        this.count = count;
+        this.offset = offset;
+        this.buffer = null;
+        this.data = data;
+    }
+
+    @Override
+    public int getRequestSize()
+    {
+        return 6;
+    }
+
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+    {
+        buf.putShort(this.count);
+        buf.putInt(this.offset);
+        if (log != null)
+        {
+            log.append("UINT elements           : ").append(this.count)
+                    .append("\n");
+            log.append("UDINT offset            : ").append(this.offset)
+                    .append("\n");
+        }
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        this.type = Type.forCode(buf.getShort());
+        int size = available - 2;
+        if (this.type == Type.STRUCT)
+        {
+            this.struct_detail = buf.getShort();
+            size -= 2;
+        }
+        if (log != null)
+        {
+            log.append("UINT type               : ").append(this.type)
+                    .append("\n");
+            log.append("USINT data              : ").append(size)
+                    .append(" bytes at offset ").append(this.offset)
+                    .append("\n");
+        }
+
+        final int limit = buf.limit();
+        buf.limit(buf.position() + size);
+        try
+        {
+            if (this.data == null)
+            {
+                this.buffer.put(buf);
+            }
+            else
+            {
+                if (this.data.getType() != this.type)
+                {
+                    throw new Exception("Received " + this.type
+                            + " data for " + this.data.getType());
+                }
+                if (this.type == Type.STRUCT)
+                {
+                    final ByteBuffer detail = ByteBuffer.allocate(2);
+                    detail.order(buf.order());
+                    detail.putShort(0, this.struct_detail);
+                    this.data.putRaw(0, detail);
+                    this.data.putRaw(2 + this.offset, buf);
+                }
+                else
+                {
+                    this.data.putRaw(this.offset, buf);
+                }
+            }
+        }
+        finally
+        {
+            buf.limit(limit);
+        }
+        this.fragment_size = size;
+    }
+
+    /** @return Data type of the tag, <code>null</code> if nothing was received */
+    final public Type getType()
+    {
+        return this.type;
+    }
+
+    /** @return Structure detail for {@link Type#STRUCT}, 0 for other types */
+    final public short getStructDetail()
+    {
+        return this.struct_detail;
+    }
+
+    /** @return Number of data bytes in the received fragment */
+    final public int getFragmentSize()
+    {
+        return this.fragment_size;
+    }
+}
@@ -22,13 +22,15 @@ public class CIPReadDataProtocol extends ProtocolAdapter
 {
     private CIPData data;
     private final short count;
+    private final boolean view;
+    private CIPData target;
 
     /**
      * Create a read protocol message that requests a single element
      */
     public CIPReadDataProtocol()
     {
-        this.count = 1;
+        this((short) 1);
     }
 
     /**
@@ -37,8 +39,38 @@ public class CIPReadDataProtocol extends ProtocolAdapter
      * @param count
      */
     public CIPReadDataProtocol(final short count)
+    {
+        this(count, false);
+    }
+
+    /**
+     * Create a read protocol message that reqeusts one or more elements if request is an array
+     *
+     * @param count
+     *            Number of elements to read
+     * @param view
+     *            Decode into a {@link CIPData#view(CIPData.Type, ByteBuffer, int)} of the receive buffer instead of a copy?
+     */
+    public CIPReadDataProtocol(final short count, final boolean view)
     {
         this.count = count;
+        this.view = view;
+        this.target = null;
+    }
+
+    /**
+     * Create a read protocol message that updates existing data
+     *
+     * @param count
+     *            Number of elements to read
+     * @param target
+     *            {@link CIPData} that is updated in place if the received type and size match, otherwise new data is created. May be <code>null</code>.
+     */
+    public CIPReadDataProtocol(final short count, final CIPData target)
+    {
+        this.count = count;
+        this.view = false;
+        this.target = target;
     }
 
     @Override
@@ -71,9 +103,21 @@ public class CIPReadDataProtocol extends ProtocolAdapter
             return;
         }
         final CIPData.Type type = CIPData.Type.forCode(buf.getShort());
-        final byte[] raw = new byte[available - 2];
-        buf.get(raw);
-        this.data = new CIPData(type, raw);
+        if (this.target != null && this.update(type, buf, available - 2))
+        {
+            this.data = this.target;
+        }
+        else if (this.view)
+        {
+            this.data = CIPData.view(type, buf, available - 2);
+            buf.position(buf.position() + available - 2);
+        }
+        else
+        {
+            final byte[] raw = new byte[available - 2];
+            buf.get(raw);
+            this.data = new CIPData(type, raw);
+        }
         if (log != null)
         {
             log.append("USINT type, data        : ").append(this.data)
@@ -81,6 +125,31 @@ public class CIPReadDataProtocol extends ProtocolAdapter
         }
     }
 
+    /**
+     * @param target
+     *            {@link CIPData} to update in place with the next response, may be <code>null</code>
+     */
+    public void setTarget(final CIPData target)
+    {
+        this.target = target;
+    }
+
+    /** @return <code>true</code> if the target was updated with the next size bytes of the buffer */
+    private boolean update(final CIPData.Type type, final ByteBuffer buf,
+            final int size)
+    {
+        final int limit = buf.limit();
+        buf.limit(buf.position() + size);
+        try
+        {
+            return this.target.update(type, buf);
+        }
+        finally
+        {
+            buf.limit(limit);
+        }
+    }
+
     final public CIPData getData()
     {
         return this.data;
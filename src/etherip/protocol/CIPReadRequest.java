@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.Symbol;
+
+import etherip.data.Symbol;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+
+/**
+ * Definition of a {@link CNService#CIP_ReadData} request
+ * <p>
+ * Describes what to read, but holds no response. The definition is immutable and may be issued any number of times, also by concurrent or pipelined exchanges, each of which uses its own
+ * {@link MRChipReadProtocol} for the response.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final public class CIPReadRequest
+{
+    final private CNPath path;
+    final private short count;
+    final private int request_size;
+    final private int response_size;
+
+    /**
+     * Initialize
+     *
+     * @param tag
+     *            Name of tag to read
+     * @param count
+     *            Number of elements to read
+     */
+    public CIPReadRequest(final String tag, final short count)
+    {
+        this(Symbol(tag), count);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag, for example from {@link Connection#getTagPath(String)}
+     * @param count
+     *            Number of elements to read
+     */
+    public CIPReadRequest(final CNPath path, final short count)
+    {
+        this(path, count, MRChipReadProtocol.getResponseSize((Symbol) null, count));
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag, for example from {@link Connection#getTagPath(String)}
+     * @param count
+     *            Number of elements to read
+     * @param response_size
+     *            Expected response size, for example from {@link Connection#getReadResponseSize(String, short)}
+     */
+    public CIPReadRequest(final CNPath path, final short count, final int response_size)
+    {
+        this.path = path;
+        this.count = count;
+        // Service, path, element count
+        this.request_size = 2 + path.getRequestSize() + 2;
+        this.response_size = response_size;
+    }
+
+    /** @return Path to the tag */
+    public CNPath getPath()
+    {
+        return this.path;
+    }
+
+    /** @return Number of elements to read */
+    public short getCount()
+    {
+        return this.count;
+    }
+
+    /** @return Size of the message router request */
+    public int getRequestSize()
+    {
+        return this.request_size;
+    }
+
+    /** @return Expected size of the message router response */
+    public int getResponseSize()
+    {
+        return this.response_size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Read " + this.path + ", " + this.count + " elements";
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+import etherip.types.CIPData;
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#CIP_WriteDataFragmented}
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CIPWriteDataFragmentedProtocol extends ProtocolAdapter
+{
+    final private CIPData data;
+    final private int offset;
+    final private int length;
+
+    /**
+     * @param data
+     *            {@link CIPData} to write
+     * @param offset
+     *            Byte offset of the fragment
+     * @param length
+     *            Number of bytes in the fragment
+     */
+    public CIPWriteDataFragmentedProtocol(final CIPData data, final int offset,
+            final int length)
+    {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int getRequestSize()
+    {
+        return getHeaderSize(this.data) + this.length;
+    }
+
+    /**
+     * @param data
+     *            {@link CIPData} to write
+     * @return Size of type, element count and offset that precede the data bytes of each fragment
+     */
+    public static int getHeaderSize(final CIPData data)
+    {
+        final int type_size = data.getType() == CIPData.Type.STRUCT ? 4 : 2;
+        return type_size + 2 + 4;
+    }
+
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+            throws Exception
+    {
+        this.data.encodeFragment(buf, this.offset, this.length);
+        if (log != null)
+        {
+            log.append("USINT type, data        : ").append(this.data.getType())
+                    .append(", ").append(this.length).append(" bytes at offset ")
+                    .append(this.offset).append("\n");
+        }
+    }
+}
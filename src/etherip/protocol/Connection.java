@@ -8,11 +8,24 @@
 package etherip.protocol;
 
 import static etherip.EtherNetIP.logger;
+import static etherip.protocol.Encapsulation.Command.SendRRData;
+import static etherip.protocol.Encapsulation.Command.SendUnitData;
+import static etherip.types.CNPath.MessageRouter;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 
+import etherip.data.CipException;
+import etherip.data.Symbol;
+import etherip.data.SymbolTable;
+import etherip.types.CIPData;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+import etherip.util.Hexdump;
+
 /**
  * Connection to EtherNet/IP device
  * <p>
@@ -26,17 +39,40 @@ public abstract class Connection implements AutoCloseable
     /** EtherIP uses little endian */
     final public static ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
 
-    final private static int BUFFER_SIZE = 600;
+    /** Default size of the send and receive buffers */
+    final public static int DEFAULT_BUFFER_SIZE = 600;
 
     protected final int slot;
 
-    protected final ByteBuffer buffer;
+    /** Buffer for encoding requests */
+    protected ByteBuffer buffer;
+
+    /** Buffer for received responses */
+    protected ByteBuffer receive_buffer;
 
     private int session = 0;
 
     protected long timeout_ms = 2000;
     protected int port = 0xAF12;
 
+    /** Maximum number of requests that may await a response */
+    protected int pipeline_depth = 1;
+
+    /** Connected messaging, or <code>null</code> for unconnected messages */
+    private ForwardOpenProtocol connected = null;
+
+    /** Sequence count of connected messages */
+    private short sequence = 0;
+
+    /** Symbols used to address tags by instance, or <code>null</code> for symbolic paths */
+    private volatile SymbolTable symbols = null;
+
+    /** Queue of requests from several threads, or <code>null</code> */
+    private volatile RequestQueue queue = null;
+
+    /** IP address of device */
+    private final String address;
+
     /**
      * Initialize
      *
@@ -51,10 +87,61 @@ public abstract class Connection implements AutoCloseable
     {
         logger.log(Level.INFO, "Connecting to {0}:{1}",
                 new Object[] { address, String.format("0x%04X", this.port) });
+        this.address = address;
         this.slot = slot;
 
-        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-        this.buffer.order(BYTE_ORDER);
+        this.buffer = allocate(DEFAULT_BUFFER_SIZE);
+        this.receive_buffer = allocate(DEFAULT_BUFFER_SIZE);
+    }
+
+    private static ByteBuffer allocate(final int size)
+    {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(BYTE_ORDER);
+        return buffer;
+    }
+
+    /**
+     * Configure buffer sizes
+     * <p>
+     * The buffers limit the size of requests and responses, see {@link #getMaxMessageSize()}. They are enlarged as needed when connected messaging negotiates a larger connection size.
+     * <p>
+     * May only be called while no request is being handled.
+     *
+     * @param send_size
+     *            Size of the buffer for requests
+     * @param receive_size
+     *            Size of the buffer for responses
+     */
+    public void setBufferSizes(final int send_size, final int receive_size)
+    {
+        final int min = Encapsulation.ENCAPSULATION_HEADER_SIZE
+                + SendRRDataProtocol.RR_DATA_HEADER_SIZE;
+        if (send_size < min || receive_size < min)
+        {
+            throw new IllegalArgumentException("Buffer sizes " + send_size
+                    + ", " + receive_size + " must be at least " + min);
+        }
+        if (send_size != this.buffer.capacity())
+        {
+            this.buffer = allocate(send_size);
+        }
+        if (receive_size != this.receive_buffer.capacity())
+        {
+            this.receive_buffer = allocate(receive_size);
+        }
+    }
+
+    /** @return Size of the buffer for requests */
+    public int getSendBufferSize()
+    {
+        return this.buffer.capacity();
+    }
+
+    /** @return Size of the buffer for responses */
+    public int getReceiveBufferSize()
+    {
+        return this.receive_buffer.capacity();
     }
 
     /** @return Slot number 0, 1, .. of the controller within PLC crate */
@@ -78,12 +165,296 @@ public abstract class Connection implements AutoCloseable
         return this.session;
     }
 
-    /** @return {@link ByteBuffer} */
+    /**
+     * Configure request pipelining
+     * <p>
+     * With a depth above 1, {@link #execute(Encapsulation...)} sends up to that many requests before waiting for the first response. Responses are matched to requests via the transaction ID in the
+     * encapsulation 'context'. Connections that cannot pipeline handle requests one by one.
+     *
+     * @param depth
+     *            Maximum number of outstanding requests, 1 to disable pipelining
+     */
+    public void setPipelineDepth(final int depth)
+    {
+        if (depth < 1)
+        {
+            throw new IllegalArgumentException("Pipeline depth must be at least 1, got " + depth);
+        }
+        this.pipeline_depth = depth;
+    }
+
+    /** @return Maximum number of outstanding requests */
+    public int getPipelineDepth()
+    {
+        return this.pipeline_depth;
+    }
+
+    /**
+     * Use connected messaging
+     * <p>
+     * Once a connection has been opened via Forward_Open, requests created by {@link #createEncapsulation(Protocol)} are sent on that connection.
+     *
+     * @param forward_open
+     *            {@link ForwardOpenProtocol} that opened the connection, or <code>null</code> to return to unconnected messages
+     */
+    public void setConnected(final ForwardOpenProtocol forward_open)
+    {
+        this.connected = forward_open;
+        if (forward_open == null)
+        {
+            return;
+        }
+        // Enlarge buffers to handle messages of the negotiated size
+        final int needed = Encapsulation.ENCAPSULATION_HEADER_SIZE
+                + SendUnitDataProtocol.UNIT_DATA_HEADER_SIZE
+                + forward_open.getSize();
+        if (needed > this.buffer.capacity()
+                || needed > this.receive_buffer.capacity())
+        {
+            logger.log(Level.FINE,
+                    "Enlarging buffers to {0} bytes for connection size {1}",
+                    new Object[] { needed, forward_open.getSize() });
+            this.setBufferSizes(Math.max(needed, this.buffer.capacity()),
+                    Math.max(needed, this.receive_buffer.capacity()));
+        }
+    }
+
+    /** @return {@link ForwardOpenProtocol} of connected messaging, or <code>null</code> */
+    public ForwardOpenProtocol getConnected()
+    {
+        return this.connected;
+    }
+
+    /** @return <code>true</code> when using connected messaging */
+    public boolean isConnected()
+    {
+        return this.connected != null;
+    }
+
+    /**
+     * Address tags by their Symbol Object instance
+     *
+     * @param symbols
+     *            {@link SymbolTable} of the device, or <code>null</code> to address tags by name
+     */
+    public void setSymbolTable(final SymbolTable symbols)
+    {
+        this.symbols = symbols;
+    }
+
+    /** @return {@link SymbolTable} used to address tags, or <code>null</code> */
+    public SymbolTable getSymbolTable()
+    {
+        return this.symbols;
+    }
+
+    /**
+     * Get path to a tag
+     * <p>
+     * When a {@link SymbolTable} is set and contains the tag, the path addresses the tag by its Symbol Object instance. Otherwise it contains the tag name. Program-scoped tags are named
+     * "Program:name.tag".
+     *
+     * @param tag
+     *            Tag name, may include array index and members
+     * @return {@link CNPath} to the tag
+     */
+    public CNPath getTagPath(final String tag)
+    {
+        final Symbol symbol = this.getSymbol(tag);
+        if (symbol != null)
+        {
+            if (symbol.getProgram() != null)
+            {
+                return CNPath.ProgramSymbolInstance(symbol.getProgram(),
+                        symbol.getInstance(), tag);
+            }
+            return CNPath.SymbolInstance(symbol.getInstance(), tag);
+        }
+        return CNPath.Symbol(tag);
+    }
+
+    /**
+     * Get symbol of a tag
+     *
+     * @param tag
+     *            Tag name, may include array index and members
+     * @return {@link Symbol} of the tag, i.e. of the structure for a member or of the array for an element. <code>null</code> if there is no {@link SymbolTable} or it does not contain
+     *         the tag.
+     */
+    public Symbol getSymbol(final String tag)
+    {
+        final SymbolTable symbols = this.symbols;
+        if (symbols != null)
+        {
+            // Locate end of the tag name, skipping "Program:..." scope
+            int end = 0;
+            if (tag.regionMatches(true, 0, Symbol.PROGRAM_PREFIX, 0,
+                    Symbol.PROGRAM_PREFIX.length()))
+            {
+                end = tag.indexOf('.') + 1;
+                if (end <= 0)
+                {
+                    end = tag.length();
+                }
+            }
+            while (end < tag.length() && tag.charAt(end) != '.'
+                    && tag.charAt(end) != '[')
+            {
+                ++end;
+            }
+            return symbols.get(tag.substring(0, end));
+        }
+        return null;
+    }
+
+    /**
+     * Estimate the response size for reading a tag
+     * <p>
+     * Based on the {@link SymbolTable}. For tags that it does not contain, the estimate is optimistic, see {@link MRChipReadProtocol#getResponseSize(Symbol, short)}.
+     *
+     * @param tag
+     *            Tag name, may include array index and members
+     * @param count
+     *            Number of elements to read
+     * @return Expected response size, including the message router response header
+     */
+    public int getReadResponseSize(final String tag, final short count)
+    {
+        return MRChipReadProtocol.getResponseSize(this.getSymbol(tag), count);
+    }
+
+    /**
+     * Create definition of a read request
+     *
+     * @param tag
+     *            Tag name, may include array index and members
+     * @param count
+     *            Number of elements to read
+     * @return {@link CIPReadRequest} with path and expected response size based on the {@link SymbolTable}
+     */
+    public CIPReadRequest createReadRequest(final String tag, final short count)
+    {
+        return new CIPReadRequest(this.getTagPath(tag), count,
+                this.getReadResponseSize(tag, count));
+    }
+
+    /**
+     * Get size limit for message router requests and responses
+     * <p>
+     * For connected messaging, this is the connection size minus the sequence count. For unconnected messages it's the CM_Unconnected_Send limit. Both are further limited by the buffer sizes.
+     *
+     * @return Maximum size of a message router request or response
+     */
+    public int getMaxMessageSize()
+    {
+        final int buffer_size = Math.min(this.buffer.capacity(),
+                this.receive_buffer.capacity())
+                - Encapsulation.ENCAPSULATION_HEADER_SIZE;
+        if (this.connected != null)
+        {
+            return Math.min(this.connected.getSize(),
+                    buffer_size - SendUnitDataProtocol.UNIT_DATA_HEADER_SIZE)
+                    - 2;
+        }
+        return Math.min(UnconnectedSendProtocol.MAX_MESSAGE_SIZE,
+                buffer_size - SendRRDataProtocol.RR_DATA_HEADER_SIZE
+                        - UnconnectedSendProtocol.OVERHEAD);
+    }
+
+    /**
+     * Create encapsulation for a message router request
+     * <p>
+     * When connected, the request is sent via SendUnitData on the connection. Otherwise it is sent via SendRRData and CM_Unconnected_Send to the controller in the slot of this connection.
+     *
+     * @param request
+     *            Message router request, for example {@link MRChipReadProtocol}
+     * @return {@link Encapsulation}
+     */
+    public Encapsulation createEncapsulation(final Protocol request)
+    {
+        if (this.connected != null)
+        {
+            return new Encapsulation(SendUnitData, this.session,
+                    new SendUnitDataProtocol(
+                            this.connected.getRequestConnectionID(),
+                            this.nextSequence(), request));
+        }
+        return new Encapsulation(SendRRData, this.session,
+                new SendRRDataProtocol(
+                        new UnconnectedSendProtocol(this.slot, request)));
+    }
+
+    /** @return Next sequence count for connected messages */
+    private synchronized short nextSequence()
+    {
+        return ++this.sequence;
+    }
+
+    /**
+     * Configure a request queue for use by multiple threads
+     * <p>
+     * By default, a connection may only be used by one thread at a time. With a request queue, threads submit their requests to the queue and wait while a dedicated I/O thread handles them in
+     * the order of submission, one caller after the other. Requests of one call, for example the packets of a multi-request, are still pipelined when configured via
+     * {@link #setPipelineDepth(int)}.
+     * <p>
+     * Settings like the buffer sizes or connected messaging should be configured while no requests are handled.
+     * <p>
+     * Since the I/O thread reads the responses of all callers into the same receive buffer, a caller must not keep a {@link CIPData#view(CIPData.Type, ByteBuffer, int)} of that buffer.
+     *
+     * @param capacity
+     *            Maximum number of waiting calls. Callers wait up to the timeout for room in a full queue. 0 to remove the queue after handling the queued requests.
+     * @throws Exception
+     *             on error
+     */
+    public void setRequestQueue(final int capacity) throws Exception
+    {
+        final RequestQueue old;
+        synchronized (this)
+        {
+            old = this.queue;
+            this.queue = capacity > 0
+                    ? new RequestQueue("Requests " + this.address, capacity, this.timeout_ms)
+                    : null;
+        }
+        if (old != null)
+        {
+            old.stop();
+        }
+    }
+
+    /** @return <code>true</code> when a request queue is configured, see {@link #setRequestQueue(int)} */
+    public boolean hasRequestQueue()
+    {
+        return this.queue != null;
+    }
+
+    /**
+     * Check if a request needs to be handed to the I/O thread
+     *
+     * @return {@link RequestQueue} to which the calling thread must hand its request, or <code>null</code> if the caller performs it
+     */
+    RequestQueue getCallerQueue()
+    {
+        final RequestQueue queue = this.queue;
+        if (queue == null || queue.isOwner())
+        {
+            return null;
+        }
+        return queue;
+    }
+
+    /** @return {@link ByteBuffer} for requests */
     public ByteBuffer getBuffer()
     {
         return this.buffer;
     }
 
+    /** @return {@link ByteBuffer} for responses */
+    public ByteBuffer getReceiveBuffer()
+    {
+        return this.receive_buffer;
+    }
+
     public abstract boolean isOpen() throws Exception;
 
     /**
@@ -107,6 +478,60 @@ public abstract class Connection implements AutoCloseable
     protected abstract void read(final ProtocolDecoder decoder)
             throws Exception;
 
+    /**
+     * Decode response at the start of the {@link #receive_buffer}
+     *
+     * @param decoder
+     *            {@link ProtocolDecoder}
+     * @param size
+     *            Size of the response
+     * @throws Exception
+     *             on error
+     */
+    protected void decode(final ProtocolDecoder decoder, final int size)
+            throws Exception
+    {
+        final int received = this.receive_buffer.position();
+        this.receive_buffer.flip();
+        this.receive_buffer.limit(size);
+        if (logger.isLoggable(Level.FINEST))
+        {
+            logger.log(Level.FINEST, "Data read ({0} bytes):\n{1}",
+                    new Object[] { size,
+                            Hexdump.toHexdump(this.receive_buffer) });
+        }
+
+        final StringBuilder log = logger.isLoggable(Level.FINER)
+                ? new StringBuilder() : null;
+        try
+        {
+            decoder.decode(this.receive_buffer, size, log);
+        }
+        finally
+        {
+            if (log != null)
+            {
+                logger.finer("Protocol Decoding\n" + log.toString());
+            }
+            // Restore buffer to 'filling' state
+            this.receive_buffer.limit(this.receive_buffer.capacity());
+            this.receive_buffer.position(received);
+        }
+    }
+
+    /**
+     * Remove a handled response from the start of the {@link #receive_buffer}, keeping what was already read of the next response
+     *
+     * @param size
+     *            Size of the handled response
+     */
+    protected void consume(final int size)
+    {
+        this.receive_buffer.flip();
+        this.receive_buffer.position(size);
+        this.receive_buffer.compact();
+    }
+
     /**
      * Write protocol request and handle response
      *
@@ -117,8 +542,165 @@ public abstract class Connection implements AutoCloseable
      */
     public void execute(final Protocol protocol) throws Exception
     {
+        final RequestQueue queue = this.getCallerQueue();
+        if (queue != null)
+        {
+            queue.execute(() -> this.execute(protocol));
+            return;
+        }
         this.write(protocol);
         this.read(protocol);
     }
 
+    /**
+     * Write several requests and handle their responses
+     * <p>
+     * Base implementation handles one request after the other. Derived classes may pipeline the requests, see {@link #setPipelineDepth(int)}.
+     *
+     * @param requests
+     *            {@link Encapsulation}s to execute
+     * @throws Exception
+     *             on error. When pipelining, all responses are still read to keep the connection in sync, then the first error is reported.
+     */
+    public void execute(final Encapsulation... requests) throws Exception
+    {
+        final RequestQueue queue = this.getCallerQueue();
+        if (queue != null)
+        {
+            queue.execute(() -> this.execute(requests));
+            return;
+        }
+        for (final Encapsulation request : requests)
+        {
+            this.execute((Protocol) request);
+        }
+    }
+
+    /**
+     * Prepare an {@link Encapsulation} that was already executed to be sent again
+     * <p>
+     * Assigns a new transaction and, when connected, the next sequence count.
+     *
+     * @param request
+     *            {@link Encapsulation} created by this connection
+     * @see Encapsulation#setReusable()
+     */
+    public void prepareResend(final Encapsulation request)
+    {
+        request.renew(this.session,
+                this.connected != null ? this.nextSequence() : 0);
+    }
+
+    /**
+     * Create encapsulations that perform message router requests in as few multi-requests as the message size limits allow
+     *
+     * @param services
+     *            Message router requests, for example {@link MRChipReadProtocol}
+     * @param response_sizes
+     *            Expected response size of each request
+     * @return {@link Encapsulation}s to execute
+     */
+    public Encapsulation[] createMultiRequest(
+            final MessageRouterProtocol[] services, final int[] response_sizes)
+    {
+        final int limit = this.getMaxMessageSize();
+        final List<CIPMultiRequestProtocol> packets = CIPMultiRequestProtocol
+                .pack(services, response_sizes, limit, limit);
+        final Encapsulation[] encaps = new Encapsulation[packets.size()];
+        for (int i = 0; i < encaps.length; ++i)
+        {
+            encaps[i] = this.createEncapsulation(new MessageRouterProtocol(
+                    CNService.CIP_MultiRequest, MessageRouter(),
+                    packets.get(i)));
+        }
+        return encaps;
+    }
+
+    /**
+     * Get response size to assume when repeating reads whose replies did not fit
+     * <p>
+     * First assumes {@link MRChipReadProtocol#DEFAULT_RESPONSE_SIZE}, then one read per message.
+     *
+     * @param attempt
+     *            0 for the first repetition, 1 for the next, ..
+     * @return Expected response size of each read, 0 when reads should not be repeated again
+     */
+    public int getRepeatedReadResponseSize(final int attempt)
+    {
+        switch (attempt)
+        {
+        case 0:
+            return MRChipReadProtocol.DEFAULT_RESPONSE_SIZE;
+        case 1:
+            return this.getMaxMessageSize();
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Execute message router requests in as few multi-requests as the message size limits allow
+     * <p>
+     * When the device reports that replies to reads did not fit the response because the expected response sizes were too small, those reads are repeated with larger estimates, see
+     * {@link #getRepeatedReadResponseSize(int)}.
+     *
+     * @param services
+     *            Message router requests, for example {@link MRChipReadProtocol}
+     * @param response_sizes
+     *            Expected response size of each request
+     * @return Number of network transactions
+     * @throws Exception
+     *             on error
+     */
+    public int executeMultiRequest(final MessageRouterProtocol[] services,
+            final int[] response_sizes) throws Exception
+    {
+        final Encapsulation[] encaps = this.createMultiRequest(services,
+                response_sizes);
+        try
+        {
+            this.execute(encaps);
+            return encaps.length;
+        }
+        catch (final CipException ex)
+        {
+            MessageRouterProtocol[] repeat = CIPMultiRequestProtocol
+                    .getReadsToRepeat(services);
+            if (repeat.length <= 0)
+            {
+                throw ex;
+            }
+            int transactions = encaps.length;
+            Exception error = ex;
+            for (int attempt = 0; repeat.length > 0; ++attempt)
+            {
+                final int size = this.getRepeatedReadResponseSize(attempt);
+                if (size <= 0)
+                {
+                    break;
+                }
+                logger.log(Level.FINE,
+                        "Repeating {0} reads with response size {1}",
+                        new Object[] { repeat.length, size });
+                final int[] sizes = new int[repeat.length];
+                Arrays.fill(sizes, size);
+                final Encapsulation[] again = this.createMultiRequest(repeat,
+                        sizes);
+                transactions += again.length;
+                try
+                {
+                    this.execute(again);
+                }
+                catch (final CipException retry_error)
+                {
+                    // Status of each read is checked below
+                    error = retry_error;
+                }
+                repeat = CIPMultiRequestProtocol.getReadsToRepeat(services);
+            }
+            CIPMultiRequestProtocol.checkReplies(services, error);
+            return transactions;
+        }
+    }
+
 }
@@ -8,7 +8,6 @@
 package etherip.protocol;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import etherip.util.Hexdump;
 
@@ -43,14 +42,22 @@ public class Encapsulation implements Protocol
         IndicateStatus(0x0072),
         Cancel(0x0073); /* "Encapsulation Overview" slides */
 
-        public static Command forCode(final short code)
+        /** Commands, indexed by code */
+        final private static Command[] commands = new Command[0x80];
+
+        static
         {
             for (final Command command : values())
             {
-                if (command.code() == code)
-                {
-                    return command;
-                }
+                commands[command.code] = command;
+            }
+        }
+
+        public static Command forCode(final short code)
+        {
+            if (code >= 0 && code < commands.length)
+            {
+                return commands[code];
             }
             return null;
         }
@@ -74,11 +81,17 @@ public class Encapsulation implements Protocol
         }
     };
 
-    private final byte[] context = Transaction.format(Transaction.nextTransaction());;
+    private long transaction = Transaction.nextTransaction();
     final private Command command;
     private int session;
     final private Protocol body;
 
+    /** Keep the encoded request to send it again? */
+    private boolean reusable = false;
+
+    /** Encoded request, or <code>null</code> */
+    private byte[] image = null;
+
     public Encapsulation(final Command command, final int session,
             final Protocol body)
     {
@@ -94,10 +107,73 @@ public class Encapsulation implements Protocol
         return ENCAPSULATION_HEADER_SIZE + this.body.getRequestSize();
     }
 
+    /**
+     * Keep the encoded request to send it again
+     * <p>
+     * Meant for requests that are sent over and over with the same body, like the reads of a scan list. The request is encoded once, later sends copy the encoded bytes and only update the session,
+     * context and, for connected messages, the sequence count. The body must not change after the first send.
+     *
+     * @see Connection#prepareResend(Encapsulation)
+     */
+    public void setReusable()
+    {
+        this.reusable = true;
+    }
+
+    /**
+     * Prepare to send this request again
+     *
+     * @param session
+     *            Session ID
+     * @param sequence
+     *            Sequence count, used for connected messages
+     */
+    void renew(final int session, final short sequence)
+    {
+        this.transaction = Transaction.nextTransaction();
+        this.session = session;
+        if (this.body instanceof SendUnitDataProtocol)
+        {
+            ((SendUnitDataProtocol) this.body).setSequence(sequence);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void encode(final ByteBuffer buf, final StringBuilder log)
             throws Exception
+    {
+        // Re-use encoded request, but not when a log of the details is requested
+        if (this.image != null && log == null)
+        {
+            final int start = buf.position();
+            buf.put(this.image);
+            buf.putInt(start + 4, this.session);
+            buf.position(start + 12);
+            Transaction.format(this.transaction, buf);
+            buf.position(start + this.image.length);
+            if (this.body instanceof SendUnitDataProtocol)
+            {
+                ((SendUnitDataProtocol) this.body).patchSequence(buf,
+                        start + ENCAPSULATION_HEADER_SIZE);
+            }
+            return;
+        }
+        final int start = buf.position();
+        this.encodeRequest(buf, log);
+        if (this.reusable)
+        {
+            this.image = new byte[buf.position() - start];
+            for (int i = 0; i < this.image.length; ++i)
+            {
+                this.image[i] = buf.get(start + i);
+            }
+        }
+    }
+
+    /** Encode the complete request */
+    private void encodeRequest(final ByteBuffer buf, final StringBuilder log)
+            throws Exception
     {
         final int status = 0;
         final int options = 0;
@@ -106,7 +182,7 @@ public class Encapsulation implements Protocol
         buf.putShort((short) this.body.getRequestSize());
         buf.putInt(this.session);
         buf.putInt(status);
-        buf.put(context);
+        Transaction.format(this.transaction, buf);
         buf.putInt(options);
 
         if (log != null)
@@ -121,7 +197,7 @@ public class Encapsulation implements Protocol
             log.append(String.format("UDINT status            : 0x%08X\n",
                     status));
             log.append("USINT context[8]        : '")
-                    .append(Hexdump.escapeChars(context)).append("'\n");
+                    .append(Hexdump.escapeChars(Transaction.format(this.transaction))).append("'\n");
             log.append(String.format("UDINT options           : 0x%08X\n",
                     options));
         }
@@ -197,10 +273,14 @@ public class Encapsulation implements Protocol
 
         final int status = buf.getInt();
 
-        final byte[] recvd_context = new byte[8];
-        buf.get(recvd_context);
-        if (!Arrays.equals(recvd_context, context))
-            throw new Exception("Received context " + Hexdump.toAscii(recvd_context) + ", expected " + Hexdump.toAscii(context));
+        final int context_index = buf.position();
+        if (Transaction.parse(buf, context_index) != this.transaction)
+        {
+            final byte[] recvd_context = new byte[8];
+            buf.get(recvd_context);
+            throw new Exception("Received context " + Hexdump.toAscii(recvd_context) + ", expected " + Hexdump.toAscii(Transaction.format(this.transaction)));
+        }
+        buf.position(context_index + 8);
 
         final int options = buf.getInt();
 
@@ -216,7 +296,7 @@ public class Encapsulation implements Protocol
             log.append(String.format("UDINT status            : 0x%08X (%s)\n",
                     status, this.getStatusMessage(status)));
             log.append("USINT context[8]        : '")
-                    .append(Hexdump.escapeChars(context)).append("'\n");
+                    .append(Hexdump.escapeChars(Transaction.format(this.transaction))).append("'\n");
             log.append(String.format("UDINT options           : 0x%08X\n",
                     options));
         }
@@ -262,4 +342,22 @@ public class Encapsulation implements Protocol
     {
         return this.session;
     }
+
+    /** @return Transaction ID sent as the 'context' of this request */
+    final public long getTransaction()
+    {
+        return this.transaction;
+    }
+
+    /**
+     * Peek at the transaction ID in a received encapsulation header
+     *
+     * @param buf
+     *            {@link ByteBuffer} that holds at least the encapsulation header, starting at index 0
+     * @return Transaction ID from the 'context', or -1 if the context does not hold a transaction
+     */
+    public static long getTransaction(final ByteBuffer buf)
+    {
+        return Transaction.parse(buf, 12);
+    }
 }
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.EtherNetIP.logger;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Event loop that handles the network I/O of many {@link EventLoopConnection}s in one thread
+ * <p>
+ * Instead of a thread per connection that waits for each response, one thread uses a {@link Selector} to read and write on all connections as data becomes available, and to detect request
+ * timeouts. Applications that poll many devices can distribute them over a few event loops.
+ * <p>
+ * Completion callbacks of requests are invoked on the event loop thread, so they must not block.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class EventLoop implements Runnable, AutoCloseable
+{
+    final private Selector selector;
+
+    final private Thread thread;
+
+    /** Tasks to run on the event loop thread */
+    final private Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /** Connections, only accessed on the event loop thread */
+    final private List<EventLoopConnection> connections = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Create and start event loop
+     *
+     * @param name
+     *            Name of the event loop thread
+     * @throws Exception
+     *             on error
+     */
+    public EventLoop(final String name) throws Exception
+    {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Connect to device via TCP
+     * <p>
+     * Requests may be submitted right away, they are sent once the connection is established.
+     *
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @return {@link EventLoopConnection}
+     * @throws Exception
+     *             on error
+     */
+    public EventLoopConnection connectTcp(final String address,
+            final int slot) throws Exception
+    {
+        return new EventLoopConnection(this, address, slot, true);
+    }
+
+    /**
+     * Connect to device via UDP
+     *
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @return {@link EventLoopConnection}
+     * @throws Exception
+     *             on error
+     */
+    public EventLoopConnection connectUdp(final String address,
+            final int slot) throws Exception
+    {
+        return new EventLoopConnection(this, address, slot, false);
+    }
+
+    /** @return <code>true</code> when called on the event loop thread */
+    public boolean inEventLoop()
+    {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Run task on the event loop thread
+     *
+     * @param task
+     *            Task to run
+     * @return <code>true</code> if the task will run, <code>false</code> if it was rejected because the event loop has been closed
+     */
+    boolean execute(final Runnable task)
+    {
+        this.tasks.add(task);
+        // Once closed, the loop runs the tasks that it already found,
+        // and those that are still queued are rejected
+        if (!this.running && this.tasks.remove(task))
+        {
+            return false;
+        }
+        this.selector.wakeup();
+        return true;
+    }
+
+    /**
+     * Register connection with the selector.
+     * <p>
+     * Called on the event loop thread.
+     */
+    SelectionKey register(final EventLoopConnection connection)
+            throws Exception
+    {
+        this.connections.add(connection);
+        return connection.getChannel().register(this.selector, 0,
+                connection);
+    }
+
+    /** Called on the event loop thread when a connection was closed */
+    void unregister(final EventLoopConnection connection)
+    {
+        this.connections.remove(connection);
+    }
+
+    @Override
+    public void run()
+    {
+        while (this.running)
+        {
+            try
+            {
+                // Wait until the next request would time out
+                long next = 0;
+                final long now = System.nanoTime();
+                for (final EventLoopConnection connection : new ArrayList<>(this.connections))
+                {
+                    final long deadline = connection.checkTimeout(now);
+                    if (deadline != 0 && (next == 0 || deadline - next < 0))
+                    {
+                        next = deadline;
+                    }
+                }
+                if (next == 0)
+                {
+                    this.selector.select();
+                }
+                else
+                {
+                    this.selector.select(Math.max(1, TimeUnit.NANOSECONDS
+                            .toMillis(next - System.nanoTime())));
+                }
+
+                Runnable task;
+                while ((task = this.tasks.poll()) != null)
+                {
+                    task.run();
+                }
+
+                for (final SelectionKey key : this.selector.selectedKeys())
+                {
+                    ((EventLoopConnection) key.attachment()).handle(key);
+                }
+                this.selector.selectedKeys().clear();
+            }
+            catch (final Throwable ex)
+            {
+                logger.log(Level.WARNING, "Event loop error", ex);
+            }
+        }
+
+        // Run tasks submitted before the loop was closed,
+        // for example requests which then fail with the connections
+        Runnable task;
+        while ((task = this.tasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (final Throwable ex)
+            {
+                logger.log(Level.WARNING, "Event loop error", ex);
+            }
+        }
+        for (final EventLoopConnection connection : new ArrayList<>(this.connections))
+        {
+            connection.shutdown(new Exception("Event loop closed"));
+        }
+        try
+        {
+            this.selector.close();
+        }
+        catch (final Exception ex)
+        {
+            // Ignore, closing down
+        }
+    }
+
+    /** Close all connections and stop the event loop */
+    @Override
+    public void close() throws Exception
+    {
+        this.running = false;
+        this.selector.wakeup();
+        if (!this.inEventLoop())
+        {
+            this.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
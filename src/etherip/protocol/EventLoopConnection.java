@@ -0,0 +1,595 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.EtherNetIP.logger;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import etherip.util.Hexdump;
+
+/**
+ * Connection to EtherNet/IP device that is handled by an {@link EventLoop}
+ * <p>
+ * Requests are queued via {@link #submit(Protocol, Completion)} and performed one at a time by the event loop, which invokes the {@link Completion} once the response has been decoded or the request
+ * failed. The blocking <code>execute</code> methods submit requests and wait for them, so the connection can also be used like any other {@link Connection}, just not from within a completion
+ * callback.
+ * <p>
+ * Responses are framed by the encapsulation header. Responses that don't match the transaction of the active request, for example late responses to a request that timed out, are skipped. For UDP,
+ * the device must reply to the port that sent the request.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class EventLoopConnection extends Connection
+{
+    /** Completion of a submitted request */
+    @FunctionalInterface
+    public interface Completion
+    {
+        /**
+         * Called on the event loop thread when a request has been handled
+         *
+         * @param error
+         *            <code>null</code> on success, otherwise the error
+         */
+        public void completed(Exception error);
+    }
+
+    /** Request waiting to be handled */
+    private static class Pending
+    {
+        final ProtocolEncoder encoder;
+        /** Decoder of the response, <code>null</code> when no response is expected */
+        final ProtocolDecoder decoder;
+        final Completion completion;
+        final long timeout_ms;
+
+        Pending(final ProtocolEncoder encoder, final ProtocolDecoder decoder,
+                final Completion completion, final long timeout_ms)
+        {
+            this.encoder = encoder;
+            this.decoder = decoder;
+            this.completion = completion;
+            this.timeout_ms = timeout_ms;
+        }
+    }
+
+    final private EventLoop loop;
+    final private boolean tcp;
+    final private SelectableChannel channel;
+    final private ByteChannel io;
+
+    // Remaining state is only accessed on the event loop thread
+    private SelectionKey key = null;
+
+    /** Has the TCP connection been established? */
+    private boolean ready;
+
+    final private Queue<Pending> queue = new ArrayDeque<>();
+
+    /** Request that is being sent or awaits its response */
+    private Pending active = null;
+
+    /** Timeout of the connect or active request, {@link System#nanoTime()}, 0 for none */
+    private long deadline = 0;
+
+    private volatile boolean open = true;
+
+    /**
+     * Initialize
+     *
+     * @param loop
+     *            {@link EventLoop}
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @param tcp
+     *            Use TCP or UDP?
+     * @throws Exception
+     *             on error
+     */
+    EventLoopConnection(final EventLoop loop, final String address,
+            final int slot, final boolean tcp) throws Exception
+    {
+        super(address, slot);
+        this.loop = loop;
+        this.tcp = tcp;
+        final InetSocketAddress remote = new InetSocketAddress(address,
+                this.port);
+        if (tcp)
+        {
+            final SocketChannel socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.ready = socket.connect(remote);
+            this.channel = socket;
+            this.io = socket;
+        }
+        else
+        {
+            final DatagramChannel datagram = DatagramChannel.open();
+            datagram.configureBlocking(false);
+            datagram.connect(remote);
+            this.ready = true;
+            this.channel = datagram;
+            this.io = datagram;
+        }
+        if (!this.ready)
+        {
+            this.deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(this.timeout_ms);
+        }
+        if (!loop.execute(this::register))
+        {
+            this.open = false;
+            this.channel.close();
+            throw new Exception("Event loop closed");
+        }
+    }
+
+    SelectableChannel getChannel()
+    {
+        return this.channel;
+    }
+
+    private void register()
+    {
+        try
+        {
+            this.key = this.loop.register(this);
+            this.key.interestOps(this.ready ? 0 : SelectionKey.OP_CONNECT);
+            this.startNext();
+        }
+        catch (final Exception ex)
+        {
+            this.shutdown(ex);
+        }
+    }
+
+    /**
+     * Submit a request
+     *
+     * @param request
+     *            {@link Protocol}, typically an {@link Encapsulation}
+     * @param completion
+     *            {@link Completion} that is invoked on the event loop thread
+     */
+    public void submit(final Protocol request, final Completion completion)
+    {
+        this.submit(request, this.timeout_ms, completion);
+    }
+
+    /**
+     * Submit a request
+     *
+     * @param request
+     *            {@link Protocol}, typically an {@link Encapsulation}
+     * @param timeout_ms
+     *            Timeout for the response, counted from when the request is sent
+     * @param completion
+     *            {@link Completion} that is invoked on the event loop thread
+     */
+    public void submit(final Protocol request, final long timeout_ms,
+            final Completion completion)
+    {
+        this.submit(new Pending(request, request, completion, timeout_ms));
+    }
+
+    /**
+     * Submit a request that has no response, for example to un-register the session
+     *
+     * @param request
+     *            {@link ProtocolEncoder}
+     * @param completion
+     *            {@link Completion} that is invoked on the event loop thread once the request has been sent
+     */
+    public void send(final ProtocolEncoder request, final Completion completion)
+    {
+        this.submit(new Pending(request, null, completion, this.timeout_ms));
+    }
+
+    /**
+     * Cancel a submitted request
+     * <p>
+     * A request that is still queued is removed and completes with a {@link CancellationException}. A request that has already been sent is handled as usual.
+     *
+     * @param request
+     *            {@link Protocol} that was submitted
+     */
+    public void cancel(final Protocol request)
+    {
+        this.loop.execute(() ->
+        {
+            final Iterator<Pending> iter = this.queue.iterator();
+            while (iter.hasNext())
+            {
+                final Pending pending = iter.next();
+                if (pending.encoder == request)
+                {
+                    iter.remove();
+                    pending.completion.completed(
+                            new CancellationException("Request cancelled"));
+                }
+            }
+        });
+    }
+
+    private void submit(final Pending pending)
+    {
+        if (!this.open)
+        {
+            pending.completion.completed(new Exception("Connection closed"));
+            return;
+        }
+        if (!this.loop.execute(() -> this.enqueue(pending)))
+        {
+            pending.completion.completed(new Exception("Event loop closed"));
+        }
+    }
+
+    private void enqueue(final Pending pending)
+    {
+        if (!this.open)
+        {
+            pending.completion.completed(new Exception("Connection closed"));
+            return;
+        }
+        this.queue.add(pending);
+        this.startNext();
+    }
+
+    /** Start the next queued request, if possible */
+    private void startNext()
+    {
+        while (this.open && this.ready && this.key != null
+                && this.active == null)
+        {
+            this.active = this.queue.poll();
+            if (this.active == null)
+            {
+                return;
+            }
+            try
+            {
+                final StringBuilder log = logger.isLoggable(Level.FINER)
+                        ? new StringBuilder() : null;
+                this.buffer.clear();
+                this.active.encoder.encode(this.buffer, log);
+                if (log != null)
+                {
+                    logger.finer("Protocol Encoding\n" + log.toString());
+                }
+                this.buffer.flip();
+                if (logger.isLoggable(Level.FINEST))
+                {
+                    logger.log(Level.FINEST, "Data sent ({0} bytes):\n{1}",
+                            new Object[] { this.buffer.remaining(),
+                                    Hexdump.toHexdump(this.buffer) });
+                }
+            }
+            catch (final Exception ex)
+            {
+                this.complete(ex);
+                continue;
+            }
+            this.deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(this.active.timeout_ms);
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Complete the active request and start the next one
+     *
+     * @param error
+     *            Error or <code>null</code>
+     */
+    private void complete(final Exception error)
+    {
+        final Pending done = this.active;
+        this.active = null;
+        this.deadline = 0;
+        try
+        {
+            done.completion.completed(error);
+        }
+        catch (final Throwable ex)
+        {
+            logger.log(Level.WARNING, "Request completion failed", ex);
+        }
+        this.startNext();
+    }
+
+    /**
+     * Check for timeout
+     * <p>
+     * Called on the event loop thread.
+     *
+     * @param now
+     *            Current {@link System#nanoTime()}
+     * @return Deadline of the active request or connect, 0 for none
+     */
+    long checkTimeout(final long now)
+    {
+        if (this.deadline == 0 || now - this.deadline < 0)
+        {
+            return this.deadline;
+        }
+        final long timeout_ms = this.active == null ? this.timeout_ms
+                : this.active.timeout_ms;
+        if (!this.ready || this.buffer.hasRemaining())
+        {
+            // Connection failed, or partially sent request leaves it in an undefined state
+            this.shutdown(new TimeoutException("Timeout after " + timeout_ms
+                    + " ms, closing connection"));
+            return 0;
+        }
+        this.key.interestOps(SelectionKey.OP_READ);
+        this.complete(new TimeoutException("Timeout after " + timeout_ms + " ms"));
+        return this.deadline;
+    }
+
+    /**
+     * Handle network I/O
+     * <p>
+     * Called on the event loop thread.
+     *
+     * @param key
+     *            {@link SelectionKey} that is ready
+     */
+    void handle(final SelectionKey key)
+    {
+        try
+        {
+            if (key.isValid() && key.isConnectable()
+                    && ((SocketChannel) this.channel).finishConnect())
+            {
+                this.ready = true;
+                this.deadline = 0;
+                key.interestOps(SelectionKey.OP_READ);
+                this.startNext();
+            }
+            if (key.isValid() && key.isWritable())
+            {
+                this.io.write(this.buffer);
+                if (!this.buffer.hasRemaining())
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                    if (this.active != null && this.active.decoder == null)
+                    {
+                        this.complete(null);
+                    }
+                }
+            }
+            if (key.isValid() && key.isReadable())
+            {
+                if (!this.tcp)
+                {
+                    // Each datagram holds a complete response
+                    this.receive_buffer.clear();
+                }
+                if (this.io.read(this.receive_buffer) < 0)
+                {
+                    throw new Exception("Connection closed by device");
+                }
+                this.handleResponses();
+            }
+        }
+        catch (final Exception ex)
+        {
+            this.shutdown(ex);
+        }
+    }
+
+    /** Decode all complete responses in the {@link #receive_buffer} */
+    private void handleResponses() throws Exception
+    {
+        while (this.receive_buffer.position() >= Encapsulation.ENCAPSULATION_HEADER_SIZE)
+        {
+            final int size = Encapsulation.ENCAPSULATION_HEADER_SIZE
+                    + (this.receive_buffer.getShort(2) & 0xFFFF);
+            if (size > this.receive_buffer.capacity())
+            {
+                throw new Exception("Response of " + size
+                        + " bytes exceeds buffer size "
+                        + this.receive_buffer.capacity());
+            }
+            if (this.receive_buffer.position() < size)
+            {
+                return;
+            }
+            final Pending pending = this.active;
+            if (pending == null || pending.decoder == null
+                    || (pending.encoder instanceof Encapsulation
+                            && ((Encapsulation) pending.encoder)
+                                    .getTransaction() != Encapsulation
+                                            .getTransaction(this.receive_buffer)))
+            {
+                logger.log(Level.WARNING,
+                        "Ignoring response with unexpected context 0x{0}",
+                        Long.toHexString(Encapsulation.getTransaction(this.receive_buffer)));
+                this.consume(size);
+                continue;
+            }
+            Exception error = null;
+            try
+            {
+                // Checks the command of the response
+                pending.decoder.getResponseSize(this.receive_buffer);
+                this.decode(pending.decoder, size);
+            }
+            catch (final Exception ex)
+            {
+                error = ex;
+            }
+            this.consume(size);
+            this.complete(error);
+        }
+    }
+
+    /**
+     * Close the channel and fail all requests
+     *
+     * @param error
+     *            Reason
+     */
+    void shutdown(final Exception error)
+    {
+        if (this.open)
+        {
+            logger.log(Level.FINE, "Closing event loop connection", error);
+        }
+        this.open = false;
+        this.deadline = 0;
+        try
+        {
+            this.channel.close();
+        }
+        catch (final Exception ex)
+        {
+            // Ignore, closing down
+        }
+        this.loop.unregister(this);
+        if (this.active != null)
+        {
+            this.queue.add(this.active);
+            this.active = null;
+        }
+        Pending pending;
+        while ((pending = this.queue.poll()) != null)
+        {
+            try
+            {
+                pending.completion.completed(error);
+            }
+            catch (final Throwable ex)
+            {
+                logger.log(Level.WARNING, "Request completion failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Wait for requests
+     * <p>
+     * The event loop reports a timeout for each request. In case the loop fails to do that, waiting is limited to the sum of the request timeouts plus one more timeout for connecting.
+     *
+     * @param requests
+     *            Requests to submit, expecting a response unless there is no decoder
+     * @throws Exception
+     *             on error, the first error of all requests
+     */
+    private void await(final Pending... requests) throws Exception
+    {
+        if (this.loop.inEventLoop())
+        {
+            throw new Exception("Cannot wait for response on the event loop thread");
+        }
+        final CountDownLatch done = new CountDownLatch(requests.length);
+        final Exception[] error = new Exception[1];
+        for (final Pending request : requests)
+        {
+            this.submit(new Pending(request.encoder, request.decoder, ex ->
+            {
+                synchronized (error)
+                {
+                    if (error[0] == null)
+                    {
+                        error[0] = ex;
+                    }
+                }
+                done.countDown();
+            }, this.timeout_ms));
+        }
+        final long wait_ms = (requests.length + 1) * this.timeout_ms;
+        if (!done.await(wait_ms, TimeUnit.MILLISECONDS))
+        {
+            for (final Pending request : requests)
+            {
+                if (request.encoder instanceof Protocol)
+                {
+                    this.cancel((Protocol) request.encoder);
+                }
+            }
+            throw new TimeoutException("No response within " + wait_ms + " ms");
+        }
+        synchronized (error)
+        {
+            if (error[0] != null)
+            {
+                throw error[0];
+            }
+        }
+    }
+
+    /**
+     * Write protocol data without waiting for a response
+     * <p>
+     * Blocks until the data has been sent.
+     */
+    @Override
+    public void write(final ProtocolEncoder encoder) throws Exception
+    {
+        this.await(new Pending(encoder, null, null, 0));
+    }
+
+    /** Not supported, the event loop reads the response of each submitted request */
+    @Override
+    protected void read(final ProtocolDecoder decoder) throws Exception
+    {
+        throw new Exception("Responses are read by the event loop");
+    }
+
+    @Override
+    public void execute(final Protocol protocol) throws Exception
+    {
+        this.await(new Pending(protocol, protocol, null, 0));
+    }
+
+    /** Submits all requests, which are then handled one by one, and waits for them */
+    @Override
+    public void execute(final Encapsulation... requests) throws Exception
+    {
+        final Pending[] pending = new Pending[requests.length];
+        for (int i = 0; i < requests.length; ++i)
+        {
+            pending[i] = new Pending(requests[i], requests[i], null, 0);
+        }
+        this.await(pending);
+    }
+
+    @Override
+    public boolean isOpen() throws Exception
+    {
+        return this.open && this.channel.isOpen();
+    }
+
+    /** Close the connection, failing requests that have not been handled */
+    @Override
+    public void close() throws Exception
+    {
+        this.open = false;
+        this.loop.execute(() -> this.shutdown(new Exception("Connection closed")));
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+import etherip.protocol.ForwardOpenProtocol.ConnectionPath;
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#CM_Forward_Close}
+ *
+ * @see CIP_Vol1_3.3: 3-5.5.3 Forward_Close
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ForwardCloseProtocol extends ProtocolAdapter
+{
+    final private int slot;
+    final private short serial;
+
+    /**
+     * Initialize
+     *
+     * @param slot
+     *            Slot (0, 1, ...) of controller module in crate
+     * @param serial
+     *            Serial number of the connection, see {@link ForwardOpenProtocol#getSerial()}
+     */
+    public ForwardCloseProtocol(final int slot, final short serial)
+    {
+        this.slot = slot;
+        this.serial = serial;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        return 10 + 1 + ConnectionPath.SIZE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+            throws Exception
+    {
+        final byte tick_time = (byte) 10;
+        final byte ticks = (byte) 240;
+        buf.put(tick_time);
+        buf.put(ticks);
+        buf.putShort(this.serial);
+        buf.putShort(ForwardOpenProtocol.ORIGINATOR_VENDOR);
+        buf.putInt(ForwardOpenProtocol.ORIGINATOR_SERIAL);
+        buf.put(ConnectionPath.WORDS);
+        buf.put((byte) 0); // reserved
+        ConnectionPath.encode(buf, this.slot);
+        if (log != null)
+        {
+            log.append("Forward Close\n");
+            log.append(String.format("UINT serial             : 0x%04X\n",
+                    this.serial));
+            log.append("USINT port 1, slot ").append(this.slot)
+                    .append(", Message Router\n");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        // Serial, vendor, originator serial, application reply
+        buf.position(buf.position() + available);
+    }
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#CM_Forward_Open} and {@link CNService#CM_Large_Forward_Open}
+ * <p>
+ * Opens a class 3 'explicit messaging' connection to the message router of the controller.
+ *
+ * @see CIP_Vol1_3.3: 3-5.5.2 Forward_Open
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ForwardOpenProtocol extends ProtocolAdapter
+{
+    /** Largest connection size for {@link CNService#CM_Forward_Open} */
+    final public static int STANDARD_CONNECTION_SIZE = 504;
+
+    /** Largest connection size for {@link CNService#CM_Large_Forward_Open} */
+    final public static int LARGE_CONNECTION_SIZE = 4002;
+
+    /** Vendor ID that identifies the originator, together with {@link #ORIGINATOR_SERIAL} */
+    final static short ORIGINATOR_VENDOR = 0x1337;
+
+    /** Serial number of this originator */
+    final static int ORIGINATOR_SERIAL = new Random().nextInt();
+
+    final private static AtomicInteger connection_serials = new AtomicInteger(
+            new Random().nextInt());
+
+    /** Requested packet interval, microseconds */
+    final private static int RPI = 2000000;
+
+    /** Transport class 3, application triggered, server */
+    final private static byte TRANSPORT = (byte) 0xA3;
+
+    /** Timeout multiplier 3: Connection times out after 32 * RPI without traffic */
+    final private static byte TIMEOUT_MULTIPLIER = 3;
+
+    final private int slot;
+    final private boolean large;
+    final private int size;
+    final private short serial = (short) connection_serials.incrementAndGet();
+    final private int t_o_id = new Random().nextInt();
+    private int o_t_id = 0;
+
+    /**
+     * Initialize
+     *
+     * @param slot
+     *            Slot (0, 1, ...) of controller module in crate
+     * @param size
+     *            Requested connection size in bytes
+     */
+    public ForwardOpenProtocol(final int slot, final int size)
+    {
+        if (size > LARGE_CONNECTION_SIZE)
+        {
+            throw new IllegalArgumentException("Connection size " + size
+                    + " exceeds " + LARGE_CONNECTION_SIZE);
+        }
+        this.slot = slot;
+        this.large = size > 511;
+        this.size = size;
+    }
+
+    /** @return Service to use: Large Forward Open for sizes beyond the standard 9 bit field */
+    public CNService getService()
+    {
+        return this.large ? CNService.CM_Large_Forward_Open
+                : CNService.CM_Forward_Open;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        return 31 + (this.large ? 8 : 4) + ConnectionPath.SIZE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+            throws Exception
+    {
+        final byte tick_time = (byte) 10;
+        final byte ticks = (byte) 240;
+        buf.put(tick_time);
+        buf.put(ticks);
+        buf.putInt(0); // O->T ID is assigned by target
+        buf.putInt(this.t_o_id);
+        buf.putShort(this.serial);
+        buf.putShort(ORIGINATOR_VENDOR);
+        buf.putInt(ORIGINATOR_SERIAL);
+        buf.put(TIMEOUT_MULTIPLIER);
+        buf.put((byte) 0); // reserved
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        // Point-to-point, low priority, variable size
+        buf.putInt(RPI);
+        if (this.large)
+        {
+            buf.putInt(0x42000000 | this.size);
+        }
+        else
+        {
+            buf.putShort((short) (0x4200 | this.size));
+        }
+        buf.putInt(RPI);
+        if (this.large)
+        {
+            buf.putInt(0x42000000 | this.size);
+        }
+        else
+        {
+            buf.putShort((short) (0x4200 | this.size));
+        }
+        buf.put(TRANSPORT);
+        buf.put(ConnectionPath.WORDS);
+        ConnectionPath.encode(buf, this.slot);
+
+        if (log != null)
+        {
+            log.append("Forward Open").append(this.large ? " (large)" : "")
+                    .append("\n");
+            log.append("USINT tick_time         : ").append(tick_time)
+                    .append("\n");
+            log.append("USINT ticks             : ").append(ticks).append("\n");
+            log.append(String.format("UDINT T->O ID           : 0x%08X\n",
+                    this.t_o_id));
+            log.append(String.format("UINT serial             : 0x%04X\n",
+                    this.serial));
+            log.append("UDINT RPI               : ").append(RPI)
+                    .append(" us\n");
+            log.append("Connection size         : ").append(this.size)
+                    .append("\n");
+            log.append("USINT port 1, slot ").append(this.slot)
+                    .append(", Message Router\n");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        this.o_t_id = buf.getInt();
+        final int t_o_id = buf.getInt();
+        final short serial = buf.getShort();
+        buf.getShort(); // vendor
+        buf.getInt(); // originator serial
+        final int o_t_api = buf.getInt();
+        final int t_o_api = buf.getInt();
+        final int reply_words = buf.get() & 0xFF;
+        buf.get(); // reserved
+        buf.position(buf.position() + 2 * reply_words);
+
+        if (log != null)
+        {
+            log.append("Forward Open Reply\n");
+            log.append(String.format("UDINT O->T ID           : 0x%08X\n",
+                    this.o_t_id));
+            log.append(String.format("UDINT T->O ID           : 0x%08X\n",
+                    t_o_id));
+            log.append(String.format("UINT serial             : 0x%04X\n",
+                    serial));
+            log.append("UDINT O->T API          : ").append(o_t_api)
+                    .append(" us\n");
+            log.append("UDINT T->O API          : ").append(t_o_api)
+                    .append(" us\n");
+        }
+        if (t_o_id != this.t_o_id || serial != this.serial)
+        {
+            throw new Exception(String.format(
+                    "Forward Open reply for T->O ID 0x%08X, serial 0x%04X, expected 0x%08X, 0x%04X",
+                    t_o_id, serial, this.t_o_id, this.serial));
+        }
+    }
+
+    /** @return Connection ID to use for requests (originator to target) */
+    public int getRequestConnectionID()
+    {
+        return this.o_t_id;
+    }
+
+    /** @return Connection ID that target uses in responses */
+    public int getResponseConnectionID()
+    {
+        return this.t_o_id;
+    }
+
+    /** @return Connection serial number */
+    public short getSerial()
+    {
+        return this.serial;
+    }
+
+    /** @return Connection size in bytes */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /** Connection path from the ENET module to the message router of the controller */
+    static class ConnectionPath
+    {
+        /** Path size in words */
+        final static byte WORDS = 3;
+
+        /** Byte size of encoded path, including the size byte */
+        final static int SIZE = 1 + 2 * WORDS;
+
+        /** Encode the path, without the size */
+        static void encode(final ByteBuffer buf, final int slot)
+        {
+            buf.put((byte) 1); // Port 1 = backplane
+            buf.put((byte) slot);
+            buf.put((byte) 0x20); // Class 2 = Message Router
+            buf.put((byte) 0x02);
+            buf.put((byte) 0x24); // Instance 1
+            buf.put((byte) 0x01);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#Get_Attribute_List}
+ * <p>
+ * Keeps the raw response, which lists the attribute ID, status and value of each requested attribute.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class GetAttributeListProtocol extends ProtocolAdapter
+{
+    private final short[] attributes;
+
+    private byte[] data = new byte[0];
+
+    /**
+     * @param attributes
+     *            IDs of the requested attributes
+     */
+    public GetAttributeListProtocol(final short... attributes)
+    {
+        this.attributes = attributes;
+    }
+
+    @Override
+    public int getRequestSize()
+    {
+        return 2 + 2 * this.attributes.length;
+    }
+
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+    {
+        buf.putShort((short) this.attributes.length);
+        for (final short attr : this.attributes)
+        {
+            buf.putShort(attr);
+        }
+        if (log != null)
+        {
+            log.append("UINT attribute count    : ")
+                    .append(this.attributes.length).append("\n");
+            for (final short attr : this.attributes)
+            {
+                log.append("UINT attribute          : ").append(attr)
+                        .append("\n");
+            }
+        }
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        this.data = new byte[available];
+        buf.get(this.data);
+        if (log != null)
+        {
+            log.append("USINT data              : ").append(available)
+                    .append(" bytes\n");
+        }
+    }
+
+    /** @return Raw response data */
+    public byte[] getData()
+    {
+        return this.data;
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.Symbol;
+
+import java.nio.ByteBuffer;
+
+import etherip.types.CIPData;
+import etherip.types.CIPData.Type;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+
+/**
+ * Message Router protocol for reading one fragment of a tag
+ * <p>
+ * A response with status 0x06, "Partial transfer", is not an error but indicates that more data follows at the next offset.
+ *
+ * @author Kay Kasemir
+ */
+public class MRChipReadFragmentedProtocol extends MessageRouterProtocol
+{
+    /** Status of a response that contains only part of the data */
+    final public static int PARTIAL_TRANSFER = 0x06;
+
+    final private CIPReadDataFragmentedProtocol reader;
+
+    /**
+     * Initialize
+     *
+     * @param tag
+     *            Name of tag to read
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param buffer
+     *            {@link ByteBuffer} where the fragment is placed, starting at its current position
+     */
+    public MRChipReadFragmentedProtocol(final String tag, final short count,
+            final int offset, final ByteBuffer buffer)
+    {
+        this(Symbol(tag), count, offset, buffer);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param buffer
+     *            {@link ByteBuffer} where the fragment is placed, starting at its current position
+     */
+    public MRChipReadFragmentedProtocol(final CNPath path, final short count,
+            final int offset, final ByteBuffer buffer)
+    {
+        this(path, new CIPReadDataFragmentedProtocol(count, offset, buffer));
+    }
+
+    /**
+     * Initialize
+     *
+     * @param tag
+     *            Name of tag to read
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param data
+     *            {@link CIPData} where the fragment is placed at the offset
+     */
+    public MRChipReadFragmentedProtocol(final String tag, final short count,
+            final int offset, final CIPData data)
+    {
+        this(Symbol(tag), count, offset, data);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag
+     * @param count
+     *            Number of elements to read
+     * @param offset
+     *            Byte offset of the requested fragment
+     * @param data
+     *            {@link CIPData} where the fragment is placed at the offset
+     */
+    public MRChipReadFragmentedProtocol(final CNPath path, final short count,
+            final int offset, final CIPData data)
+    {
+        this(path, new CIPReadDataFragmentedProtocol(count, offset, data));
+    }
+
+    private MRChipReadFragmentedProtocol(final CNPath path,
+            final CIPReadDataFragmentedProtocol reader)
+    {
+        super(CNService.CIP_ReadDataFragmented, path, reader);
+        this.reader = reader;
+    }
+
+    @Override
+    protected boolean isSuccess(final int status)
+    {
+        return status == 0 || status == PARTIAL_TRANSFER;
+    }
+
+    /** @return <code>true</code> if this was the last fragment */
+    public boolean isComplete()
+    {
+        return this.getStatus() == 0;
+    }
+
+    /** @return Data type of the tag */
+    public Type getType()
+    {
+        return this.reader.getType();
+    }
+
+    /** @return Structure detail for {@link Type#STRUCT} */
+    public short getStructDetail()
+    {
+        return this.reader.getStructDetail();
+    }
+
+    /** @return Number of data bytes in the received fragment */
+    public int getFragmentSize()
+    {
+        return this.reader.getFragmentSize();
+    }
+}
@@ -9,7 +9,9 @@ package etherip.protocol;
 
 import static etherip.types.CNPath.Symbol;
 
+import etherip.data.Symbol;
 import etherip.types.CIPData;
+import etherip.types.CNPath;
 import etherip.types.CNService;
 
 /**
@@ -19,6 +21,17 @@ import etherip.types.CNService;
  */
 public class MRChipReadProtocol extends MessageRouterProtocol
 {
+    /** Response size assumed for a tag of unknown type: Header, type, structure handle and a STRING */
+    final public static int DEFAULT_RESPONSE_SIZE = 4 + 2 + 2 + 88;
+
+    /** Element size assumed when packing reads of tags that are not in a symbol table: DINT, REAL */
+    final public static int ASSUMED_ELEMENT_SIZE = 4;
+
+    /** General status 'Reply data too large' */
+    final public static int REPLY_TOO_LARGE = 0x11;
+
+    final private CIPReadRequest request;
+
     final private CIPReadDataProtocol reader;
 
     /**
@@ -42,26 +55,171 @@ public class MRChipReadProtocol extends MessageRouterProtocol
      */
     public MRChipReadProtocol(final String tag, final short count)
     {
-        this(tag, new CIPReadDataProtocol(count));
+        this(Symbol(tag), count);
     }
 
     /**
      * Initialize
      *
-     * @param tag
-     *            Name of tag to read
-     * @param body
+     * @param path
+     *            Path to the tag, for example a {@link CNPath#SymbolInstance(int, String)}
+     * @param count
+     *            Number of elements to read (if it is an array)
+     */
+    public MRChipReadProtocol(final CNPath path, final short count)
+    {
+        this(new CIPReadRequest(path, count));
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag
+     * @param count
+     *            Number of elements to read (if it is an array)
+     * @param view
+     *            Provide the data as a read-only view of the receive buffer instead of a copy? See {@link CIPData#isView()}
+     */
+    public MRChipReadProtocol(final CNPath path, final short count,
+            final boolean view)
+    {
+        this(new CIPReadRequest(path, count),
+                new CIPReadDataProtocol(count, view));
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag
+     * @param count
+     *            Number of elements to read (if it is an array)
+     * @param target
+     *            {@link CIPData} to update in place if type and size of the received data match, may be <code>null</code>
+     */
+    public MRChipReadProtocol(final CNPath path, final short count,
+            final CIPData target)
+    {
+        this(new CIPReadRequest(path, count), target);
+    }
+
+    /**
+     * Initialize exchange for a request definition
+     *
+     * @param request
+     *            {@link CIPReadRequest}
+     */
+    public MRChipReadProtocol(final CIPReadRequest request)
+    {
+        this(request, new CIPReadDataProtocol(request.getCount()));
+    }
+
+    /**
+     * Initialize exchange for a request definition
+     *
+     * @param request
+     *            {@link CIPReadRequest}
+     * @param target
+     *            {@link CIPData} to update in place if type and size of the received data match, may be <code>null</code>
+     */
+    public MRChipReadProtocol(final CIPReadRequest request,
+            final CIPData target)
+    {
+        this(request, new CIPReadDataProtocol(request.getCount(), target));
+    }
+
+    /**
+     * Initialize
+     *
+     * @param request
+     *            Request definition
+     * @param reader
      *            Protocol embedded in the message request/response
      */
-    private MRChipReadProtocol(final String tag,
+    private MRChipReadProtocol(final CIPReadRequest request,
             final CIPReadDataProtocol reader)
     {
-        super(CNService.CIP_ReadData, Symbol(tag), reader);
+        super(CNService.CIP_ReadData, request.getPath(), reader);
+        this.request = request;
         this.reader = reader;
     }
 
+    /** @return Definition of the request */
+    public CIPReadRequest getRequest()
+    {
+        return this.request;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        return this.request.getRequestSize();
+    }
+
+    /**
+     * @param target
+     *            {@link CIPData} to update in place with the next response if type and size match, may be <code>null</code>
+     */
+    public void setTarget(final CIPData target)
+    {
+        this.reader.setTarget(target);
+    }
+
     public CIPData getData()
     {
         return this.reader.getData();
     }
+
+    /**
+     * Estimate the size of the response
+     *
+     * @param value
+     *            Last known value of the tag, may be <code>null</code>
+     * @return Expected response size, including the message router response header
+     */
+    public static int getResponseSize(final CIPData value)
+    {
+        if (value == null)
+        {
+            return DEFAULT_RESPONSE_SIZE;
+        }
+        // Header, then the type and data as in a write, but without element count
+        return 4 + value.getEncodedSize() - 2;
+    }
+
+    /**
+     * Estimate the size of the response
+     * <p>
+     * For a member or element of the tag, the estimate based on the complete tag is an upper limit. For a tag that is not known, the estimate optimistically assumes elements of
+     * {@link #ASSUMED_ELEMENT_SIZE}, and replies that turn out to be too large need to be read again, see {@link #isReplyTooLarge(int)}.
+     *
+     * @param symbol
+     *            {@link Symbol} of the tag, may be <code>null</code>
+     * @param count
+     *            Number of elements to read
+     * @return Expected response size, including the message router response header
+     */
+    public static int getResponseSize(final Symbol symbol, final short count)
+    {
+        if (symbol == null)
+        {
+            return 4 + 2 + ASSUMED_ELEMENT_SIZE * count;
+        }
+        // Header, type and for a structure its handle, then the data
+        return 4 + (symbol.isStructure() ? 4 : 2)
+                + symbol.getElementSize() * count;
+    }
+
+    /**
+     * @param status
+     *            Status of a read response within a multi-request
+     * @return <code>true</code> if the device could not fit the data into the response
+     */
+    public static boolean isReplyTooLarge(final int status)
+    {
+        return status == REPLY_TOO_LARGE
+                || status == MRChipReadFragmentedProtocol.PARTIAL_TRANSFER;
+    }
 }
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.Symbol;
+
+import java.nio.ByteBuffer;
+
+import etherip.WriteProgressListener;
+import etherip.types.CIPData;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+
+/**
+ * Message Router protocol for writing one fragment of a tag
+ * <p>
+ * {@link #createFragments(String, CNPath, CIPData, int, WriteProgressListener)} splits a value into fragments.
+ *
+ * @author Kay Kasemir
+ */
+public class MRChipWriteFragmentedProtocol extends MessageRouterProtocol
+{
+    final private String tag;
+    final private int offset;
+    final private int length;
+    final private int total;
+    final private WriteProgressListener listener;
+    private volatile boolean done = false;
+
+    /**
+     * Initialize
+     *
+     * @param tag
+     *            Name of tag to write
+     * @param value
+     *            {@link CIPData} to write
+     * @param offset
+     *            Byte offset of the fragment
+     * @param length
+     *            Number of bytes in the fragment
+     * @param listener
+     *            {@link WriteProgressListener} or <code>null</code>
+     */
+    public MRChipWriteFragmentedProtocol(final String tag, final CIPData value,
+            final int offset, final int length,
+            final WriteProgressListener listener)
+    {
+        this(tag, Symbol(tag), value, offset, length, listener);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param tag
+     *            Name of tag to write
+     * @param path
+     *            Path to the tag
+     * @param value
+     *            {@link CIPData} to write
+     * @param offset
+     *            Byte offset of the fragment
+     * @param length
+     *            Number of bytes in the fragment
+     * @param listener
+     *            {@link WriteProgressListener} or <code>null</code>
+     */
+    public MRChipWriteFragmentedProtocol(final String tag, final CNPath path,
+            final CIPData value, final int offset, final int length,
+            final WriteProgressListener listener)
+    {
+        super(CNService.CIP_WriteDataFragmented, path,
+                new CIPWriteDataFragmentedProtocol(value, offset, length));
+        this.tag = tag;
+        this.offset = offset;
+        this.length = length;
+        this.total = value.getDataSize();
+        this.listener = listener;
+    }
+
+    /**
+     * Create the fragments for writing a tag
+     * <p>
+     * Splits the value by byte offset into fragments that each fit one message. Fragments are aligned to the element size of the value.
+     *
+     * @param tag
+     *            Name of tag to write
+     * @param path
+     *            Path to the tag
+     * @param value
+     *            {@link CIPData} to write
+     * @param max_message_size
+     *            Maximum size of a message router request, see {@link Connection#getMaxMessageSize()}
+     * @param listener
+     *            {@link WriteProgressListener} or <code>null</code>
+     * @return Fragments in order of their offset
+     * @throws Exception
+     *             if not even one element fits into a message
+     */
+    public static MRChipWriteFragmentedProtocol[] createFragments(
+            final String tag, final CNPath path, final CIPData value,
+            final int max_message_size, final WriteProgressListener listener)
+            throws Exception
+    {
+        // Determine fragment size from the overhead of an empty fragment
+        final int overhead = new MRChipWriteFragmentedProtocol(tag, path, value,
+                0, 0, null).getRequestSize();
+        final int align = Math.max(1, value.getType().getElementSize());
+        final int fragment = (max_message_size - overhead) / align * align;
+        if (fragment <= 0)
+        {
+            throw new Exception(
+                    "Cannot fit fragment of tag " + tag + " into message");
+        }
+        final int total = value.getDataSize();
+        final int count = Math.max(1, (total + fragment - 1) / fragment);
+        final MRChipWriteFragmentedProtocol[] writes = new MRChipWriteFragmentedProtocol[count];
+        for (int i = 0; i < count; ++i)
+        {
+            final int offset = i * fragment;
+            writes[i] = new MRChipWriteFragmentedProtocol(tag, path, value,
+                    offset, Math.min(fragment, total - offset), listener);
+        }
+        return writes;
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        super.decode(buf, available, log);
+        this.done = true;
+        if (this.listener != null)
+        {
+            this.listener.fragmentWritten(this.tag, this.offset, this.length,
+                    this.total);
+        }
+    }
+
+    /** @return Byte offset of the fragment */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    /** @return <code>true</code> once the device confirmed the fragment */
+    public boolean isDone()
+    {
+        return this.done;
+    }
+}
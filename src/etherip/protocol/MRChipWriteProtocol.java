@@ -10,6 +10,7 @@ package etherip.protocol;
 import static etherip.types.CNPath.Symbol;
 
 import etherip.types.CIPData;
+import etherip.types.CNPath;
 import etherip.types.CNService;
 
 /**
@@ -19,6 +20,9 @@ import etherip.types.CNService;
  */
 public class MRChipWriteProtocol extends MessageRouterProtocol
 {
+    /** Size of the response, which is just the message router response header */
+    final public static int RESPONSE_SIZE = 4;
+
     /**
      * Initialize
      *
@@ -29,7 +33,19 @@ public class MRChipWriteProtocol extends MessageRouterProtocol
      */
     public MRChipWriteProtocol(final String tag, final CIPData value)
     {
-        super(CNService.CIP_WriteData, Symbol(tag),
-                new CIPWriteDataProtocol(value));
+        this(Symbol(tag), value);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param path
+     *            Path to the tag, for example a {@link CNPath#SymbolInstance(int, String)}
+     * @param value
+     *            {@link CIPData} to write
+     */
+    public MRChipWriteProtocol(final CNPath path, final CIPData value)
+    {
+        super(CNService.CIP_WriteData, path, new CIPWriteDataProtocol(value));
     }
 }
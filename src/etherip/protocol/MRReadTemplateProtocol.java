@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.Template;
+
+import java.nio.ByteBuffer;
+
+import etherip.types.CNService;
+
+/**
+ * Message Router protocol for reading a template definition
+ * <p>
+ * A response with status 0x06, "Partial transfer", indicates that more of the definition follows at the next offset.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MRReadTemplateProtocol extends MessageRouterProtocol
+{
+    /** Protocol body: Offset, size, then the definition data in the response */
+    private static class ReadTemplateProtocol extends ProtocolAdapter
+    {
+        private final int offset;
+        private final int size;
+        private final ByteBuffer buffer;
+        private int fragment_size = 0;
+
+        ReadTemplateProtocol(final int offset, final int size,
+                final ByteBuffer buffer)
+        {
+            this.offset = offset;
+            this.size = size;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int getRequestSize()
+        {
+            return 6;
+        }
+
+        @Override
+        public void encode(final ByteBuffer buf, final StringBuilder log)
+        {
+            buf.putInt(this.offset);
+            buf.putShort((short) this.size);
+            if (log != null)
+            {
+                log.append("UDINT offset            : ").append(this.offset)
+                        .append("\n");
+                log.append("UINT size               : ").append(this.size)
+                        .append("\n");
+            }
+        }
+
+        @Override
+        public void decode(final ByteBuffer buf, final int available,
+                final StringBuilder log) throws Exception
+        {
+            final int limit = buf.limit();
+            buf.limit(buf.position() + available);
+            try
+            {
+                this.buffer.put(buf);
+            }
+            finally
+            {
+                buf.limit(limit);
+            }
+            this.fragment_size = available;
+            if (log != null)
+            {
+                log.append("USINT definition        : ").append(available)
+                        .append(" bytes\n");
+            }
+        }
+    }
+
+    final private ReadTemplateProtocol reader;
+
+    /**
+     * Initialize
+     *
+     * @param instance
+     *            Template Object instance
+     * @param offset
+     *            Byte offset into the definition
+     * @param size
+     *            Number of bytes to read
+     * @param buffer
+     *            {@link ByteBuffer} where the definition is placed, starting at its current position
+     */
+    public MRReadTemplateProtocol(final int instance, final int offset,
+            final int size, final ByteBuffer buffer)
+    {
+        this(instance, new ReadTemplateProtocol(offset, size, buffer));
+    }
+
+    private MRReadTemplateProtocol(final int instance,
+            final ReadTemplateProtocol reader)
+    {
+        super(CNService.Template_Read, Template().instance(instance), reader);
+        this.reader = reader;
+    }
+
+    @Override
+    protected boolean isSuccess(final int status)
+    {
+        return status == 0
+                || status == MRChipReadFragmentedProtocol.PARTIAL_TRANSFER;
+    }
+
+    /** @return <code>true</code> if this was the last part of the definition */
+    public boolean isComplete()
+    {
+        return this.getStatus() == 0;
+    }
+
+    /** @return Number of bytes in the response */
+    public int getFragmentSize()
+    {
+        return this.reader.fragment_size;
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.ProgramSymbolInstance;
+import static etherip.types.CNPath.SymbolObject;
+
+import java.util.List;
+
+import etherip.data.Symbol;
+import etherip.types.CNPath;
+import etherip.types.CNService;
+
+/**
+ * Message Router protocol for listing the controller's symbols
+ * <p>
+ * Lists symbol instances starting at the requested instance. A response with status 0x06, "Partial transfer", indicates that more symbols follow after the last instance in the response.
+ *
+ * @author Kay Kasemir
+ */
+public class MRSymbolListProtocol extends MessageRouterProtocol
+{
+    final private SymbolListProtocol lister;
+
+    /**
+     * Initialize for controller-scoped symbols
+     *
+     * @param start
+     *            First Symbol Object instance to list
+     */
+    public MRSymbolListProtocol(final int start)
+    {
+        this(null, start);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param program
+     *            Program name "Program:..." to list program-scoped symbols, or <code>null</code> for controller-scoped symbols
+     * @param start
+     *            First Symbol Object instance to list
+     */
+    public MRSymbolListProtocol(final String program, final int start)
+    {
+        this(program == null ? SymbolObject().instance(start)
+                : ProgramSymbolInstance(program, start, program),
+                new SymbolListProtocol(program));
+    }
+
+    private MRSymbolListProtocol(final CNPath path,
+            final SymbolListProtocol lister)
+    {
+        super(CNService.Get_Instance_Attribute_List, path, lister);
+        this.lister = lister;
+    }
+
+    @Override
+    protected boolean isSuccess(final int status)
+    {
+        return status == 0
+                || status == MRChipReadFragmentedProtocol.PARTIAL_TRANSFER;
+    }
+
+    /** @return <code>true</code> if this response listed the last symbol */
+    public boolean isComplete()
+    {
+        return this.getStatus() == 0;
+    }
+
+    /** @return Symbols in the response */
+    public List<Symbol> getSymbols()
+    {
+        return this.lister.getSymbols();
+    }
+}
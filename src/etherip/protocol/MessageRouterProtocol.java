@@ -26,9 +26,16 @@ public class MessageRouterProtocol extends ProtocolAdapter
 
     final protected Protocol body;
 
-    private int status = 0;
+    /** General status 'Embedded service error' */
+    final private static int EMBEDDED_SERVICE_ERROR = 0x1E;
 
-    private int[] ext_status = new int[0];
+    /** Status of the response, -1 until a response has been decoded */
+    private int status = -1;
+
+    /** Extended status of a response without extended status */
+    final private static int[] NO_EXT_STATUS = new int[0];
+
+    private int[] ext_status = NO_EXT_STATUS;
 
     /**
      * Initialize
@@ -104,7 +111,11 @@ public class MessageRouterProtocol extends ProtocolAdapter
         final int reserved = buf.get();
         this.status = buf.get();
         final int ext_status_size = buf.get();
-        this.ext_status = new int[ext_status_size];
+        if (ext_status_size != this.ext_status.length)
+        {
+            this.ext_status = ext_status_size == 0 ? NO_EXT_STATUS
+                    : new int[ext_status_size];
+        }
         for (int i = 0; i < ext_status_size; ++i)
         {
             this.ext_status[i] = buf.getShort();
@@ -130,7 +141,7 @@ public class MessageRouterProtocol extends ProtocolAdapter
             }
         }
         final CNService expected_reply = this.service.getReply();
-        if (this.status != 0)
+        if (!this.isSuccess(this.status))
         {
             if (ext_status_size > 0)
             {
@@ -142,7 +153,9 @@ public class MessageRouterProtocol extends ProtocolAdapter
             }
         }
 
-        if (expected_reply != null && expected_reply != reply)
+        // Compare codes, services of different objects may share the same code
+        if (expected_reply != null
+                && expected_reply.getCode() != reply.getCode())
         {
             throw new Exception(
                     "Expected " + expected_reply + ", got " + reply);
@@ -151,7 +164,23 @@ public class MessageRouterProtocol extends ProtocolAdapter
         this.body.decode(buf, available - 4 - 2 * ext_status_size, log);
     }
 
-    /** @return Status code of response */
+    /**
+     * Check response status
+     * <p>
+     * Derived classes may accept additional status codes.
+     *
+     * @param status
+     *            Status code of response
+     * @return <code>true</code> if the response data should be decoded, <code>false</code> to throw a {@link CipException}
+     */
+    protected boolean isSuccess(final int status)
+    {
+        // Multi-request with errors in some embedded services still carries a reply for each service
+        return status == 0 || (status == EMBEDDED_SERVICE_ERROR
+                && this.body instanceof CIPMultiRequestProtocol);
+    }
+
+    /** @return Status code of response, -1 if no response has been decoded */
     public int getStatus()
     {
         return this.status;
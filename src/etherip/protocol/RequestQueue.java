@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.EtherNetIP.logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Queue of requests that are handled by one I/O thread
+ * <p>
+ * Callers submit requests and wait for them to be handled by the I/O thread, which is the only thread that uses the buffers and network channel of the connection. Callers are served in the order
+ * they submitted their requests. When the queue is full, callers wait for room, again in order, but at most for the timeout.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class RequestQueue
+{
+    /** Network I/O to perform */
+    @FunctionalInterface
+    interface Task
+    {
+        void run() throws Exception;
+    }
+
+    /** Queued task and its outcome */
+    private static class Request
+    {
+        final Task task;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Exception error = null;
+
+        Request(final Task task)
+        {
+            this.task = task;
+        }
+    }
+
+    /** Marker that stops the I/O thread */
+    final private static Request STOP = new Request(null);
+
+    final private BlockingQueue<Request> queue;
+    final private long timeout_ms;
+    final private Thread thread;
+
+    /** Set when the I/O thread stops, after which requests are rejected */
+    private volatile boolean stopped = false;
+
+    /**
+     * Create queue and start I/O thread
+     *
+     * @param name
+     *            Name of the I/O thread
+     * @param capacity
+     *            Maximum number of waiting requests
+     * @param timeout_ms
+     *            Time to wait for room in a full queue
+     */
+    RequestQueue(final String name, final int capacity, final long timeout_ms)
+    {
+        this.queue = new ArrayBlockingQueue<>(capacity, true);
+        this.timeout_ms = timeout_ms;
+        this.thread = new Thread(this::handleRequests, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** @return <code>true</code> when called on the I/O thread */
+    boolean isOwner()
+    {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Have I/O thread perform a task and wait for it
+     *
+     * @param task
+     *            {@link Task}
+     * @throws Exception
+     *             on error of the task, when the queue remains full, or when the queue has been stopped
+     */
+    void execute(final Task task) throws Exception
+    {
+        if (this.stopped)
+        {
+            throw new Exception("Request queue has been stopped");
+        }
+        final Request request = new Request(task);
+        if (!this.queue.offer(request, this.timeout_ms, TimeUnit.MILLISECONDS))
+        {
+            throw new Exception("Request queue is full, capacity "
+                    + (this.queue.size() + this.queue.remainingCapacity()));
+        }
+        // Queue may have stopped while adding the request.
+        // If the request is no longer queued, it has been handled or failed.
+        if (this.stopped && this.queue.remove(request))
+        {
+            throw new Exception("Request queue has been stopped");
+        }
+        request.done.await();
+        if (request.error != null)
+        {
+            throw request.error;
+        }
+    }
+
+    private void handleRequests()
+    {
+        try
+        {
+            while (true)
+            {
+                final Request request = this.queue.take();
+                if (request == STOP)
+                {
+                    break;
+                }
+                try
+                {
+                    request.task.run();
+                }
+                catch (final Exception ex)
+                {
+                    request.error = ex;
+                }
+                catch (final Throwable ex)
+                {
+                    request.error = new Exception("Request failed", ex);
+                }
+                finally
+                {
+                    request.done.countDown();
+                }
+            }
+        }
+        catch (final InterruptedException ex)
+        {
+            logger.log(Level.WARNING, "Request queue interrupted", ex);
+        }
+        finally
+        {
+            this.stopped = true;
+            this.failRemaining();
+        }
+    }
+
+    /** Fail requests that are still queued */
+    private void failRemaining()
+    {
+        Request request;
+        while ((request = this.queue.poll()) != null)
+        {
+            if (request != STOP)
+            {
+                request.error = new Exception("Request queue has been stopped");
+                request.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Stop the I/O thread after handling the requests that are already queued
+     * <p>
+     * Requests that are added while stopping fail.
+     *
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     */
+    void stop() throws InterruptedException
+    {
+        this.stopped = true;
+        if (this.thread.isAlive())
+        {
+            this.queue.put(STOP);
+            this.thread.join();
+        }
+        this.failRemaining();
+    }
+}
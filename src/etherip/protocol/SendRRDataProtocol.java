@@ -120,7 +120,7 @@ public class SendRRDataProtocol extends ProtocolAdapter
      * <p>
      * Spec, 8.9.1
      */
-    private static String decodeCPT(final short id)
+    static String decodeCPT(final short id)
     {
         switch (id)
         {
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SendUnitData, the connected protocol
+ * <p>
+ * Sends the body on a connection that was opened via {@link ForwardOpenProtocol}, using a connected address item and a sequence count.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SendUnitDataProtocol extends ProtocolAdapter
+{
+    /** Byte size of the 'common packet format' header, up to the data */
+    final public static int UNIT_DATA_HEADER_SIZE = 20;
+
+    final private static short ADDRESS_TYPE = 0xA1;
+    final private static short DATA_TYPE = 0xB1;
+
+    final private int connection_id;
+    private short sequence;
+    final private Protocol body;
+
+    /**
+     * Initialize
+     *
+     * @param connection_id
+     *            Originator to target connection ID
+     * @param sequence
+     *            Sequence count of this request
+     * @param body
+     *            Protocol to place in body of UnitData
+     */
+    public SendUnitDataProtocol(final int connection_id, final short sequence,
+            final Protocol body)
+    {
+        this.connection_id = connection_id;
+        this.sequence = sequence;
+        this.body = body;
+    }
+
+    /**
+     * Set sequence count for sending the request again
+     *
+     * @param sequence
+     *            Sequence count
+     */
+    void setSequence(final short sequence)
+    {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Place the sequence count into an already encoded request
+     *
+     * @param buf
+     *            {@link ByteBuffer}
+     * @param start
+     *            Index of this protocol's data in the buffer
+     */
+    void patchSequence(final ByteBuffer buf, final int start)
+    {
+        buf.putShort(start + UNIT_DATA_HEADER_SIZE, this.sequence);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        return UNIT_DATA_HEADER_SIZE + 2 + this.body.getRequestSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+            throws Exception
+    {
+        final int body_size = this.body.getRequestSize();
+        buf.putInt(0);
+        buf.putShort((short) 0);
+        buf.putShort((short) 2);
+        buf.putShort(ADDRESS_TYPE);
+        buf.putShort((short) 4);
+        buf.putInt(this.connection_id);
+        buf.putShort(DATA_TYPE);
+        buf.putShort((short) (2 + body_size));
+        buf.putShort(this.sequence);
+        if (log != null)
+        {
+            log.append("Send Unit Data\n");
+            log.append("UDINT interface handle  : 0\n");
+            log.append("UINT timeout            : 0\n");
+            log.append("UINT count (addr., data): 2\n");
+            log.append(String.format("UINT address type       : 0x%X (%s)\n",
+                    ADDRESS_TYPE,
+                    SendRRDataProtocol.decodeCPT(ADDRESS_TYPE)));
+            log.append("UINT address length     : 4\n");
+            log.append(String.format("UDINT connection ID     : 0x%08X\n",
+                    this.connection_id));
+            log.append(String.format("UINT data type          : 0x%X (%s)\n",
+                    DATA_TYPE, SendRRDataProtocol.decodeCPT(DATA_TYPE)));
+            log.append("UINT data length        : ").append(2 + body_size)
+                    .append("\n");
+            log.append("UINT sequence           : ")
+                    .append(this.sequence & 0xFFFF).append("\n");
+        }
+
+        this.body.encode(buf, log);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        final int iface = buf.getInt();
+        final short timeout = buf.getShort();
+        final short count = buf.getShort();
+        if (count != 2)
+        {
+            throw new Exception("Received count " + count + " instead of 2");
+        }
+        final short addr_type = buf.getShort();
+        final short addr_length = buf.getShort();
+        if (addr_type != ADDRESS_TYPE || addr_length != 4)
+        {
+            throw new Exception(String.format(
+                    "Received address type 0x%X, length %d instead of connected address",
+                    addr_type, addr_length));
+        }
+        final int connection_id = buf.getInt();
+        final short data_type = buf.getShort();
+        final short data_length = buf.getShort();
+        final short sequence = buf.getShort();
+
+        if (log != null)
+        {
+            log.append("Received Unit Data\n");
+            log.append("UDINT interface handle  : ").append(iface).append("\n");
+            log.append("UINT timeout            : ").append(timeout)
+                    .append("\n");
+            log.append("UINT count (addr., data): ").append(count).append("\n");
+            log.append(String.format("UINT address type       : 0x%X (%s)\n",
+                    addr_type, SendRRDataProtocol.decodeCPT(addr_type)));
+            log.append(String.format("UDINT connection ID     : 0x%08X\n",
+                    connection_id));
+            log.append(String.format("UINT data type          : 0x%X (%s)\n",
+                    data_type, SendRRDataProtocol.decodeCPT(data_type)));
+            log.append("UINT data length        : ").append(data_length)
+                    .append("\n");
+            log.append("UINT sequence           : ").append(sequence & 0xFFFF)
+                    .append("\n");
+        }
+        if (data_type != DATA_TYPE)
+        {
+            throw new Exception(String.format(
+                    "Received data type 0x%X instead of connected data",
+                    data_type));
+        }
+        if (sequence != this.sequence)
+        {
+            throw new Exception("Received sequence " + (sequence & 0xFFFF)
+                    + " instead of " + (this.sequence & 0xFFFF));
+        }
+
+        this.body.decode(buf, data_length - 2, log);
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import etherip.data.Symbol;
+import etherip.types.CNService;
+
+/**
+ * Protocol body for {@link CNService#Get_Instance_Attribute_List} on the Symbol Object
+ * <p>
+ * Requests the name (attribute 1), type (attribute 2), element size (attribute 7) and array dimensions (attribute 8) of symbol instances.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SymbolListProtocol extends ProtocolAdapter
+{
+    /** Attributes: Name, type, element size, dimensions */
+    private static final short[] ATTRIBUTES = { 1, 2, 7, 8 };
+
+    private final String program;
+
+    private final List<Symbol> symbols = new ArrayList<>();
+
+    /**
+     * @param program
+     *            Program name when listing program-scoped tags, or <code>null</code>
+     */
+    public SymbolListProtocol(final String program)
+    {
+        this.program = program;
+    }
+
+    @Override
+    public int getRequestSize()
+    {
+        return 2 + 2 * ATTRIBUTES.length;
+    }
+
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+    {
+        buf.putShort((short) ATTRIBUTES.length);
+        for (final short attr : ATTRIBUTES)
+        {
+            buf.putShort(attr);
+        }
+        if (log != null)
+        {
+            log.append("UINT attribute count    : ").append(ATTRIBUTES.length)
+                    .append("\n");
+            for (final short attr : ATTRIBUTES)
+            {
+                log.append("UINT attribute          : ").append(attr)
+                        .append("\n");
+            }
+        }
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        final int end = buf.position() + available;
+        while (buf.position() < end)
+        {
+            final int instance = buf.getInt();
+            final int length = buf.getShort() & 0xFFFF;
+            final byte[] chars = new byte[length];
+            buf.get(chars);
+            final short type = buf.getShort();
+            final int element_size = buf.getShort() & 0xFFFF;
+            final int[] dimensions = new int[3];
+            for (int i = 0; i < dimensions.length; ++i)
+            {
+                dimensions[i] = buf.getInt();
+            }
+            final String name = this.program == null ? new String(chars)
+                    : this.program + "." + new String(chars);
+            final Symbol symbol = new Symbol(this.program, instance, name,
+                    type, element_size, dimensions);
+            this.symbols.add(symbol);
+            if (log != null)
+            {
+                log.append("Symbol                  : ").append(symbol)
+                        .append("\n");
+            }
+        }
+    }
+
+    /** @return Symbols in the response */
+    public List<Symbol> getSymbols()
+    {
+        return this.symbols;
+    }
+}
@@ -11,7 +11,10 @@ import static etherip.EtherNetIP.logger;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 
 import etherip.util.Hexdump;
@@ -23,6 +26,7 @@ import etherip.util.Hexdump;
  *
  * @author Kay Kasemir, László Pataki
  */
+@SuppressWarnings("nls")
 public class TcpConnection extends Connection
 {
     private final AsynchronousSocketChannel channel;
@@ -37,12 +41,66 @@ public class TcpConnection extends Connection
      * @throws Exception
      */
     public TcpConnection(final String address, final int slot) throws Exception
+    {
+        this(address, slot, true);
+    }
+
+    /**
+     * Initialize
+     *
+     * @param address
+     *            IP address of device
+     * @param slot
+     *            Slot number 0, 1, .. of the controller within PLC crate
+     * @param open
+     *            <code>false</code> for derived classes that connect their own socket and override {@link #readSome(ByteBuffer)}, {@link #writeSome(ByteBuffer)}, {@link #isOpen()} and
+     *            {@link #close()}
+     * @throws Exception
+     *             on error
+     */
+    protected TcpConnection(final String address, final int slot,
+            final boolean open) throws Exception
     {
         super(address, slot);
 
-        this.channel = AsynchronousSocketChannel.open();
-        this.channel.connect(new InetSocketAddress(address, this.port))
-                .get(this.timeout_ms, MILLISECONDS);
+        if (open)
+        {
+            this.channel = AsynchronousSocketChannel.open();
+            this.channel.connect(new InetSocketAddress(address, this.port))
+                    .get(this.timeout_ms, MILLISECONDS);
+        }
+        else
+        {
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Read from the network
+     *
+     * @param buf
+     *            Buffer to fill from its position
+     * @return Number of bytes read, -1 when the device closed the connection
+     * @throws Exception
+     *             on error or timeout
+     */
+    protected int readSome(final ByteBuffer buf) throws Exception
+    {
+        return this.channel.read(buf).get(this.timeout_ms, MILLISECONDS);
+    }
+
+    /**
+     * Write to the network
+     *
+     * @param buf
+     *            Buffer to send from its position
+     * @return Number of bytes written
+     * @throws Exception
+     *             on error or timeout
+     */
+    protected int writeSome(final ByteBuffer buf) throws Exception
+    {
+        return this.channel.write(buf).get(this.timeout_ms, MILLISECONDS);
     }
 
     /**
@@ -76,8 +134,7 @@ public class TcpConnection extends Connection
         int to_write = this.buffer.limit();
         while (to_write > 0)
         {
-            final int written = this.channel.write(this.buffer)
-                    .get(this.timeout_ms, MILLISECONDS);
+            final int written = this.writeSome(this.buffer);
             to_write -= written;
             if (to_write > 0)
             {
@@ -98,28 +155,31 @@ public class TcpConnection extends Connection
     public void read(final ProtocolDecoder decoder) throws Exception
     {
         // Read until protocol has enough data to decode
-        this.buffer.clear();
+        this.receive_buffer.clear();
         do
         {
-            this.channel.read(this.buffer).get(this.timeout_ms, MILLISECONDS);
+            if (this.readSome(this.receive_buffer) < 0)
+            {
+                throw new Exception("Connection closed by device");
+            }
         }
-        while (this.buffer.position() < decoder.getResponseSize(this.buffer));
+        while (this.receive_buffer.position() < decoder.getResponseSize(this.receive_buffer));
 
         // Prepare to decode
-        this.buffer.flip();
+        this.receive_buffer.flip();
 
         if (logger.isLoggable(Level.FINEST))
         {
             logger.log(Level.FINEST, "Data read ({0} bytes):\n{1}",
-                    new Object[] { this.buffer.remaining(),
-                            Hexdump.toHexdump(this.buffer) });
+                    new Object[] { this.receive_buffer.remaining(),
+                            Hexdump.toHexdump(this.receive_buffer) });
         }
 
         final StringBuilder log = logger.isLoggable(Level.FINER)
                 ? new StringBuilder() : null;
         try
         {
-            decoder.decode(this.buffer, this.buffer.remaining(), log);
+            decoder.decode(this.receive_buffer, this.receive_buffer.remaining(), log);
         }
         finally
         { // Show log even on error
@@ -130,6 +190,112 @@ public class TcpConnection extends Connection
         }
     }
 
+    /**
+     * Write requests and handle their responses, keeping up to {@link #getPipelineDepth()} requests outstanding
+     *
+     * @param requests
+     *            {@link Encapsulation}s to execute
+     * @throws Exception
+     *             on error
+     */
+    @Override
+    public void execute(final Encapsulation... requests) throws Exception
+    {
+        final RequestQueue queue = this.getCallerQueue();
+        if (queue != null)
+        {
+            queue.execute(() -> this.execute(requests));
+            return;
+        }
+        if (this.pipeline_depth <= 1 || requests.length <= 1)
+        {
+            super.execute(requests);
+            return;
+        }
+
+        final Map<Long, Encapsulation> pending = new HashMap<>();
+        Exception error = null;
+        int sent = 0;
+        this.receive_buffer.clear();
+        while (sent < requests.length || !pending.isEmpty())
+        {
+            // Keep the pipeline filled, but stop sending once a response failed
+            while (error == null && sent < requests.length
+                    && pending.size() < this.pipeline_depth)
+            {
+                final Encapsulation request = requests[sent++];
+                this.write(request);
+                pending.put(request.getTransaction(), request);
+            }
+            if (pending.isEmpty())
+            {
+                break;
+            }
+
+            // Read header of next response to determine the matching request
+            this.receive(Encapsulation.ENCAPSULATION_HEADER_SIZE);
+            final long transaction = Encapsulation.getTransaction(this.receive_buffer);
+            final Encapsulation request = pending.remove(transaction);
+            if (request == null)
+            {
+                // Not a response to any of our requests, maybe one that we no longer wait for
+                final int size = Encapsulation.ENCAPSULATION_HEADER_SIZE
+                        + (this.receive_buffer.getShort(2) & 0xFFFF);
+                logger.log(Level.WARNING,
+                        "Ignoring response with unexpected context 0x{0}",
+                        Long.toHexString(transaction));
+                this.receive(size);
+                this.consume(size);
+                continue;
+            }
+
+            final int size = request.getResponseSize(this.receive_buffer);
+            this.receive(size);
+            try
+            {
+                this.decode(request, size);
+            }
+            catch (final Exception ex)
+            {
+                if (error == null)
+                {
+                    error = ex;
+                }
+            }
+            this.consume(size);
+        }
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    /**
+     * Read into the {@link #receive_buffer} until it holds at least the requested number of bytes
+     *
+     * @param size
+     *            Number of bytes needed
+     * @throws Exception
+     *             on error
+     */
+    private void receive(final int size) throws Exception
+    {
+        if (size > this.receive_buffer.capacity())
+        {
+            throw new Exception("Response of " + size
+                    + " bytes exceeds buffer size "
+                    + this.receive_buffer.capacity());
+        }
+        while (this.receive_buffer.position() < size)
+        {
+            final int read = this.readSome(this.receive_buffer);
+            if (read < 0)
+            {
+                throw new Exception("Connection closed by device");
+            }
+        }
+    }
+
     @Override
     public void close() throws Exception
     {
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import java.nio.ByteBuffer;
+
+import etherip.data.CipException;
+
+/**
+ * Get_Attribute_List for the Template Object
+ * <p>
+ * Obtains structure handle (attribute 1), member count (attribute 2), definition size (attribute 4) and structure size (attribute 5).
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TemplateAttributesProtocol extends GetAttributeListProtocol
+{
+    private short handle;
+    private int member_count;
+    private int definition_size;
+    private int structure_size;
+
+    public TemplateAttributesProtocol()
+    {
+        super((short) 1, (short) 2, (short) 4, (short) 5);
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        super.decode(buf, available, log);
+        final ByteBuffer data = ByteBuffer.wrap(this.getData());
+        data.order(buf.order());
+        final int count = data.getShort();
+        for (int i = 0; i < count; ++i)
+        {
+            final int attr = data.getShort();
+            final int status = data.getShort();
+            if (status != 0)
+            {
+                throw new CipException(status, 0);
+            }
+            switch (attr)
+            {
+            case 1:
+                this.handle = data.getShort();
+                break;
+            case 2:
+                this.member_count = data.getShort() & 0xFFFF;
+                break;
+            case 4:
+                this.definition_size = data.getInt();
+                break;
+            case 5:
+                this.structure_size = data.getInt();
+                break;
+            default:
+                throw new Exception("Unexpected template attribute " + attr);
+            }
+        }
+        if (log != null)
+        {
+            log.append("UINT handle             : 0x")
+                    .append(Integer.toHexString(this.handle & 0xFFFF))
+                    .append("\n");
+            log.append("UINT members            : ").append(this.member_count)
+                    .append("\n");
+            log.append("UDINT definition words  : ")
+                    .append(this.definition_size).append("\n");
+            log.append("UDINT structure bytes   : ")
+                    .append(this.structure_size).append("\n");
+        }
+    }
+
+    /** @return Structure handle */
+    public short getHandle()
+    {
+        return this.handle;
+    }
+
+    /** @return Number of members */
+    public int getMemberCount()
+    {
+        return this.member_count;
+    }
+
+    /** @return Size of the template definition in bytes, as read by the Read Template service */
+    public int getDefinitionSize()
+    {
+        // 1756-PM020: Definition size in 32-bit words * 4 - 23
+        return this.definition_size * 4 - 23;
+    }
+
+    /** @return Size of the structure data in bytes */
+    public int getStructureSize()
+    {
+        return this.structure_size;
+    }
+}
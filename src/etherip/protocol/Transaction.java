@@ -7,6 +7,7 @@
  *******************************************************************************/
 package etherip.protocol;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -37,13 +38,54 @@ public class Transaction
         });
     }
 
+    /** Hex digits used to format the transaction */
+    private static final byte[] DIGITS = "0123456789ABCDEF".getBytes();
+
+    /** @param transaction Transaction ID
+     *  @return Context bytes, transaction as 8 hex digits
+     */
     static byte[] format(final long transaction)
     {
-        return String.format("%08X", transaction).getBytes();
+        final byte[] bytes = new byte[8];
+        for (int i=0; i<bytes.length; ++i)
+            bytes[i] = DIGITS[(int) (transaction >>> (28 - 4*i)) & 0xF];
+        return bytes;
+    }
+
+    /** Place context bytes into buffer without allocating a byte[]
+     *  @param transaction Transaction ID
+     *  @param buf Buffer where the 8 context bytes are placed at its position
+     */
+    static void format(final long transaction, final ByteBuffer buf)
+    {
+        for (int i=0; i<8; ++i)
+            buf.put(DIGITS[(int) (transaction >>> (28 - 4*i)) & 0xF]);
     }
 
+    /** @param bytes Context bytes as created by {@link #format(long)}
+     *  @return Transaction ID, or -1 if bytes do not hold a formatted transaction
+     */
     static long parse(final byte[] bytes)
     {
-        return -1;
+        if (bytes.length != 8)
+            return -1;
+        return parse(ByteBuffer.wrap(bytes), 0);
+    }
+
+    /** @param buf Buffer that contains context bytes as created by {@link #format(long)}
+     *  @param index Index of the context bytes in the buffer
+     *  @return Transaction ID, or -1 if bytes do not hold a formatted transaction
+     */
+    static long parse(final ByteBuffer buf, final int index)
+    {
+        long result = 0;
+        for (int i=0; i<8; ++i)
+        {
+            final int digit = Character.digit(buf.get(index + i), 16);
+            if (digit < 0)
+                return -1;
+            result = (result << 4) | digit;
+        }
+        return result;
     }
 }
@@ -10,7 +10,6 @@ package etherip.protocol;
 import static etherip.EtherNetIP.logger;
 
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.util.logging.Level;
 
@@ -56,13 +55,6 @@ public class UdpConnection extends Connection
         return this.slot;
     }
 
-    /** @return {@link ByteBuffer} */
-    @Override
-    public ByteBuffer getBuffer()
-    {
-        return this.buffer;
-    }
-
     /**
      * Write protocol data
      *
@@ -113,29 +105,29 @@ public class UdpConnection extends Connection
     public void read(final ProtocolDecoder decoder) throws Exception
     {
         // Read until protocol has enough data to decode
-        this.buffer.clear();
+        this.receive_buffer.clear();
         if (this.receiveChannel.isBlocking())
         {
             this.receiveChannel.socket().setSoTimeout((int) this.timeout_ms);
         }
         do
         {
-            this.receiveChannel.receive(this.buffer);
+            this.receiveChannel.receive(this.receive_buffer);
         }
-        while (this.buffer.position() < decoder.getResponseSize(this.buffer));
+        while (this.receive_buffer.position() < decoder.getResponseSize(this.receive_buffer));
         // Prepare to decode
-        this.buffer.flip();
+        this.receive_buffer.flip();
         if (logger.isLoggable(Level.FINEST))
         {
             logger.log(Level.FINEST, "Data read ({0} bytes):\n{1}",
-                    new Object[] { this.buffer.remaining(),
-                            Hexdump.toHexdump(this.buffer) });
+                    new Object[] { this.receive_buffer.remaining(),
+                            Hexdump.toHexdump(this.receive_buffer) });
         }
         final StringBuilder log = logger.isLoggable(Level.FINER)
                 ? new StringBuilder() : null;
         try
         {
-            decoder.decode(this.buffer, this.buffer.remaining(), log);
+            decoder.decode(this.receive_buffer, this.receive_buffer.remaining(), log);
         }
         finally
         { // Show log even on error
@@ -20,10 +20,22 @@ import java.nio.ByteBuffer;
 @SuppressWarnings("nls")
 public class UnconnectedSendProtocol extends ProtocolAdapter
 {
-    final private ProtocolEncoder encoder;
+    /** Size limit for embedded request and its response */
+    final public static int MAX_MESSAGE_SIZE = 504;
+
+    /** Bytes added to the embedded message: CM_Unconnected_Send request, timeout, size, pad, route path */
+    final public static int OVERHEAD = 6 + 4 + 1 + 4;
+
+    /** CM_Unconnected_Send request, the same for every message */
+    final private static ProtocolEncoder encoder = new MessageRouterProtocol(
+            CM_Unconnected_Send, ConnectionManager(), new ProtocolAdapter());
+
     final private int slot;
     final private Protocol body;
 
+    /** Size of the embedded request */
+    final private int body_size;
+
     /**
      * Initialize
      *
@@ -34,17 +46,16 @@ public class UnconnectedSendProtocol extends ProtocolAdapter
      */
     public UnconnectedSendProtocol(final int slot, final Protocol body)
     {
-        this.encoder = new MessageRouterProtocol(CM_Unconnected_Send,
-                ConnectionManager(), new ProtocolAdapter());
         this.slot = slot;
         this.body = body;
+        this.body_size = body.getRequestSize();
     }
 
     /** {@inheritDoc} */
     @Override
     public int getRequestSize()
     {
-        return this.encoder.getRequestSize() + 4 + this.body.getRequestSize()
+        return encoder.getRequestSize() + 4 + this.body_size
                 + (this.needPad() ? 1 : 0) + 4;
     }
 
@@ -53,13 +64,13 @@ public class UnconnectedSendProtocol extends ProtocolAdapter
     public void encode(final ByteBuffer buf, final StringBuilder log)
             throws Exception
     {
-        this.encoder.encode(buf, log);
+        encoder.encode(buf, log);
 
         final byte tick_time = (byte) 10;
         final byte ticks = (byte) 240;
         buf.put(tick_time);
         buf.put(ticks);
-        final short body_size = (short) this.body.getRequestSize();
+        final short body_size = (short) this.body_size;
         buf.putShort(body_size);
 
         final boolean pad = this.needPad();
@@ -71,7 +82,7 @@ public class UnconnectedSendProtocol extends ProtocolAdapter
                     .append("\n");
             log.append("USINT ticks             : ").append(ticks).append("\n");
             log.append("UINT message size       : ")
-                    .append(this.body.getRequestSize()).append("\n");
+                    .append(this.body_size).append("\n");
             log.append("  \\/\\/\\/ embedded message \\/\\/\\/ (")
                     .append(body_size).append(" bytes)\n");
         }
@@ -116,6 +127,6 @@ public class UnconnectedSendProtocol extends ProtocolAdapter
     private boolean needPad()
     {
         // Findbugs: x%2==1 fails for negative numbers
-        return (this.body.getRequestSize() % 2) != 0;
+        return (this.body_size % 2) != 0;
     }
 }
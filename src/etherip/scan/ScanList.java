@@ -8,8 +8,12 @@
 package etherip.scan;
 
 import static etherip.EtherNetIP.logger;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-import java.util.TimerTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
 import etherip.Tag;
@@ -18,22 +22,68 @@ import etherip.protocol.Connection;
 
 /**
  * List of tags that are processed (read or written)
+ * <p>
+ * Created by the {@link Scanner} or {@link ScanRuntime}, which return it to check the timing of the scans. Schedules itself on its executor, timed by the monotonic {@link System#nanoTime()}.
+ * Without an executor, the {@link ScanRuntime} scans the list once {@link #getNextScan()} is due.
  *
  * @author Kay Kasemir
  */
-class ScanList extends TimerTask
+public class ScanList implements Runnable
 {
     final private double period;
+    final private long period_ns;
     final private Connection connection;
+    final private ScheduledExecutorService executor;
+    final private Scanner.Timing timing;
+    final private Scanner.Overrun overrun;
+
+    /** Lock for scan lists that share the connection, or <code>null</code> */
+    final private Lock lock;
 
     final private TagList tags = new TagList();
 
     private volatile boolean aborted = false;
 
-    public ScanList(final double period, final Connection connection)
+    /** Scheduled start of the next scan, {@link System#nanoTime()} */
+    private long next;
+
+    /** Number of scans that took longer than the period */
+    final private AtomicLong overruns = new AtomicLong();
+
+    /** Number of scans skipped because of overruns */
+    final private AtomicLong skipped = new AtomicLong();
+
+    /** Duration of the last scan in nanoseconds */
+    private volatile long duration_ns = 0;
+
+    /**
+     * Initialize
+     *
+     * @param period
+     *            Scan period in seconds
+     * @param connection
+     *            {@link Connection}, shared with other scan lists
+     * @param executor
+     *            Executor that runs this list, or <code>null</code> when scanned by the caller
+     * @param timing
+     *            {@link Scanner.Timing}
+     * @param overrun
+     *            {@link Scanner.Overrun} policy
+     * @param lock
+     *            Lock shared by scan lists that access the connection from different threads, or <code>null</code> when the caller already scans the connection from just one thread
+     */
+    ScanList(final double period, final Connection connection,
+            final ScheduledExecutorService executor,
+            final Scanner.Timing timing, final Scanner.Overrun overrun,
+            final Lock lock)
     {
         this.period = period;
+        this.period_ns = (long) (period * 1e9);
         this.connection = connection;
+        this.executor = executor;
+        this.timing = timing;
+        this.overrun = overrun;
+        this.lock = lock;
     }
 
     public Tag add(final String tag_name)
@@ -41,13 +91,96 @@ class ScanList extends TimerTask
         return this.tags.add(tag_name);
     }
 
+    /** Schedule the first scan one period from now */
+    void start()
+    {
+        this.next = System.nanoTime() + this.period_ns;
+        if (this.executor != null)
+        {
+            this.executor.schedule(this, this.period_ns, NANOSECONDS);
+        }
+    }
+
+    /** @return Scheduled start of the next scan, {@link System#nanoTime()} */
+    public long getNextScan()
+    {
+        return this.next;
+    }
+
+    /** @return Scan period in seconds */
+    public double getPeriod()
+    {
+        return this.period;
+    }
+
+    /** @return Number of scans that took longer than the period */
+    public long getOverruns()
+    {
+        return this.overruns.get();
+    }
+
+    /** @return Number of scans that were skipped because of overruns */
+    public long getSkipped()
+    {
+        return this.skipped.get();
+    }
+
+    /** @return Duration of the last scan in seconds */
+    public double getLastDuration()
+    {
+        return this.duration_ns / 1e9;
+    }
+
     @Override
     public void run()
+    {
+        if (this.aborted)
+        {
+            return;
+        }
+        this.scan();
+        if (this.aborted)
+        {
+            return;
+        }
+        try
+        {
+            this.executor.schedule(this,
+                    Math.max(0, this.next - System.nanoTime()), NANOSECONDS);
+        }
+        catch (final RejectedExecutionException ex)
+        {
+            if (!this.aborted)
+            {
+                throw ex;
+            }
+        }
+    }
+
+    /** Process the tags, then determine the start of the next scan */
+    void scan()
     {
         logger.log(Level.FINE, "Scan list {0} sec", this.period);
+        final long start = System.nanoTime();
         try
         {
-            this.tags.process(this.connection);
+            if (this.lock == null)
+            {
+                this.tags.process(this.connection);
+            }
+            else
+            {
+                // Scan lists of different periods share the connection
+                this.lock.lock();
+                try
+                {
+                    this.tags.process(this.connection);
+                }
+                finally
+                {
+                    this.lock.unlock();
+                }
+            }
         }
         catch (final Exception ex)
         {
@@ -58,12 +191,64 @@ class ScanList extends TimerTask
             logger.log(Level.WARNING,
                     "Scan list " + this.period + " sec process failed", ex);
         }
+        this.advance(start, System.nanoTime());
     }
 
-    @Override
-    public boolean cancel()
+    /**
+     * Determine the start of the next scan
+     *
+     * @param start
+     *            Time when the last scan started, {@link System#nanoTime()}
+     * @param end
+     *            Time when the last scan ended, {@link System#nanoTime()}
+     */
+    void advance(final long start, final long end)
+    {
+        this.duration_ns = end - start;
+        if (this.timing == Scanner.Timing.FIXED_DELAY)
+        {
+            if (this.duration_ns > this.period_ns)
+            {
+                this.handleOverrun(0);
+            }
+            this.next = end + this.period_ns;
+        }
+        else
+        {
+            this.next += this.period_ns;
+            if (this.next - end < 0)
+            {
+                if (this.overrun == Scanner.Overrun.SKIP)
+                {
+                    // Continue with the first period that is not in the past
+                    final long missed = (end - this.next + this.period_ns - 1) / this.period_ns;
+                    this.handleOverrun(missed);
+                    this.next += missed * this.period_ns;
+                }
+                else
+                {
+                    // Start right away, then continue at the period from there
+                    this.handleOverrun(0);
+                    this.next = end;
+                }
+            }
+        }
+    }
+
+    /** @param missed Number of skipped scans */
+    private void handleOverrun(final long missed)
+    {
+        final long count = this.overruns.incrementAndGet();
+        this.skipped.addAndGet(missed);
+        // Warn on first overrun, then only log details
+        logger.log(count == 1 ? Level.WARNING : Level.FINE,
+                "Scan list {0} sec took {1} sec, overrun #{2}, skipping {3} scans",
+                new Object[] { this.period, this.duration_ns / 1e9, count, missed });
+    }
+
+    /** Stop scanning */
+    void cancel()
     {
         this.aborted = true;
-        return super.cancel();
     }
-}
\ No newline at end of file
+}
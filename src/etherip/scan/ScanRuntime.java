@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.scan;
+
+import static etherip.EtherNetIP.logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import etherip.Tag;
+import etherip.protocol.BlockingTcpConnection;
+import etherip.protocol.Connection;
+import etherip.protocol.TcpConnection;
+
+/**
+ * Runtime that scans many connections
+ * <p>
+ * Each connection is scanned by one loop that handles all its {@link ScanList}s, so a connection needs one thread independent of the number of scan periods. On Java 21 and later, the loops run
+ * on virtual threads. Combined with the {@link BlockingTcpConnection}, a large number of devices can then be scanned by a few platform threads. Older Java versions use a platform thread per
+ * connection.
+ * <p>
+ * The runtime starts and stops the loops. Connections remain owned by the caller.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ScanRuntime implements AutoCloseable
+{
+    /** Factory for virtual threads, <code>null</code> when not supported */
+    final private static ThreadFactory virtual_threads = createVirtualThreadFactory();
+
+    /** Number of platform threads created when virtual threads are not supported */
+    final private static AtomicInteger platform_threads = new AtomicInteger();
+
+    /**
+     * Scan loop for one connection
+     * <p>
+     * The loop is the only thread that scans the connection, so the scan lists don't need to lock it. The lock only guards the scan lists. It is a {@link ReentrantLock} instead of a monitor
+     * because monitors pin a virtual thread to its carrier on older Java versions.
+     */
+    private class ConnectionScan implements Runnable
+    {
+        final private Connection connection;
+
+        final private ReentrantLock lock = new ReentrantLock();
+
+        /** Scan lists by scan period in ms */
+        final private Map<Long, ScanList> scan_lists = new HashMap<>();
+
+        private volatile boolean cancelled = false;
+
+        private Thread thread;
+
+        ConnectionScan(final Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        Tag add(final long ms, final String tag_name)
+        {
+            this.lock.lock();
+            try
+            {
+                ScanList list = this.scan_lists.get(ms);
+                if (list == null)
+                {
+                    list = new ScanList(ms / 1000.0, this.connection, null,
+                            ScanRuntime.this.timing, ScanRuntime.this.overrun,
+                            null);
+                    list.start();
+                    this.scan_lists.put(ms, list);
+                    // Wake loop to consider the new list
+                    if (this.thread != null)
+                    {
+                        LockSupport.unpark(this.thread);
+                    }
+                }
+                return list.add(tag_name);
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        ScanList get(final long ms)
+        {
+            this.lock.lock();
+            try
+            {
+                return this.scan_lists.get(ms);
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        /** @return Scan list that is due next, or <code>null</code> */
+        private ScanList getNext()
+        {
+            this.lock.lock();
+            try
+            {
+                ScanList next = null;
+                for (final ScanList list : this.scan_lists.values())
+                {
+                    if (next == null || list.getNextScan() - next.getNextScan() < 0)
+                    {
+                        next = list;
+                    }
+                }
+                return next;
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        void start()
+        {
+            this.thread = createThread(this, "Scan " + this.connection);
+            this.thread.start();
+        }
+
+        /**
+         * Stop the loop
+         * <p>
+         * A scan that is in progress will complete. Interrupting the loop would close the socket of a {@link BlockingTcpConnection} and abandon the pending read of a {@link TcpConnection}.
+         */
+        void cancel()
+        {
+            this.cancelled = true;
+            this.lock.lock();
+            try
+            {
+                for (final ScanList list : this.scan_lists.values())
+                {
+                    list.cancel();
+                }
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+            LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run()
+        {
+            while (!this.cancelled)
+            {
+                final ScanList list = this.getNext();
+                if (list == null)
+                {
+                    LockSupport.park(this);
+                }
+                else
+                {
+                    final long delay = list.getNextScan() - System.nanoTime();
+                    if (delay > 0)
+                    {
+                        // Re-check after waking, the lists may have changed
+                        LockSupport.parkNanos(this, delay);
+                    }
+                    else
+                    {
+                        list.scan();
+                    }
+                }
+                if (Thread.interrupted())
+                {
+                    break;
+                }
+            }
+            logger.log(Level.FINE, "Scan loop for {0} ends", this.connection);
+        }
+    }
+
+    final private Scanner.Timing timing;
+    final private Scanner.Overrun overrun;
+
+    /** Scan loops by connection */
+    final private Map<Connection, ConnectionScan> scans = new HashMap<>();
+
+    private boolean closed = false;
+
+    /** Create runtime with fixed rate timing that skips missed scans */
+    public ScanRuntime()
+    {
+        this(Scanner.Timing.FIXED_RATE, Scanner.Overrun.SKIP);
+    }
+
+    /**
+     * Create runtime
+     *
+     * @param timing
+     *            {@link Scanner.Timing}
+     * @param overrun
+     *            {@link Scanner.Overrun} policy
+     */
+    public ScanRuntime(final Scanner.Timing timing,
+            final Scanner.Overrun overrun)
+    {
+        this.timing = timing;
+        this.overrun = overrun;
+    }
+
+    /** @return Factory for virtual threads, or <code>null</code> */
+    private static ThreadFactory createVirtualThreadFactory()
+    {
+        // Thread.ofVirtual().name(..).factory(), using reflection to still run on older Java
+        try
+        {
+            final Object builder = Thread.class.getMethod("ofVirtual")
+                    .invoke(null);
+            final Class<?> builder_class = Class
+                    .forName("java.lang.Thread$Builder");
+            final Object named = builder_class
+                    .getMethod("name", String.class, long.class)
+                    .invoke(builder, "Scan-", 0L);
+            return (ThreadFactory) builder_class.getMethod("factory")
+                    .invoke(named);
+        }
+        catch (final Throwable ex)
+        {
+            logger.log(Level.CONFIG,
+                    "Virtual threads not supported, scanning on platform threads");
+            return null;
+        }
+    }
+
+    /** @return <code>true</code> if scan loops run on virtual threads */
+    public static boolean isUsingVirtualThreads()
+    {
+        return virtual_threads != null;
+    }
+
+    private static Thread createThread(final Runnable loop, final String name)
+    {
+        if (virtual_threads != null)
+        {
+            final Thread thread = virtual_threads.newThread(loop);
+            thread.setName(name);
+            return thread;
+        }
+        final Thread thread = new Thread(loop,
+                name + " #" + platform_threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static long convertToMillisec(final double seconds)
+    {
+        if (seconds <= 0.1)
+        {
+            return 100;
+        }
+        return (long) (seconds * 1000);
+    }
+
+    /**
+     * Add tag to scan
+     *
+     * @param connection
+     *            {@link Connection} to the device, with session registered
+     * @param period_secs
+     *            Scan period
+     * @param tag_name
+     *            Tag name
+     * @return {@link Tag}
+     * @throws IllegalStateException
+     *             when runtime has been closed
+     */
+    public synchronized Tag add(final Connection connection,
+            final double period_secs, final String tag_name)
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("Scan runtime has been closed");
+        }
+        ConnectionScan scan = this.scans.get(connection);
+        if (scan == null)
+        {
+            scan = new ConnectionScan(connection);
+            this.scans.put(connection, scan);
+            scan.start();
+        }
+        return scan.add(convertToMillisec(period_secs), tag_name);
+    }
+
+    /**
+     * @param connection
+     *            {@link Connection}
+     * @param period_secs
+     *            Scan period
+     * @return {@link ScanList} for that connection and period, or <code>null</code>
+     */
+    public synchronized ScanList getScanList(final Connection connection,
+            final double period_secs)
+    {
+        final ConnectionScan scan = this.scans.get(connection);
+        return scan == null ? null : scan.get(convertToMillisec(period_secs));
+    }
+
+    /** @return Number of scanned connections */
+    public synchronized int getConnectionCount()
+    {
+        return this.scans.size();
+    }
+
+    /**
+     * Stop scanning a connection
+     *
+     * @param connection
+     *            {@link Connection}
+     */
+    public synchronized void remove(final Connection connection)
+    {
+        final ConnectionScan scan = this.scans.remove(connection);
+        if (scan != null)
+        {
+            scan.cancel();
+        }
+    }
+
+    /**
+     * Stop all scan loops and wait for them to end
+     *
+     * @param timeout
+     *            Time to wait for the loops to end
+     * @param unit
+     *            Unit of the timeout
+     * @return <code>true</code> if all loops ended within the timeout
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit)
+            throws InterruptedException
+    {
+        final List<ConnectionScan> stopped;
+        synchronized (this)
+        {
+            this.closed = true;
+            stopped = new ArrayList<>(this.scans.values());
+            this.scans.clear();
+        }
+        for (final ConnectionScan scan : stopped)
+        {
+            scan.cancel();
+        }
+        final long end = System.nanoTime() + unit.toNanos(timeout);
+        for (final ConnectionScan scan : stopped)
+        {
+            final long wait = end - System.nanoTime();
+            if (wait > 0)
+            {
+                TimeUnit.NANOSECONDS.timedJoin(scan.thread, wait);
+            }
+            if (scan.thread.isAlive())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if (!this.shutdown(10, TimeUnit.SECONDS))
+        {
+            logger.log(Level.WARNING, "Scan loops did not end");
+        }
+    }
+}
@@ -7,29 +7,87 @@
  *******************************************************************************/
 package etherip.scan;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import etherip.Tag;
 import etherip.protocol.Connection;
 
 /**
- * Timer-based periodic scanner for {@link ScanList Scan Lists}
+ * Periodic scanner for {@link ScanList Scan Lists}
+ * <p>
+ * Each scan list runs on its own thread, so a slow list does not delay the scheduling of other lists. They do however share the connection, so one list may need to wait for the network
+ * traffic of another list to complete. Scans that take longer than their period are counted as overruns.
  *
  * @author Kay Kasemir
  */
-class Scanner
+@SuppressWarnings("nls")
+public class Scanner
 {
+    /** Timing of the scans */
+    public enum Timing
+    {
+        /** Start scans at multiples of the period */
+        FIXED_RATE,
+        /** Start the next scan one period after the end of the previous scan */
+        FIXED_DELAY
+    }
+
+    /** What to do when a {@link Timing#FIXED_RATE} scan takes longer than the period */
+    public enum Overrun
+    {
+        /** Skip the scans that were missed, continue with the next period */
+        SKIP,
+        /** Start the next scan right away */
+        RUN_LATE
+    }
+
     final private Connection connection;
-    final Timer timer = new Timer("Scan Timer");
+    final private Timing timing;
+    final private Overrun overrun;
 
     /** Scan lists by scan period in ms */
     final Map<Long, ScanList> scan_lists = new HashMap<>();
 
+    /** Lock for the connection, shared by the scan lists */
+    final private Lock lock = new ReentrantLock();
+
+    /** Executors of the scan lists */
+    final private List<ScheduledExecutorService> executors = new ArrayList<>();
+
+    /**
+     * Create scanner with fixed rate timing that skips missed scans
+     *
+     * @param connection
+     *            {@link Connection}
+     */
     public Scanner(final Connection connection)
+    {
+        this(connection, Timing.FIXED_RATE, Overrun.SKIP);
+    }
+
+    /**
+     * Create scanner
+     *
+     * @param connection
+     *            {@link Connection}
+     * @param timing
+     *            {@link Timing}
+     * @param overrun
+     *            {@link Overrun} policy
+     */
+    public Scanner(final Connection connection, final Timing timing,
+            final Overrun overrun)
     {
         this.connection = connection;
+        this.timing = timing;
+        this.overrun = overrun;
     }
 
     private long convertToMillisec(final double seconds)
@@ -41,26 +99,44 @@ class Scanner
         return (long) (seconds * 1000);
     }
 
-    public Tag add(final double period_secs, final String tag_name)
+    public synchronized Tag add(final double period_secs, final String tag_name)
     {
         // Locate suitable scan list
         final long ms = this.convertToMillisec(period_secs);
         ScanList list = this.scan_lists.get(ms);
         if (list == null)
         {
-            list = new ScanList(period_secs, this.connection);
+            final ScheduledExecutorService executor = Executors
+                    .newSingleThreadScheduledExecutor(runnable -> new Thread(
+                            runnable, "Scan " + ms / 1000.0 + " sec"));
+            this.executors.add(executor);
+            list = new ScanList(ms / 1000.0, this.connection, executor,
+                    this.timing, this.overrun, this.lock);
             this.scan_lists.put(ms, list);
-            this.timer.schedule(list, ms, ms);
+            list.start();
         }
         return list.add(tag_name);
     }
 
-    public void stop()
+    /**
+     * @param period_secs
+     *            Scan period
+     * @return {@link ScanList} for that period, or <code>null</code>
+     */
+    public synchronized ScanList getScanList(final double period_secs)
+    {
+        return this.scan_lists.get(this.convertToMillisec(period_secs));
+    }
+
+    public synchronized void stop()
     {
-        this.timer.cancel();
         for (final ScanList list : this.scan_lists.values())
         {
             list.cancel();
         }
+        for (final ScheduledExecutorService executor : this.executors)
+        {
+            executor.shutdownNow();
+        }
     }
-}
\ No newline at end of file
+}
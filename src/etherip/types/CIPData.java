@@ -9,8 +9,7 @@ package etherip.types;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import etherip.protocol.Connection;
@@ -25,6 +24,9 @@ import etherip.protocol.Connection;
  * Note that all operations that 'set' the value require that the CIPData already holds the respective type. For example, setting a CIPData of type REAL to an integer value will still result in a
  * REAL, not change the type to INT. Setting a CIPData of type INT to a floating point value will truncate the floating point to an integer, since the CIPData remains an INT. Only CIPData with a
  * string-containing STRUCT can be set to a string.
+ * <p>
+ * A CIPData obtained via {@link #view(Type, ByteBuffer, int)} does not own its bytes but is a read-only view of a receive buffer. It is only valid until the next response is read into that
+ * buffer, and any attempt to 'set' its value results in a {@link java.nio.ReadOnlyBufferException}. Use {@link #copy()} to keep the value.
  *
  * @author Kay Kasemir
  */
@@ -38,6 +40,12 @@ final public class CIPData
         INT(0x00C3, 2),
         DINT(0x00C4, 4),
         REAL(0x00CA, 4),
+        USINT(0x00C6, 1),
+        UINT(0x00C7, 2),
+        UDINT(0x00C8, 4),
+        LINT(0x00C5, 8),
+        LREAL(0x00CB, 8),
+        /** DWORD, 32-bit bit string */
         BITS(0x00D3, 4),
         // Order of enums matter: BITS is the last numeric type (not-string)
         STRUCT(0x02A0, 0),
@@ -51,26 +59,52 @@ final public class CIPData
         final private short code;
         final private int element_size;
 
-        final private static Map<Short, Type> reverse;
+        /** Lowest type code of the atomic types */
+        final private static int ATOMIC_BASE = 0xC0;
+
+        /** Atomic types, indexed by code - ATOMIC_BASE */
+        final private static Type[] atomic = new Type[0x20];
 
         static
         {
-            reverse = new HashMap<>();
-            for (final Type t : EnumSet.allOf(Type.class))
+            for (final Type t : values())
             {
-                reverse.put(t.code, t);
+                final int index = (t.code & 0xFFFF) - ATOMIC_BASE;
+                if (index >= 0 && index < atomic.length)
+                {
+                    atomic[index] = t;
+                }
             }
         }
 
+        /**
+         * @param code
+         *            Type code
+         * @return {@link Type} for that code
+         * @throws Exception
+         *             on unknown code
+         */
         public static Type forCode(final short code) throws Exception
         {
-            final Type t = reverse.get(code);
-            if (reverse == null)
+            final int index = (code & 0xFFFF) - ATOMIC_BASE;
+            if (index >= 0 && index < atomic.length)
+            {
+                final Type t = atomic[index];
+                if (t != null)
+                {
+                    return t;
+                }
+            }
+            else if (code == STRUCT.code)
             {
-                throw new Exception(
-                        "Unknown CIP type code 0x" + Integer.toHexString(code));
+                return STRUCT;
             }
-            return t;
+            else if (code == STRUCT_STRING.code)
+            {
+                return STRUCT_STRING;
+            }
+            throw new Exception(
+                    "Unknown CIP type code 0x" + Integer.toHexString(code & 0xFFFF));
         }
 
         private Type(final int code, final int element_size)
@@ -79,6 +113,12 @@ final public class CIPData
             this.element_size = element_size;
         }
 
+        /** @return Size of one element in bytes, 0 for structures */
+        final public int getElementSize()
+        {
+            return this.element_size;
+        }
+
         @Override
         final public String toString()
         {
@@ -115,6 +155,11 @@ final public class CIPData
         case DINT:
         case BITS:
         case REAL:
+        case USINT:
+        case UINT:
+        case UDINT:
+        case LINT:
+        case LREAL:
             this.data = ByteBuffer.allocate(type.element_size * elements);
             this.data.order(Connection.BYTE_ORDER);
             this.type = type;
@@ -144,6 +189,73 @@ final public class CIPData
         this.elements = this.determineElementCount();
     }
 
+    /**
+     * Initialize from existing buffer
+     *
+     * @param type
+     *            Data type
+     * @param data
+     *            Buffer that contains exactly the raw CIP data, in {@link Connection#BYTE_ORDER}
+     * @throws Exception
+     *             when data is invalid
+     */
+    private CIPData(final Type type, final ByteBuffer data) throws Exception
+    {
+        this.type = type;
+        this.data = data;
+        this.elements = this.determineElementCount();
+    }
+
+    /**
+     * Create read-only view of CIP data
+     * <p>
+     * Does not copy the data. The view remains valid only as long as the content of the buffer is not overwritten.
+     *
+     * @param type
+     *            Data type
+     * @param buf
+     *            {@link ByteBuffer} positioned at the raw CIP data, i.e. after the type code. Position is not changed.
+     * @param size
+     *            Number of bytes in the raw CIP data
+     * @return {@link CIPData} that shares the bytes of the buffer
+     * @throws Exception
+     *             when data is invalid
+     * @see #copy()
+     */
+    public static CIPData view(final Type type, final ByteBuffer buf,
+            final int size) throws Exception
+    {
+        final ByteBuffer range = buf.slice();
+        range.limit(size);
+        final ByteBuffer view = range.slice().asReadOnlyBuffer();
+        view.order(Connection.BYTE_ORDER);
+        return new CIPData(type, view);
+    }
+
+    /** @return <code>true</code> if this is a read-only view of a receive buffer */
+    final public boolean isView()
+    {
+        return this.data.isReadOnly();
+    }
+
+    /**
+     * Create a copy that owns its data
+     * <p>
+     * For a view, this is the way to keep the value beyond the next read.
+     *
+     * @return {@link CIPData} with a copy of the data
+     * @throws Exception
+     *             on error
+     */
+    final synchronized public CIPData copy() throws Exception
+    {
+        final ByteBuffer copy = ByteBuffer.allocate(this.data.capacity());
+        copy.order(Connection.BYTE_ORDER);
+        this.data.clear();
+        copy.put(this.data);
+        return new CIPData(this.type, copy);
+    }
+
     /** @return Number of elements */
     final private short determineElementCount() throws Exception
     {
@@ -155,19 +267,24 @@ final public class CIPData
         case DINT:
         case BITS:
         case REAL:
+        case USINT:
+        case UINT:
+        case UDINT:
+        case LINT:
+        case LREAL:
             return (short) (this.data.capacity() / this.type.element_size);
         case STRUCT:
         {
-            final Type el_type = Type.forCode(this.data.getShort(0));
-            if (el_type == Type.STRUCT_STRING)
-            {
-                return 1;
-            }
-            else
+            // String or user-defined structure.
+            // When the size of the structure is known, data may hold an array of structures.
+            final int bytes = this.data.capacity() - 2;
+            final int size = bytes > 0
+                    ? Template.getStructureSize(this.data.getShort(0)) : 0;
+            if (size > 0 && bytes >= size && bytes % size == 0)
             {
-                throw new Exception("Structure elements of type " + this.type
-                        + " not handled");
+                return (short) (bytes / size);
             }
+            return 1;
         }
         default:
             throw new Exception("Type " + this.type + " not handled");
@@ -181,7 +298,7 @@ final public class CIPData
     }
 
     /**
-     * @return Number of elements (numbers in array). Always 1 for String
+     * @return Number of elements (numbers in array). For a STRUCT, the number of structures if their size is known, see {@link Template#getStructureSize(short)}, otherwise 1
      */
     final public int getElementCount()
     {
@@ -199,7 +316,7 @@ final public class CIPData
      *
      * @param index
      *            Element index 0, 1, ...
-     * @return Numeric value of requested element
+     * @return Numeric value of requested element. Unsigned types are returned in the next larger signed type.
      * @throws Exception
      *             on error, if data is not numeric
      * @throws IndexOutOfBoundsException
@@ -212,22 +329,277 @@ final public class CIPData
         {
         case BOOL:
         case SINT:
-            return new Byte(this.data.get(this.type.element_size * index));
+            return Byte.valueOf(this.data.get(this.type.element_size * index));
         case INT:
-            return new Short(
+            return Short.valueOf(
                     this.data.getShort(this.type.element_size * index));
         case DINT:
         case BITS:
-            return new Integer(
+            return Integer.valueOf(
                     this.data.getInt(this.type.element_size * index));
         case REAL:
-            return new Float(
+            return Float.valueOf(
                     this.data.getFloat(this.type.element_size * index));
+        case USINT:
+            return Short.valueOf((short) this.readLong(this.getElementOffset(index)));
+        case UINT:
+            return Integer.valueOf((int) this.readLong(this.getElementOffset(index)));
+        case UDINT:
+        case LINT:
+            return Long.valueOf(this.readLong(this.getElementOffset(index)));
+        case LREAL:
+            return Double.valueOf(this.readDouble(this.getElementOffset(index)));
         default:
             throw new Exception("Cannot retrieve Number from " + this.type);
         }
     }
 
+    /** @return Byte offset of a numeric element */
+    private int getElementOffset(final int index)
+            throws IndexOutOfBoundsException
+    {
+        if (index < 0 || index >= this.elements)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " of "
+                    + this.elements + " " + this.type + " elements");
+        }
+        return this.type.element_size * index;
+    }
+
+    /** @return Element at byte offset as long, floating point types truncated */
+    private long readLong(final int offset) throws Exception
+    {
+        switch (this.type)
+        {
+        case BOOL:
+        case SINT:
+            return this.data.get(offset);
+        case USINT:
+            return this.data.get(offset) & 0xFF;
+        case INT:
+            return this.data.getShort(offset);
+        case UINT:
+            return this.data.getShort(offset) & 0xFFFF;
+        case DINT:
+        case BITS:
+            return this.data.getInt(offset);
+        case UDINT:
+            return this.data.getInt(offset) & 0xFFFFFFFFL;
+        case LINT:
+            return this.data.getLong(offset);
+        case REAL:
+            return (long) this.data.getFloat(offset);
+        case LREAL:
+            return (long) this.data.getDouble(offset);
+        default:
+            throw new Exception("Type " + this.type + " is not numeric");
+        }
+    }
+
+    /** @return Element at byte offset as double */
+    private double readDouble(final int offset) throws Exception
+    {
+        switch (this.type)
+        {
+        case REAL:
+            return this.data.getFloat(offset);
+        case LREAL:
+            return this.data.getDouble(offset);
+        default:
+            return this.readLong(offset);
+        }
+    }
+
+    /**
+     * Read CIP data as integer
+     * <p>
+     * Unlike {@link #getNumber(int)}, this does not allocate a {@link Number}. Floating point types are truncated, LINT and UDINT values that exceed the range of an int wrap around.
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Integer value of requested element
+     * @throws Exception
+     *             on error, if data is not numeric
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     * @see #getLong(int)
+     */
+    final synchronized public int getInt(final int index)
+            throws Exception, IndexOutOfBoundsException
+    {
+        return (int) this.readLong(this.getElementOffset(index));
+    }
+
+    /**
+     * Read CIP data as long
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Integer value of requested element, floating point types truncated
+     * @throws Exception
+     *             on error, if data is not numeric
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public long getLong(final int index)
+            throws Exception, IndexOutOfBoundsException
+    {
+        return this.readLong(this.getElementOffset(index));
+    }
+
+    /**
+     * Read CIP data as float
+     * <p>
+     * Unlike {@link #getNumber(int)}, this does not allocate a {@link Number}.
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Floating point value of requested element
+     * @throws Exception
+     *             on error, if data is not numeric
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public float getFloat(final int index)
+            throws Exception, IndexOutOfBoundsException
+    {
+        return (float) this.readDouble(this.getElementOffset(index));
+    }
+
+    /**
+     * Read CIP data as double
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @return Floating point value of requested element
+     * @throws Exception
+     *             on error, if data is not numeric
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public double getDouble(final int index)
+            throws Exception, IndexOutOfBoundsException
+    {
+        return this.readDouble(this.getElementOffset(index));
+    }
+
+    /**
+     * Copy CIP data into array
+     * <p>
+     * Copies as many elements as fit into the array, converting them to float.
+     *
+     * @param values
+     *            Array to fill
+     * @return Number of elements that were copied
+     * @throws Exception
+     *             on error, if data is not numeric
+     */
+    final synchronized public int getFloats(final float[] values)
+            throws Exception
+    {
+        final int count = Math.min(values.length, this.elements);
+        if (this.type == Type.REAL)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = this.data.getFloat(4 * i);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = (float) this.readDouble(this.type.element_size * i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy CIP data into array
+     * <p>
+     * Copies as many elements as fit into the array, converting them to int as in {@link #getInt(int)}.
+     *
+     * @param values
+     *            Array to fill
+     * @return Number of elements that were copied
+     * @throws Exception
+     *             on error, if data is not numeric
+     */
+    final synchronized public int getInts(final int[] values) throws Exception
+    {
+        final int count = Math.min(values.length, this.elements);
+        if (this.type == Type.DINT)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = this.data.getInt(4 * i);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = (int) this.readLong(this.type.element_size * i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy CIP data into array
+     * <p>
+     * Copies as many elements as fit into the array, converting them to short. Larger values are truncated to their low 16 bits.
+     *
+     * @param values
+     *            Array to fill
+     * @return Number of elements that were copied
+     * @throws Exception
+     *             on error, if data is not numeric
+     */
+    final synchronized public int getShorts(final short[] values)
+            throws Exception
+    {
+        final int count = Math.min(values.length, this.elements);
+        if (this.type == Type.INT)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = this.data.getShort(2 * i);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                values[i] = (short) this.readLong(this.type.element_size * i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy CIP data into array
+     * <p>
+     * Copies as many elements as fit into the array, converting them to double.
+     *
+     * @param values
+     *            Array to fill
+     * @return Number of elements that were copied
+     * @throws Exception
+     *             on error, if data is not numeric
+     */
+    final synchronized public int getDoubles(final double[] values)
+            throws Exception
+    {
+        final int count = Math.min(values.length, this.elements);
+        for (int i = 0; i < count; ++i)
+        {
+            values[i] = this.readDouble(this.type.element_size * i);
+        }
+        return count;
+    }
+
     /**
      * Read CIP data as string
      *
@@ -272,24 +644,45 @@ final public class CIPData
      */
     final synchronized public void set(final int index, final Number value)
             throws Exception, IndexOutOfBoundsException
+    {
+        if (this.type == Type.REAL || this.type == Type.LREAL)
+        {
+            this.writeDouble(this.getElementOffset(index), value.doubleValue());
+        }
+        else
+        {
+            this.writeLong(this.getElementOffset(index), value.longValue());
+        }
+    }
+
+    /** Write element at byte offset, truncated to the size of the type */
+    private void writeLong(final int offset, final long value)
+            throws Exception
     {
         switch (this.type)
         {
         case BOOL:
         case SINT:
-            this.data.put(this.type.element_size * index, value.byteValue());
+        case USINT:
+            this.data.put(offset, (byte) value);
             break;
         case INT:
-            this.data.putShort(this.type.element_size * index,
-                    value.shortValue());
+        case UINT:
+            this.data.putShort(offset, (short) value);
             break;
         case DINT:
         case BITS:
-            this.data.putInt(this.type.element_size * index, value.intValue());
+        case UDINT:
+            this.data.putInt(offset, (int) value);
+            break;
+        case LINT:
+            this.data.putLong(offset, value);
             break;
         case REAL:
-            this.data.putFloat(this.type.element_size * index,
-                    value.floatValue());
+            this.data.putFloat(offset, value);
+            break;
+        case LREAL:
+            this.data.putDouble(offset, value);
             break;
         default:
             throw new Exception(
@@ -297,6 +690,101 @@ final public class CIPData
         }
     }
 
+    /** Write element at byte offset, integer types truncated */
+    private void writeDouble(final int offset, final double value)
+            throws Exception
+    {
+        switch (this.type)
+        {
+        case REAL:
+            this.data.putFloat(offset, (float) value);
+            break;
+        case LREAL:
+            this.data.putDouble(offset, value);
+            break;
+        default:
+            this.writeLong(offset, (long) value);
+        }
+    }
+
+    /**
+     * Set CIP data to integer
+     * <p>
+     * Unlike {@link #set(int, Number)}, this does not require a {@link Number}.
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @param value
+     *            Value to write to that element
+     * @throws Exception
+     *             on invalid data type
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public void setInt(final int index, final int value)
+            throws Exception, IndexOutOfBoundsException
+    {
+        this.writeLong(this.getElementOffset(index), value);
+    }
+
+    /**
+     * Set CIP data to long
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @param value
+     *            Value to write to that element
+     * @throws Exception
+     *             on invalid data type
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public void setLong(final int index, final long value)
+            throws Exception, IndexOutOfBoundsException
+    {
+        this.writeLong(this.getElementOffset(index), value);
+    }
+
+    /**
+     * Set CIP data to float
+     * <p>
+     * For integer types, the value is truncated.
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @param value
+     *            Value to write to that element
+     * @throws Exception
+     *             on invalid data type
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public void setFloat(final int index, final float value)
+            throws Exception, IndexOutOfBoundsException
+    {
+        this.writeDouble(this.getElementOffset(index), value);
+    }
+
+    /**
+     * Set CIP data to double
+     * <p>
+     * For integer types, the value is truncated.
+     *
+     * @param index
+     *            Element index 0, 1, ...
+     * @param value
+     *            Value to write to that element
+     * @throws Exception
+     *             on invalid data type
+     * @throws IndexOutOfBoundsException
+     *             if index is invalid
+     */
+    final synchronized public void setDouble(final int index, final double value)
+            throws Exception, IndexOutOfBoundsException
+    {
+        this.writeDouble(this.getElementOffset(index), value);
+    }
+
     /**
      * Write CIP data as string
      *
@@ -330,6 +818,146 @@ final public class CIPData
         this.data.put(6 + len, (byte) 0);
     }
 
+    /**
+     * Get member of a user-defined structure
+     * <p>
+     * Atomic members and arrays of atomic members are returned with their type. A BOOL member is returned as a BOOL with value 0 or 1. A structure member is returned as a STRUCT
+     * without structure handle, which can again be decoded with the member's {@link Template}.
+     *
+     * @param template
+     *            {@link Template} of this structure
+     * @param member
+     *            {@link Template.Member} to get
+     * @return {@link CIPData} for the member
+     * @throws Exception
+     *             if this is not a structure of that template, or member type is not handled
+     */
+    final synchronized public CIPData getMember(final Template template,
+            final Template.Member member) throws Exception
+    {
+        if (this.type != Type.STRUCT)
+        {
+            throw new Exception("Type " + this.type + " is no structure");
+        }
+        final short handle = this.data.getShort(0);
+        if (handle != 0 && handle != template.getHandle())
+        {
+            throw new Exception(String.format(
+                    "Structure handle 0x%04X does not match %s",
+                    handle, template));
+        }
+        // Raw data starts with the structure handle
+        final int offset = 2 + member.getOffset();
+        if (member.isStructure())
+        {
+            final byte[] raw = new byte[2 + template.getMemberSize(member)];
+            this.getRawBytes(offset, raw, 2);
+            return new CIPData(Type.STRUCT, raw);
+        }
+        final Type member_type = Type.forCode((short) member.getTypeCode());
+        if (member_type == Type.BOOL && !member.isArray())
+        {
+            final int bit = (this.data.get(offset) >> member.getBit()) & 1;
+            return new CIPData(Type.BOOL, new byte[] { (byte) bit });
+        }
+        final byte[] raw = new byte[template.getMemberSize(member)];
+        this.getRawBytes(offset, raw, 0);
+        return new CIPData(member_type, raw);
+    }
+
+    /**
+     * Get all members of a user-defined structure
+     *
+     * @param template
+     *            {@link Template} of this structure
+     * @return Member values by name, in the order of the template
+     * @throws Exception
+     *             on error
+     */
+    final public Map<String, CIPData> getMembers(final Template template)
+            throws Exception
+    {
+        final Map<String, CIPData> members = new LinkedHashMap<>();
+        for (final Template.Member member : template.getMembers())
+        {
+            members.put(member.getName(), this.getMember(template, member));
+        }
+        return members;
+    }
+
+    /** Copy raw bytes starting at offset into array, starting at index */
+    private void getRawBytes(final int offset, final byte[] raw,
+            final int index)
+    {
+        for (int i = index; i < raw.length; ++i)
+        {
+            raw[i] = this.data.get(offset + i - index);
+        }
+    }
+
+    /**
+     * @return Number of data bytes that follow the type information, element count and, for a STRUCT, the structure detail
+     */
+    final public int getDataSize()
+    {
+        if (this.type == Type.STRUCT)
+        {
+            return this.data.capacity() - 2;
+        }
+        return this.data.capacity();
+    }
+
+    /**
+     * Copy raw bytes into the data
+     * <p>
+     * Used to assemble data that is received in fragments. For a STRUCT, the raw data starts with the 2-byte structure detail.
+     *
+     * @param offset
+     *            Byte offset into the raw data
+     * @param src
+     *            {@link ByteBuffer} from which the remaining bytes are copied
+     * @throws IndexOutOfBoundsException
+     *             if the bytes do not fit
+     */
+    final synchronized public void putRaw(final int offset,
+            final ByteBuffer src) throws IndexOutOfBoundsException
+    {
+        final int length = src.remaining();
+        if (offset < 0 || offset + length > this.data.capacity())
+        {
+            throw new IndexOutOfBoundsException("Cannot place " + length
+                    + " bytes at offset " + offset + " of " + this.type
+                    + " data with " + this.data.capacity() + " bytes");
+        }
+        this.data.clear();
+        this.data.position(offset);
+        this.data.put(src);
+    }
+
+    /**
+     * Replace the data in place
+     * <p>
+     * Used to update a value without allocating new {@link CIPData}, which is only possible when the type and size of the data remain the same.
+     *
+     * @param type
+     *            Type of the new data
+     * @param src
+     *            {@link ByteBuffer} from which the remaining bytes are copied
+     * @return <code>true</code> if data was replaced, <code>false</code> if type or size do not match
+     */
+    final synchronized public boolean update(final Type type,
+            final ByteBuffer src)
+    {
+        if (type != this.type || src.remaining() != this.data.capacity()
+                || this.data.isReadOnly())
+        {
+            return false;
+        }
+        this.data.clear();
+        this.data.put(src);
+        return true;
+    }
+
     /** @return size if bytes of the encoded data */
     final public int getEncodedSize()
     {
@@ -354,25 +982,54 @@ final public class CIPData
         {
             this.data.clear();
             final short struct_detail = this.data.getShort();
-            if (struct_detail != Type.STRUCT_STRING.code)
-            {
-                throw new Exception("Can only encode STRUCT_STRING, got 0x"
-                        + Integer.toHexString(struct_detail));
-            }
-            // The data buffer contains the string as _read_:
-            // STRUCT, STRUCT_STRING, length, chars.
+            // The data buffer contains the structure as _read_:
+            // STRUCT, structure handle (STRUCT_STRING), data (length, chars).
             // It needs to be written as
-            // STRUCT, STRUCT_STRING, _elements_, length, chars.
+            // STRUCT, structure handle, _elements_, data.
             buf.putShort(struct_detail);
             buf.putShort(this.elements);
-            // Copy length, chars from data into buf
+            // Copy data (length, chars) into buf
             buf.put(this.data);
         }
         else
         {
             buf.putShort(this.elements);
-            buf.put(this.data.array());
+            this.data.clear();
+            buf.put(this.data);
+        }
+    }
+
+    /**
+     * Encode a fragment of the CIP data into buffer
+     * <p>
+     * Places type, element count, byte offset and the selected data bytes into the buffer as used by Write Tag Fragmented.
+     *
+     * @param buf
+     *            {@link ByteBuffer} where data should be placed
+     * @param offset
+     *            Byte offset of the fragment within the data, see {@link #getDataSize()}
+     * @param length
+     *            Number of data bytes in the fragment
+     * @throws Exception
+     *             on error
+     */
+    final synchronized public void encodeFragment(final ByteBuffer buf,
+            final int offset, final int length) throws Exception
+    {
+        buf.putShort(this.type.code);
+        int start = offset;
+        if (this.type == Type.STRUCT)
+        {
+            buf.putShort(this.data.getShort(0));
+            start += 2;
         }
+        buf.putShort(this.elements);
+        buf.putInt(offset);
+        this.data.clear();
+        this.data.position(start);
+        this.data.limit(start + length);
+        buf.put(this.data);
+        this.data.clear();
     }
 
     /** @return String representation for debugging */
@@ -425,6 +1082,44 @@ final public class CIPData
             result.append(Arrays.toString(values));
             break;
         }
+        case USINT:
+        case UINT:
+        case UDINT:
+        case LINT:
+        {
+            final long[] values = new long[this.elements];
+            for (int i = 0; i < this.elements; ++i)
+            {
+                if (this.type == Type.USINT)
+                {
+                    values[i] = buf.get() & 0xFF;
+                }
+                else if (this.type == Type.UINT)
+                {
+                    values[i] = buf.getShort() & 0xFFFF;
+                }
+                else if (this.type == Type.UDINT)
+                {
+                    values[i] = buf.getInt() & 0xFFFFFFFFL;
+                }
+                else
+                {
+                    values[i] = buf.getLong();
+                }
+            }
+            result.append(Arrays.toString(values));
+            break;
+        }
+        case LREAL:
+        {
+            final double[] values = new double[this.elements];
+            for (int i = 0; i < this.elements; ++i)
+            {
+                values[i] = buf.getDouble();
+            }
+            result.append(Arrays.toString(values));
+            break;
+        }
         case STRUCT:
         {
             final short code = buf.getShort();
@@ -450,7 +1145,8 @@ final public class CIPData
             }
             else
             {
-                result.append("Structure element of type " + this.type);
+                result.append(String.format("Structure 0x%04X, %d bytes",
+                        code, buf.remaining()));
             }
             break;
         }
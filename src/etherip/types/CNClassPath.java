@@ -48,10 +48,17 @@ public class CNClassPath extends CNPath
         return this;
     }
 
+    /** @return <code>true</code> if instance requires a 16-bit segment */
+    private boolean isLargeInstance()
+    {
+        return this.instance > 0xFF;
+    }
+
     /** @return Path length in words */
     public byte getPathLength()
     {
-        return this.attr == 0 ? (byte) 2 : (byte) 3;
+        final int words = this.isLargeInstance() ? 3 : 2;
+        return this.attr == 0 ? (byte) words : (byte) (words + 1);
     }
 
     @Override
@@ -65,10 +72,31 @@ public class CNClassPath extends CNPath
     public void encode(final ByteBuffer buf, final StringBuilder log)
     {
         buf.put(this.getPathLength());
+        this.encodeSegments(buf);
+    }
+
+    /**
+     * Encode the class, instance and attribute segments without the path length
+     *
+     * @param buf
+     *            {@link ByteBuffer} where segments should be placed
+     */
+    void encodeSegments(final ByteBuffer buf)
+    {
         buf.put((byte) 0x20);
         buf.put((byte) this.class_code);
-        buf.put((byte) 0x24);
-        buf.put((byte) this.instance);
+        if (this.isLargeInstance())
+        {
+            buf.put((byte) 0x25);
+            buf.put((byte) 0);
+            buf.put((byte) this.instance);
+            buf.put((byte) (this.instance >> 8));
+        }
+        else
+        {
+            buf.put((byte) 0x24);
+            buf.put((byte) this.instance);
+        }
         if (this.attr > 0)
         {
             buf.put((byte) 0x30);
@@ -79,15 +107,19 @@ public class CNClassPath extends CNPath
     @Override
     public String toString()
     {
+        final String instance_segment = this.isLargeInstance() ? "0x25"
+                : "0x24";
         if (this.attr > 0)
         {
             return String.format(
-                    "Path (3 el) Class(0x20) 0x%X (%s), instance(0x24) %d, attrib.(0x30) 0x%X",
-                    this.class_code, this.class_name, this.instance, this.attr);
+                    "Path (3 el) Class(0x20) 0x%X (%s), instance(%s) %d, attrib.(0x30) 0x%X",
+                    this.class_code, this.class_name, instance_segment,
+                    this.instance, this.attr);
         }
         return String.format(
-                "Path (2 el) Class(0x20) 0x%X (%s), instance(0x24) %d",
-                this.class_code, this.class_name, this.instance);
+                "Path (2 el) Class(0x20) 0x%X (%s), instance(%s) %d",
+                this.class_code, this.class_name, instance_segment,
+                this.instance);
     }
 
     @Override
@@ -57,6 +57,36 @@ abstract public class CNPath implements Protocol
         return new CNClassPath(0x06, "ConnectionManager");
     }
 
+    /**
+     * Create path to Symbol object
+     *
+     * @return {@link CNClassPath}
+     */
+    public static CNClassPath SymbolObject()
+    {
+        return new CNClassPath(0x6B, "Symbol");
+    }
+
+    /**
+     * Create path to Template object
+     *
+     * @return {@link CNClassPath}
+     */
+    public static CNClassPath Template()
+    {
+        return new CNClassPath(0x6C, "Template");
+    }
+
+    /**
+     * Create path to the Logix object whose attributes change when tags or programs are edited
+     *
+     * @return {@link CNClassPath}
+     */
+    public static CNClassPath ControllerInfo()
+    {
+        return new CNClassPath(0xAC, "ControllerInfo");
+    }
+
     public static CNClassPath Port()
     {
         return new CNClassPath(0xf4, "Port");
@@ -81,6 +111,39 @@ abstract public class CNPath implements Protocol
      */
     public static CNPath Symbol(final String name)
     {
-        return new CNSymbolPath(name);
+        return CNSymbolPath.forName(name);
+    }
+
+    /**
+     * Create path that addresses a tag by its Symbol Object instance
+     *
+     * @param instance
+     *            Symbol Object instance of the tag
+     * @param name
+     *            Name of the tag, may include array index and members
+     * @return {@link CNPath}
+     */
+    public static CNPath SymbolInstance(final int instance, final String name)
+    {
+        return new CNSymbolInstancePath(null, instance, name);
+    }
+
+    /**
+     * Create path that addresses a program-scoped tag by its Symbol Object instance
+     * <p>
+     * With the program name as the tag name, the path addresses the Symbol Object instance within the program, as used to list the program's symbols.
+     *
+     * @param program
+     *            Program name "Program:..."
+     * @param instance
+     *            Symbol Object instance of the tag within the program
+     * @param name
+     *            Name of the tag "Program:...tag", may include array index and members
+     * @return {@link CNPath}
+     */
+    public static CNPath ProgramSymbolInstance(final String program,
+            final int instance, final String name)
+    {
+        return new CNSymbolInstancePath(program, instance, name);
     }
 }
@@ -11,6 +11,8 @@ package etherip.types;
  * CN Services
  * <p>
  * Spec 4, p.36
+ * <p>
+ * Services of different objects may share the same code, so {@link #forCode(int)} only returns the first matching service.
  *
  * @author Kay Kasemir, László Pataki
  */
@@ -18,21 +20,51 @@ package etherip.types;
 public enum CNService
 {
     Get_Attribute_All(0x01),
+    Get_Attribute_List(0x03),
     Get_Attribute_Single(0x0E), // Spec 6 p. 43
     CIP_MultiRequest(0x0A), // Logix5000 Data Access
     CIP_ReadData(0x4C), // Logix5000 Data Access
+    Template_Read(0x4C), // Logix5000 Data Access, Template Object, same code as CIP_ReadData
     CIP_WriteData(0x4D), // Logix5000 Data Access
+    CM_Forward_Close(0x4E), // CIP VOL1_3.3: 3-5.5.3
     CM_Unconnected_Send(0x52),
+    CIP_ReadDataFragmented(0x52), // Logix5000 Data Access, same code as CM_Unconnected_Send
+    CIP_WriteDataFragmented(0x53), // Logix5000 Data Access
+    CM_Forward_Open(0x54), // CIP VOL1_3.3: 3-5.5.2
+    Get_Instance_Attribute_List(0x55), // Logix5000 Data Access, Symbol Object
     Get_Connection_Data(0x56), // CIP VOL1_3.3: 3-5.5
+    CM_Large_Forward_Open(0x5B), // CIP VOL1_3.3: 3-5.5.2
     Get_Attribute_All_Reply(0x01 | 0x80),
+    Get_Attribute_List_Reply(0x03 | 0x80),
     Get_Attribute_Single_Reply(0x0E | 0x80),
     CIP_MultiRequest_Reply(0x0A | 0x80),
     CIP_ReadData_Reply(0x4C | 0x80),
+    Template_Read_Reply(0x4C | 0x80),
     CIP_WriteData_Reply(0x4D | 0x80),
-    CM_Unconnected_Send_Reply(0x52 | 0x80);
+    CM_Forward_Close_Reply(0x4E | 0x80),
+    CM_Unconnected_Send_Reply(0x52 | 0x80),
+    CIP_ReadDataFragmented_Reply(0x52 | 0x80),
+    CIP_WriteDataFragmented_Reply(0x53 | 0x80),
+    CM_Forward_Open_Reply(0x54 | 0x80),
+    Get_Instance_Attribute_List_Reply(0x55 | 0x80),
+    CM_Large_Forward_Open_Reply(0x5B | 0x80);
 
     final private byte code;
 
+    /** First service for each code */
+    final private static CNService[] services = new CNService[256];
+
+    static
+    {
+        for (final CNService service : values())
+        {
+            if (services[service.code & 0xFF] == null)
+            {
+                services[service.code & 0xFF] = service;
+            }
+        }
+    }
+
     private CNService(final int code)
     {
         this.code = (byte) code;
@@ -45,14 +77,7 @@ public enum CNService
      */
     public static CNService forCode(final int code)
     {
-        for (final CNService service : values())
-        {
-            if ((byte) code == service.code)
-            {
-                return service;
-            }
-        }
-        return null;
+        return services[code & 0xFF];
     }
 
     /** @return Code (ID) of service as used in protocol */
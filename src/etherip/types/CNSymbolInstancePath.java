@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.types;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Control Net Path for a tag addressed by its Symbol Object instance
+ * <p>
+ * Encodes the tag as class 0x6B and its instance, followed by any array index and member segments of the tag name. Program-scoped tags are prefixed with the symbol segment of
+ * their program. Compared to a {@link CNSymbolPath}, the device does not need to look up the tag
+ * by name, and the path is usually shorter.
+ * <p>
+ * Example (with suitable static import):
+ * <p>
+ * <code>CNPath path = SymbolInstance(0x1234, "my_tag[2].member")</code>
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CNSymbolInstancePath extends CNPath
+{
+    private final CNSymbolPath program;
+    private final CNClassPath symbol_class;
+    private final CNSymbolPath symbol;
+
+    /**
+     * Initialize
+     *
+     * @param program
+     *            Program name "Program:..." for a program-scoped tag, or <code>null</code>
+     * @param instance
+     *            Symbol Object instance of the tag
+     * @param tag
+     *            Tag name, may include array index and members. For a program-scoped tag, it starts with the program name.
+     */
+    protected CNSymbolInstancePath(final String program, final int instance,
+            final String tag)
+    {
+        this.program = program == null ? null
+                : CNSymbolPath.forName(program);
+        this.symbol_class = SymbolObject().instance(instance);
+        this.symbol = CNSymbolPath.forName(tag);
+    }
+
+    /** @return Number of leading path elements of the tag name that are replaced by the instance */
+    private int getSkip()
+    {
+        return this.program == null ? 1 : 2;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        int size = this.symbol_class.getRequestSize()
+                + this.symbol.getSegmentsSize(this.getSkip());
+        if (this.program != null)
+        {
+            size += this.program.getSegmentsSize(0);
+        }
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void encode(final ByteBuffer buf, final StringBuilder log)
+    {
+        buf.put((byte) (this.getRequestSize() / 2));
+        if (this.program != null)
+        {
+            this.program.encodeSegments(buf, 0);
+        }
+        this.symbol_class.encodeSegments(buf);
+        this.symbol.encodeSegments(buf, this.getSkip());
+    }
+
+    @Override
+    public String toString()
+    {
+        if (this.program != null)
+        {
+            return this.program + ", " + this.symbol_class + ", "
+                    + this.symbol;
+        }
+        return this.symbol_class + ", " + this.symbol;
+    }
+
+    @Override
+    public int getResponseSize(final ByteBuffer buf) throws Exception
+    {
+        return 0;
+    }
+
+    @Override
+    public void decode(final ByteBuffer buf, final int available,
+            final StringBuilder log) throws Exception
+    {
+        // Path is only used in requests
+    }
+}
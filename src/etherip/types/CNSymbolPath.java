@@ -9,7 +9,9 @@ package etherip.types;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,7 +20,9 @@ import java.util.regex.Pattern;
  * <p>
  * Example (with suitable static import):
  * <p>
- * <code>CNPath path = Symbol.name("my_tag")</code>
+ * <code>CNPath path = Symbol("my_tag")</code>
+ * <p>
+ * The path is parsed and encoded once when created. Since it is immutable, {@link CNPath#Symbol(String)} shares paths from a cache.
  *
  * @author Kay Kasemir
  */
@@ -28,17 +32,17 @@ public class CNSymbolPath extends CNPath
     /**
      * One element of a path
      * <p>
-     * Contains a string path and an optional array index
+     * Contains a string path and optional array indices, one per dimension
      */
-    class PathAndIndex
+    static class PathAndIndex
     {
         private final String path;
-        private final Integer index;
+        private final int[] indices;
 
-        public PathAndIndex(final String path, final Integer index)
+        public PathAndIndex(final String path, final int[] indices)
         {
             this.path = path;
-            this.index = index;
+            this.indices = indices;
         }
 
         public String getPath()
@@ -46,26 +50,88 @@ public class CNSymbolPath extends CNPath
             return this.path;
         }
 
-        public Integer getIndex()
+        /** @return Array indices, empty if element is not indexed */
+        public int[] getIndices()
         {
-            return this.index;
+            return this.indices;
         }
 
         @Override
         public String toString()
         {
-            if (this.index == null)
+            if (this.indices.length <= 0)
             {
                 return this.path;
             }
-            return this.path + "[" + this.index + "]";
+            final StringBuilder buf = new StringBuilder(this.path);
+            buf.append('[');
+            for (int i = 0; i < this.indices.length; ++i)
+            {
+                if (i > 0)
+                {
+                    buf.append(',');
+                }
+                buf.append(this.indices[i]);
+            }
+            return buf.append(']').toString();
         }
     };
 
-    private final Pattern PATTERN_BRACKETS = Pattern.compile("\\[(\\d+)\\]");
+    /** Array index "[3]" or multi-dimensional index "[3,7]" */
+    private static final Pattern PATTERN_BRACKETS = Pattern
+            .compile("\\[\\s*(\\d+(?:\\s*,\\s*\\d+)*)\\s*\\]");
+
+    /** Maximum number of paths kept in the cache */
+    public static final int CACHE_SIZE = 10000;
+
+    /** Cache of recently used paths, SYNC on access */
+    private static final Map<String, CNSymbolPath> cache = new LinkedHashMap<String, CNSymbolPath>(
+            16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, CNSymbolPath> eldest)
+        {
+            return this.size() > CACHE_SIZE;
+        }
+    };
 
     private final List<PathAndIndex> paths = new ArrayList<>();
 
+    /** Encoded segments, not including the path size */
+    private final byte[] segments;
+
+    /** Start of each path element's segments within {@link #segments} */
+    private final int[] element_start;
+
+    /** End of each path element's symbol segment, i.e. start of its index segment */
+    private final int[] name_end;
+
+    /**
+     * Obtain path for symbol
+     * <p>
+     * Paths are immutable, so recently used paths are cached and shared.
+     *
+     * @param symbol
+     *            Name of symbol
+     * @return {@link CNSymbolPath}
+     */
+    static CNSymbolPath forName(final String symbol)
+    {
+        synchronized (cache)
+        {
+            CNSymbolPath path = cache.get(symbol);
+            if (path == null)
+            {
+                path = new CNSymbolPath(symbol);
+                cache.put(symbol, path);
+            }
+            return path;
+        }
+    }
+
     /**
      * Initialize
      *
@@ -76,63 +142,191 @@ public class CNSymbolPath extends CNPath
     {
         for (final String s : symbol.split("\\."))
         {
-            final Matcher m = this.PATTERN_BRACKETS.matcher(s);
-            Integer index = null;
-            String path = s;
+            final Matcher m = PATTERN_BRACKETS.matcher(s);
+            final List<Integer> index = new ArrayList<>();
             while (m.find())
             {
-                final String match = m.group().replace("[", "").replace("]",
-                        "");
-                index = Integer.parseInt(match);
-                path = path.replace("[" + match + "]", "");
+                for (final String dim : m.group(1).split(","))
+                {
+                    index.add(Integer.parseInt(dim.trim()));
+                }
+            }
+            final String path = m.replaceAll("");
+            final int[] indices = new int[index.size()];
+            for (int i = 0; i < indices.length; ++i)
+            {
+                indices[i] = index.get(i);
+            }
+            this.paths.add(new PathAndIndex(path, indices));
+        }
+
+        // Pre-encode the segments
+        final int count = this.paths.size();
+        this.element_start = new int[count];
+        this.name_end = new int[count];
+        final ByteBuffer buf = ByteBuffer.allocate(this.computeSize());
+        for (int i = 0; i < count; ++i)
+        {
+            final PathAndIndex pi = this.paths.get(i);
+            this.element_start[i] = buf.position();
+            // spec 4 p.21: "ANSI extended symbol segment"
+            final byte[] chars = pi.getPath().getBytes();
+            buf.put((byte) 0x91);
+            buf.put((byte) chars.length);
+            buf.put(chars);
+            if (this.needPad(pi.getPath()))
+            {
+                buf.put((byte) 0);
+            }
+            this.name_end[i] = buf.position();
+            for (final int index : pi.getIndices())
+            {
+                encodeIndex(buf, index);
             }
-            this.paths.add(new PathAndIndex(path, index));
         }
+        this.segments = buf.array();
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public int getRequestSize()
+    /** @return Size of all segments in bytes */
+    private int computeSize()
     { // End of string is padded if length is odd
         int count = 0;
         for (final PathAndIndex s : this.paths)
         {
             count += 2 + s.getPath().length()
                     + (this.needPad(s.getPath()) ? 1 : 0);
-            if (s.getIndex() != null)
+            for (final int index : s.getIndices())
             {
-                count += 2;
+                count += getIndexSize(index);
             }
         }
         return count;
     }
 
+    /**
+     * @param index
+     *            Array index
+     * @return Size of the element segment for the index
+     */
+    private static int getIndexSize(final int index)
+    {
+        if (index <= 0xFF)
+        {
+            return 2;
+        }
+        if (index <= 0xFFFF)
+        {
+            return 4;
+        }
+        return 6;
+    }
+
+    /**
+     * Encode element segment for an array index
+     * <p>
+     * Spec 4, logical segment for member ID: 8-bit 0x28, padded 16-bit 0x29, padded 32-bit 0x2A
+     *
+     * @param buf
+     *            {@link ByteBuffer} where segment should be placed
+     * @param index
+     *            Array index
+     */
+    private static void encodeIndex(final ByteBuffer buf, final int index)
+    {
+        if (index <= 0xFF)
+        {
+            buf.put((byte) 0x28);
+            buf.put((byte) index);
+        }
+        else if (index <= 0xFFFF)
+        {
+            buf.put((byte) 0x29);
+            buf.put((byte) 0);
+            buf.put((byte) index);
+            buf.put((byte) (index >> 8));
+        }
+        else
+        {
+            buf.put((byte) 0x2A);
+            buf.put((byte) 0);
+            buf.put((byte) index);
+            buf.put((byte) (index >> 8));
+            buf.put((byte) (index >> 16));
+            buf.put((byte) (index >> 24));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestSize()
+    {
+        return this.segments.length;
+    }
+
+    /**
+     * @param skip
+     *            Number of leading path elements whose symbol segment is omitted. Their array index is still included.
+     * @return Size of the encoded segments in bytes
+     */
+    int getSegmentsSize(final int skip)
+    {
+        final int n = Math.min(skip, this.paths.size());
+        int count = 0;
+        for (int i = 0; i < n; ++i)
+        {
+            count += this.getElementEnd(i) - this.name_end[i];
+        }
+        if (n < this.paths.size())
+        {
+            count += this.segments.length - this.element_start[n];
+        }
+        return count;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void encode(final ByteBuffer buf, final StringBuilder log)
     {
-        // spec 4 p.21: "ANSI extended symbol segment"
-        buf.put((byte) (this.getRequestSize() / 2));
-        for (final PathAndIndex pi : this.paths)
+        buf.put((byte) (this.segments.length / 2));
+        buf.put(this.segments);
+    }
+
+    /**
+     * Encode the path segments without the path length
+     *
+     * @param buf
+     *            {@link ByteBuffer} where segments should be placed
+     * @param skip
+     *            Number of leading path elements whose symbol segment is omitted. Their array index is still included.
+     */
+    void encodeSegments(final ByteBuffer buf, final int skip)
+    {
+        final int n = Math.min(skip, this.paths.size());
+        for (int i = 0; i < n; ++i)
         {
-            final String s = pi.getPath();
-            buf.put((byte) 0x91);
-            buf.put((byte) s.length());
-            buf.put(s.getBytes());
-            if (this.needPad(s))
-            {
-                buf.put((byte) 0);
-            }
-            final Integer index = pi.getIndex();
-            if (index != null)
-            {
-                // Path Segment 28, from wireshark
-                buf.put((byte) 0x28);
-                buf.put(index.byteValue());
-            }
+            buf.put(this.segments, this.name_end[i],
+                    this.getElementEnd(i) - this.name_end[i]);
+        }
+        if (n < this.paths.size())
+        {
+            buf.put(this.segments, this.element_start[n],
+                    this.segments.length - this.element_start[n]);
         }
     }
 
+    /** @return End of the segments for path element i */
+    private int getElementEnd(final int i)
+    {
+        return i + 1 < this.element_start.length ? this.element_start[i + 1]
+                : this.segments.length;
+    }
+
+    /** @return Name of the first path element, i.e. the tag without member or index */
+    public String getBaseName()
+    {
+        return this.paths.get(0).getPath();
+    }
+
     /** @return Is path of odd length, requiring a pad byte? */
     private boolean needPad(final String s)
     {
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.types;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Template of a user-defined structure
+ * <p>
+ * Instance of the Template Object, class 0x6C. Describes the members of a structure by their type and byte offset.
+ *
+ * @see 1756-PM020: Template Object
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class Template
+{
+    /** Member type bit that marks a structure */
+    final public static int STRUCTURE = 0x8000;
+
+    /** Member of a structure */
+    public static class Member
+    {
+        private final String name;
+        private final short info;
+        private final short type;
+        private final int offset;
+
+        /**
+         * @param name
+         *            Member name
+         * @param info
+         *            Array size, or bit number for BOOL
+         * @param type
+         *            Member type
+         * @param offset
+         *            Byte offset within the structure
+         */
+        public Member(final String name, final short info, final short type,
+                final int offset)
+        {
+            this.name = name;
+            this.info = info;
+            this.type = type;
+            this.offset = offset;
+        }
+
+        /** @return Member name */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /** @return Member type: Type code or template instance, structure and array bits */
+        public short getType()
+        {
+            return this.type;
+        }
+
+        /** @return <code>true</code> for a structure */
+        public boolean isStructure()
+        {
+            return (this.type & STRUCTURE) != 0;
+        }
+
+        /** @return <code>true</code> for an array */
+        public boolean isArray()
+        {
+            return (this.type & 0x6000) != 0;
+        }
+
+        /** @return Atomic type code, or template instance for a structure */
+        public int getTypeCode()
+        {
+            return this.isStructure() ? this.type & 0x0FFF
+                    : this.type & 0x00FF;
+        }
+
+        /** @return Number of array elements, 1 for a scalar */
+        public int getElementCount()
+        {
+            return this.isArray() ? this.info & 0xFFFF : 1;
+        }
+
+        /** @return Bit number of a BOOL member */
+        public int getBit()
+        {
+            return this.info;
+        }
+
+        /** @return Byte offset within the structure */
+        public int getOffset()
+        {
+            return this.offset;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (type 0x%04X, info %d, offset %d)",
+                    this.name, this.type, this.info, this.offset);
+        }
+    }
+
+    /** Size of the structure data by structure handle */
+    final private static Map<Short, Integer> sizes = new ConcurrentHashMap<>();
+
+    static
+    {
+        // Predefined STRING: DINT length, 82 characters, padding
+        sizes.put((short) 0x0FCE, 88);
+    }
+
+    private final int instance;
+    private final String name;
+    private final short handle;
+    private final int size;
+    private final List<Member> members;
+
+    /**
+     * @param instance
+     *            Template Object instance
+     * @param name
+     *            Name of the structure
+     * @param handle
+     *            Structure handle, used as structure detail in the data of the structure
+     * @param size
+     *            Size of the structure data in bytes
+     * @param members
+     *            Members
+     */
+    public Template(final int instance, final String name, final short handle,
+            final int size, final List<Member> members)
+    {
+        this.instance = instance;
+        this.name = name;
+        this.handle = handle;
+        this.size = size;
+        this.members = Collections.unmodifiableList(members);
+        if (handle != 0 && size > 0)
+        {
+            sizes.put(handle, size);
+        }
+    }
+
+    /**
+     * Get size of a structure by its handle
+     * <p>
+     * The structure handle is a checksum of the structure definition, so structures with the same handle have the same size. Known are the predefined STRING and the structures of all templates
+     * that have been created, for example by reading them from a device.
+     *
+     * @param handle
+     *            Structure handle
+     * @return Size of the structure data in bytes, 0 if not known
+     */
+    public static int getStructureSize(final short handle)
+    {
+        final Integer size = sizes.get(handle);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Decode template definition as obtained by the Read Template service
+     *
+     * @param instance
+     *            Template Object instance
+     * @param handle
+     *            Structure handle
+     * @param member_count
+     *            Number of members
+     * @param size
+     *            Size of the structure data in bytes
+     * @param definition
+     *            Definition, read from position to limit
+     * @return {@link Template}
+     * @throws Exception
+     *             on error
+     */
+    public static Template decode(final int instance, final short handle,
+            final int member_count, final int size, final ByteBuffer definition)
+            throws Exception
+    {
+        final short[] info = new short[member_count];
+        final short[] type = new short[member_count];
+        final int[] offset = new int[member_count];
+        for (int i = 0; i < member_count; ++i)
+        {
+            info[i] = definition.getShort();
+            type[i] = definition.getShort();
+            offset[i] = definition.getInt();
+        }
+        // Name of the template is followed by ';' and encoding details
+        String name = readString(definition);
+        final int sep = name.indexOf(';');
+        if (sep >= 0)
+        {
+            name = name.substring(0, sep);
+        }
+        final List<Member> members = new ArrayList<>(member_count);
+        for (int i = 0; i < member_count; ++i)
+        {
+            members.add(new Member(readString(definition), info[i], type[i],
+                    offset[i]));
+        }
+        return new Template(instance, name, handle, size, members);
+    }
+
+    /** @return Next '\0'-terminated string */
+    private static String readString(final ByteBuffer buf) throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        while (buf.hasRemaining())
+        {
+            final byte c = buf.get();
+            if (c == 0)
+            {
+                return text.toString();
+            }
+            text.append((char) c);
+        }
+        if (text.length() > 0)
+        {
+            return text.toString();
+        }
+        throw new Exception("Missing name in template definition");
+    }
+
+    /** @return Template Object instance */
+    public int getInstance()
+    {
+        return this.instance;
+    }
+
+    /** @return Name of the structure */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /** @return Structure handle */
+    public short getHandle()
+    {
+        return this.handle;
+    }
+
+    /** @return Size of the structure data in bytes */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /** @return Members */
+    public List<Member> getMembers()
+    {
+        return this.members;
+    }
+
+    /**
+     * @param name
+     *            Member name
+     * @return {@link Member}
+     * @throws IllegalArgumentException
+     *             if member is not known
+     */
+    public Member getMember(final String name)
+    {
+        for (final Member member : this.members)
+        {
+            if (member.getName().equalsIgnoreCase(name))
+            {
+                return member;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Structure " + this.name + " has no member '" + name + "'");
+    }
+
+    /**
+     * Determine size of a member
+     * <p>
+     * Atomic members have the size of their type. The size of a structure member is inferred from the offset of the next member.
+     *
+     * @param member
+     *            {@link Member} of this template
+     * @return Size of the member data in bytes
+     * @throws Exception
+     *             for unknown member types
+     */
+    public int getMemberSize(final Member member) throws Exception
+    {
+        if (!member.isStructure())
+        {
+            final CIPData.Type type = CIPData.Type
+                    .forCode((short) member.getTypeCode());
+            if (type.getElementSize() <= 0)
+            {
+                throw new Exception("Member " + member.getName()
+                        + " has unknown type " + member.getTypeCode());
+            }
+            return type.getElementSize() * member.getElementCount();
+        }
+        int end = this.size;
+        for (final Member other : this.members)
+        {
+            if (other.getOffset() > member.getOffset()
+                    && other.getOffset() < end)
+            {
+                end = other.getOffset();
+            }
+        }
+        return end - member.getOffset();
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buf = new StringBuilder();
+        buf.append(String.format("Template %s (instance 0x%X, handle 0x%04X, %d bytes)",
+                this.name, this.instance, this.handle, this.size));
+        for (final Member member : this.members)
+        {
+            buf.append("\n  ").append(member);
+        }
+        return buf.toString();
+    }
+}
@@ -274,4 +274,34 @@ public class EtherIPDemo
             }
         }
     }
+
+    @Test
+    public void testConnectedMultiRead() throws Exception
+    {
+        try
+        (
+            EtherNetIP plc = new EtherNetIP(TestSettings.get("plc"),
+                                            TestSettings.getInt("slot"));
+        )
+        {
+            plc.connectTcp();
+            plc.forwardOpen();
+
+            System.out.println("\n*\n* Connected multi read:\n*\n");
+            final String[] tags = new String[] { TestSettings.get("float_tag"),
+                    TestSettings.get("bool_tag"),
+                    TestSettings.get("int_tag"),
+                    TestSettings.get("string_tag") };
+            final CIPData[] results = plc.readTags(tags);
+            assertThat(results, not(nullValue()));
+            assertThat(results.length, equalTo(tags.length));
+
+            for (int i = 0; i < results.length; ++i)
+            {
+                System.out.println(tags[i] + " = " + results[i]);
+            }
+
+            plc.forwardClose();
+        }
+    }
 }
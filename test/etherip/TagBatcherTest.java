@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import etherip.data.CipException;
+import etherip.protocol.CIPMultiRequestProtocol;
+import etherip.protocol.Connection;
+import etherip.protocol.FakeConnection;
+import etherip.protocol.MRChipReadProtocol;
+import etherip.protocol.MessageRouterProtocol;
+
+/**
+ * JUnit test of the {@link TagBatcher}
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TagBatcherTest
+{
+    /** Connection that answers reads of "tagN" with DINT N, reports an error for a "bad" tag */
+    private static class BatchConnection extends FakeConnection
+    {
+        final static Pattern TAG = Pattern.compile("tag([0-9]+)");
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        /** Error for every multi-request, simulating network trouble */
+        volatile Exception network_error = null;
+
+        BatchConnection() throws Exception
+        {
+            super();
+        }
+
+        /** Add canned reply for the tag of the service */
+        private static void reply(final MessageRouterProtocol service, final ByteBuffer response) throws Exception
+        {
+            final ByteBuffer buf = ByteBuffer.allocate(service.getRequestSize());
+            buf.order(Connection.BYTE_ORDER);
+            service.encode(buf, null);
+            final byte reply = (byte) (buf.get(0) | 0x80);
+            final String request = new String(buf.array(), StandardCharsets.ISO_8859_1);
+            if (request.contains("bad"))
+            {
+                // Path destination unknown
+                response.put(new byte[] { reply, 0, 0x05, 0 });
+                return;
+            }
+            response.put(new byte[] { reply, 0, 0, 0 });
+            if (service instanceof MRChipReadProtocol)
+            {
+                final Matcher matcher = TAG.matcher(request);
+                assertTrue(matcher.find());
+                response.put(new byte[] { (byte) 0xC4, 0 });
+                response.putInt(Integer.parseInt(matcher.group(1)));
+            }
+        }
+
+        @Override
+        public int executeMultiRequest(final MessageRouterProtocol[] services,
+                                       final int[] response_sizes) throws Exception
+        {
+            this.batches.incrementAndGet();
+            this.requests.addAndGet(services.length);
+            if (this.network_error != null)
+                throw this.network_error;
+
+            // Multi-request reply: Count, offsets, replies
+            final ByteBuffer response = ByteBuffer.allocate(1000);
+            response.order(Connection.BYTE_ORDER);
+            response.putShort((short) services.length);
+            response.position(2 + 2 * services.length);
+            for (int i=0; i<services.length; ++i)
+            {
+                response.putShort(2 + 2 * i, (short) response.position());
+                reply(services[i], response);
+            }
+            response.flip();
+            new CIPMultiRequestProtocol(services).decode(response, response.remaining(), null);
+            return 1;
+        }
+    }
+
+    /** Read tags in concurrent threads
+     *  @return Value or error for each tag
+     */
+    private static Object[] readConcurrently(final TagBatcher batcher, final String... tags) throws Exception
+    {
+        final Object[] results = new Object[tags.length];
+        final List<Thread> callers = new ArrayList<>();
+        for (int i=0; i<tags.length; ++i)
+        {
+            final int index = i;
+            final Thread caller = new Thread(() ->
+            {
+                try
+                {
+                    results[index] = batcher.read(tags[index]).getNumber(0);
+                }
+                catch (final Exception ex)
+                {
+                    results[index] = ex;
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        for (final Thread caller : callers)
+            caller.join();
+        return results;
+    }
+
+    @Test
+    public void testBatching() throws Exception
+    {
+        final BatchConnection connection = new BatchConnection();
+        final TagBatcher batcher = new TagBatcher(connection, 200, 10);
+
+        // 10 concurrent reads trigger one batch long before the window passes
+        final long start = System.currentTimeMillis();
+        final String[] tags = new String[10];
+        for (int i=0; i<tags.length; ++i)
+            tags[i] = "tag" + i;
+        final Object[] results = readConcurrently(batcher, tags);
+        final long ms = System.currentTimeMillis() - start;
+        System.out.println(connection.requests.get() + " reads in " + connection.batches.get() + " batches, " + ms + " ms");
+
+        // Each caller received the value of its tag
+        for (int i=0; i<tags.length; ++i)
+            assertThat(results[i], equalTo((Object) Integer.valueOf(i)));
+        assertThat(connection.requests.get(), equalTo(10));
+        assertTrue(connection.batches.get() < 10);
+
+        // Single read waits for the window, then runs by itself
+        assertThat(batcher.read("tag42").getNumber(0), equalTo((Number) Integer.valueOf(42)));
+        assertThat(connection.requests.get(), equalTo(11));
+    }
+
+    @Test(timeout = 10000)
+    public void testBadTag() throws Exception
+    {
+        final BatchConnection connection = new BatchConnection();
+        final TagBatcher batcher = new TagBatcher(connection, 500, 5);
+
+        // Device reports error for one request, the others still get their values
+        final Object[] results = readConcurrently(batcher, "tag1", "tag2", "bad", "tag3", "tag4");
+        System.out.println(connection.requests.get() + " reads in " + connection.batches.get() + " batches");
+        assertThat(results[0], equalTo((Object) Integer.valueOf(1)));
+        assertThat(results[1], equalTo((Object) Integer.valueOf(2)));
+        assertThat(results[2], instanceOf(CipException.class));
+        assertThat(((CipException) results[2]).getStatusCode(), equalTo(0x05));
+        assertThat(results[3], equalTo((Object) Integer.valueOf(3)));
+        assertThat(results[4], equalTo((Object) Integer.valueOf(4)));
+        // Requests are not repeated
+        assertThat(connection.requests.get(), equalTo(5));
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidTagName() throws Exception
+    {
+        final BatchConnection connection = new BatchConnection();
+        final TagBatcher batcher = new TagBatcher(connection, 500, 3);
+
+        // No request can be created for one tag, the others are still handled
+        final Object[] results = readConcurrently(batcher, "tag1", "x[99999999999]", "tag2");
+        assertThat(results[0], equalTo((Object) Integer.valueOf(1)));
+        assertThat(results[1], instanceOf(NumberFormatException.class));
+        assertThat(results[2], equalTo((Object) Integer.valueOf(2)));
+        assertThat(connection.requests.get(), equalTo(2));
+    }
+
+    @Test
+    public void testNetworkError() throws Exception
+    {
+        final BatchConnection connection = new BatchConnection();
+        connection.network_error = new TimeoutException("Timeout");
+        final TagBatcher batcher = new TagBatcher(connection, 500, 3);
+
+        // Network error is reported to all callers, requests are not repeated
+        final Object[] results = readConcurrently(batcher, "tag1", "tag2", "tag3");
+        assertThat(connection.batches.get(), equalTo(1));
+        assertThat(connection.requests.get(), equalTo(3));
+        for (final Object result : results)
+            assertThat(result, sameInstance((Object) connection.network_error));
+
+        // Batcher remains usable
+        connection.network_error = null;
+        assertThat(batcher.read("tag7").getNumber(0), equalTo((Number) Integer.valueOf(7)));
+    }
+}
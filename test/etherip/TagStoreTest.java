@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import etherip.protocol.Connection;
+import etherip.protocol.Encapsulation;
+import etherip.protocol.FakeConnection;
+import etherip.protocol.MessageRouterProtocol;
+import etherip.types.CIPData;
+import etherip.types.CIPData.Type;
+
+/**
+ * JUnit test of the {@link TagStore}
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TagStoreTest
+{
+    /** Connection that counts created and executed requests */
+    private static class CountingConnection extends FakeConnection
+    {
+        int created = 0;
+        int executed = 0;
+
+        CountingConnection() throws Exception
+        {
+            super();
+        }
+
+        @Override
+        public Encapsulation[] createMultiRequest(final MessageRouterProtocol[] services,
+                                                  final int[] response_sizes)
+        {
+            ++this.created;
+            return super.createMultiRequest(services, response_sizes);
+        }
+
+        @Override
+        public void execute(final Encapsulation... requests) throws Exception
+        {
+            this.executed += requests.length;
+        }
+    }
+
+    /** @return Canned read response data: Type code, then the data */
+    private static ByteBuffer response(final int type_code, final byte... data)
+    {
+        final ByteBuffer buf = ByteBuffer.allocate(2 + data.length);
+        buf.order(Connection.BYTE_ORDER);
+        buf.putShort((short) type_code);
+        buf.put(data);
+        buf.flip();
+        return buf;
+    }
+
+    /** Decode canned response for a tag */
+    private static void decode(final TagStore store, final int handle, final ByteBuffer response) throws Exception
+    {
+        store.new Reader(handle).decode(response, response.remaining(), null);
+    }
+
+    @Test
+    public void testAlignment() throws Exception
+    {
+        // SINT at 0, DINT at 4, INT[3] at 8..13, LREAL at 16..23
+        final TagStore store = new TagStore(24);
+        final int sint = store.add("sint", Type.SINT);
+        final int dint = store.add("dint", Type.DINT);
+        final int ints = store.add("ints", Type.INT, 3);
+        final int lreal = store.add("lreal", Type.LREAL);
+        assertThat(store.size(), equalTo(4));
+        assertThat(store.getHandle("ints"), equalTo(ints));
+
+        // Store is full
+        try
+        {
+            store.add("more", Type.SINT);
+            fail("Added to full store");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("full"));
+        }
+        // Duplicate
+        try
+        {
+            store.add("sint", Type.SINT);
+            fail("Added duplicate");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("already"));
+        }
+
+        // Values don't overlap
+        decode(store, sint, response(0xC2 /* SINT */, (byte) -1));
+        decode(store, dint, response(0xC4 /* DINT */, (byte) 0x78, (byte) 0x56, (byte) 0x34, (byte) 0x12));
+        decode(store, ints, response(0xC3 /* INT */, (byte) 1, (byte) 0, (byte) 2, (byte) 0, (byte) 3, (byte) 0));
+        final ByteBuffer lreal_data = ByteBuffer.allocate(8);
+        lreal_data.order(Connection.BYTE_ORDER);
+        lreal_data.putDouble(3.14);
+        decode(store, lreal, response(0xCB /* LREAL */, lreal_data.array()));
+
+        assertThat(store.getInt(sint, 0), equalTo(-1));
+        assertThat(store.getInt(dint, 0), equalTo(0x12345678));
+        assertThat(store.getInt(ints, 0), equalTo(1));
+        assertThat(store.getInt(ints, 2), equalTo(3));
+        assertThat(store.getDouble(lreal, 0), equalTo(3.14));
+        final float[] floats = new float[5];
+        assertThat(store.getFloats(ints, floats), equalTo(3));
+        assertThat(floats[1], equalTo(2.0f));
+    }
+
+    @Test
+    public void testMismatch() throws Exception
+    {
+        final TagStore store = new TagStore(100);
+        final int ints = store.add("ints", Type.INT, 3);
+
+        // Wrong type
+        try
+        {
+            decode(store, ints, response(0xC4 /* DINT */, new byte[6]));
+            fail("Accepted wrong type");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("instead of 3 INT"));
+        }
+        // Wrong size
+        try
+        {
+            decode(store, ints, response(0xC3 /* INT */, new byte[4]));
+            fail("Accepted wrong size");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("returned 4 bytes"));
+        }
+        assertThat(store.isValid(ints), equalTo(false));
+
+        // Not numeric
+        try
+        {
+            store.add("text", Type.STRUCT);
+            fail("Accepted STRUCT");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("not handled"));
+        }
+    }
+
+    @Test
+    public void testValue() throws Exception
+    {
+        final TagStore store = new TagStore(100);
+        final int real = store.add("real", Type.REAL);
+        assertThat(store.isValid(real), equalTo(false));
+        assertThat(store.getValue(real), nullValue());
+
+        final ByteBuffer data = ByteBuffer.allocate(4);
+        data.order(Connection.BYTE_ORDER);
+        data.putFloat(2.5f);
+        decode(store, real, response(0xCA /* REAL */, data.array()));
+
+        assertThat(store.isValid(real), equalTo(true));
+        final CIPData value = store.getValue(real);
+        assertThat(value.getType(), equalTo(Type.REAL));
+        assertThat(value.getNumber(0), equalTo((Number) Float.valueOf(2.5f)));
+    }
+
+    @Test
+    public void testGrowth() throws Exception
+    {
+        final TagStore store = new TagStore(1000);
+        for (int i=0; i<100; ++i)
+            assertThat(store.add("tag" + i, Type.DINT), equalTo(i));
+        assertThat(store.size(), equalTo(100));
+        assertThat(store.getName(99), equalTo("tag99"));
+        assertThat(store.getType(50), equalTo(Type.DINT));
+        assertThat(store.getHandle("tag17"), equalTo(17));
+        try
+        {
+            store.getName(100);
+            fail("Accepted invalid handle");
+        }
+        catch (final IndexOutOfBoundsException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCachedRequests() throws Exception
+    {
+        final TagStore store = new TagStore(1000);
+        store.add("a", Type.DINT);
+        store.add("b", Type.REAL, 10);
+        final CountingConnection connection = new CountingConnection();
+
+        // First process creates requests, then they are re-used
+        store.process(connection);
+        store.process(connection);
+        store.process(connection);
+        assertThat(connection.created, equalTo(1));
+        assertThat(connection.executed, equalTo(3));
+
+        // Added tag requires new requests
+        store.add("c", Type.INT);
+        store.process(connection);
+        assertThat(connection.created, equalTo(2));
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import etherip.protocol.Connection;
+import etherip.types.CIPData;
+
+/**
+ * JUnit test of the {@link Tag} value when updating in place
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TagTest
+{
+    /** Update value of tag in place, like the {@link TagList} */
+    private static void update(final Tag tag, final int number) throws Exception
+    {
+        CIPData value = tag.getSpare();
+        final ByteBuffer raw = ByteBuffer.allocate(4);
+        raw.order(Connection.BYTE_ORDER);
+        raw.putInt(number);
+        raw.flip();
+        if (value == null  ||  ! value.update(CIPData.Type.DINT, raw))
+            value = new CIPData(CIPData.Type.DINT, raw.array());
+        tag.updateValue(value);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception
+    {
+        final Tag tag = new Tag("test");
+        assertThat(tag.getValueSnapshot(), nullValue());
+
+        update(tag, 1);
+        final CIPData value = tag.getValue();
+        final CIPData snapshot = tag.getValueSnapshot();
+        update(tag, 2);
+        update(tag, 3);
+
+        // Value was recycled, snapshot remains
+        assertThat(tag.getValue(), sameInstance(value));
+        assertThat(value.getNumber(0), equalTo((Number) Integer.valueOf(3)));
+        assertThat(snapshot.getNumber(0), equalTo((Number) Integer.valueOf(1)));
+        assertThat(tag.getValueSnapshot().getNumber(0), equalTo((Number) Integer.valueOf(3)));
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * JUnit test of {@link Connection} buffer sizes and message size limit
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class BufferSizeTest
+{
+    @Test
+    public void testBufferSizes() throws Exception
+    {
+        final Connection connection = new FakeConnection();
+
+        // Default buffers allow the largest unconnected message
+        assertThat(connection.getSendBufferSize(), equalTo(Connection.DEFAULT_BUFFER_SIZE));
+        assertThat(connection.getReceiveBufferSize(), equalTo(Connection.DEFAULT_BUFFER_SIZE));
+        assertThat(connection.getMaxMessageSize(), equalTo(UnconnectedSendProtocol.MAX_MESSAGE_SIZE));
+
+        // Large Forward_Open enlarges both buffers to the connection size plus headers
+        connection.setConnected(new ForwardOpenProtocol(0, ForwardOpenProtocol.LARGE_CONNECTION_SIZE));
+        assertThat(connection.getSendBufferSize(), equalTo(24 + 20 + 4002));
+        assertThat(connection.getReceiveBufferSize(), equalTo(24 + 20 + 4002));
+        // Connection size minus sequence count
+        assertThat(connection.getMaxMessageSize(), equalTo(4002 - 2));
+
+        // Small send buffer limits unconnected messages
+        connection.setConnected(null);
+        connection.setBufferSizes(300, 2000);
+        assertThat(connection.getSendBufferSize(), equalTo(300));
+        assertThat(connection.getReceiveBufferSize(), equalTo(2000));
+        assertThat(connection.getMaxMessageSize(), equalTo(300 - 24 - 16 - 15));
+
+        // Forward_Open only enlarges the buffer that is too small
+        connection.setConnected(new ForwardOpenProtocol(0, 1000));
+        assertThat(connection.getSendBufferSize(), equalTo(24 + 20 + 1000));
+        assertThat(connection.getReceiveBufferSize(), equalTo(2000));
+        assertThat(connection.getMaxMessageSize(), equalTo(1000 - 2));
+
+        // Buffers must hold at least the headers
+        try
+        {
+            connection.setBufferSizes(10, 600);
+            fail("Accepted tiny buffer");
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            System.out.println("Expected: " + ex.getMessage());
+        }
+    }
+}
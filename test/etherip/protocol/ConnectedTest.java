@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static etherip.types.CNPath.ConnectionManager;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import etherip.TestSettings;
+import etherip.types.CIPData;
+import etherip.util.Hexdump;
+
+/** @author Kay Kasemir */
+@SuppressWarnings("nls")
+public class ConnectedTest
+{
+    private final ByteBuffer buf = TestSettings.getBuffer();
+
+    @Before
+    public void setup()
+    {
+        TestSettings.logAll();
+    }
+
+    @Test
+    public void testForwardOpen() throws Exception
+    {
+        final ForwardOpenProtocol forward_open = new ForwardOpenProtocol(0, 504);
+        final MessageRouterProtocol pdu = new MessageRouterProtocol(
+                forward_open.getService(), ConnectionManager(), forward_open);
+        assertThat(pdu.getRequestSize(), equalTo(6 + 42));
+
+        final StringBuilder log = new StringBuilder();
+        pdu.encode(this.buf, log);
+        System.out.println(log.toString());
+        assertThat(this.buf.position(), equalTo(pdu.getRequestSize()));
+        this.buf.flip();
+        System.out.println(Hexdump.toHexdump(this.buf));
+        // Service, path to connection manager
+        assertThat(this.buf.get(0), equalTo((byte) 0x54));
+        // Network connection parameters: Point-to-point, variable, 504 bytes
+        assertThat(this.buf.getShort(6 + 26), equalTo((short) 0x43F8));
+        // Transport class 3, path to message router in slot 0
+        final byte[] path = new byte[8];
+        this.buf.position(6 + 34);
+        this.buf.get(path);
+        assertThat(Hexdump.toCompactHexdump(ByteBuffer.wrap(path)),
+                equalTo("0000 - A3 03 01 00 20 02 24 01 - .... .$."));
+
+        final ForwardOpenProtocol large = new ForwardOpenProtocol(0, 4002);
+        assertThat(large.getService(), equalTo(etherip.types.CNService.CM_Large_Forward_Open));
+        assertThat(large.getRequestSize(), equalTo(46));
+    }
+
+    @Test
+    public void testSendUnitData() throws Exception
+    {
+        final MRChipReadProtocol read = new MRChipReadProtocol("kay_ai");
+        final SendUnitDataProtocol unit_data = new SendUnitDataProtocol(
+                0x12345678, (short) 1, read);
+
+        StringBuilder log = new StringBuilder();
+        unit_data.encode(this.buf, log);
+        System.out.println(log.toString());
+        this.buf.flip();
+        assertThat(this.buf.remaining(), equalTo(unit_data.getRequestSize()));
+        final String dump = Hexdump.toHexdump(this.buf);
+        System.out.println(dump);
+        assertThat(dump, equalTo(
+                "0000 - 00 00 00 00 00 00 02 00 A1 00 04 00 78 56 34 12 - ............xV4.\n"
+                        + "0010 - B1 00 0E 00 01 00 4C 04 91 06 6B 61 79 5F 61 69 - ......L...kay_ai\n"
+                        + "0020 - 01 00                                           - ..              \n"));
+
+        // Fake response
+        this.buf.clear();
+        this.buf.put(new byte[] { 0, 0, 0, 0, 0, 0, 2, 0,
+                (byte) 0xA1, 0, 4, 0, 1, 2, 3, 4,
+                (byte) 0xB1, 0, 12, 0, 1, 0,
+                (byte) 0xCC, 0, 0, 0, (byte) 0xCA, 0, (byte) 0xF9, (byte) 0x0F, (byte) 0x49, (byte) 0x40 });
+        this.buf.flip();
+        log = new StringBuilder();
+        unit_data.decode(this.buf, this.buf.remaining(), log);
+        System.out.println(log.toString());
+        assertThat(read.getData().getType(), equalTo(CIPData.Type.REAL));
+        assertThat(read.getData().getNumber(0).toString(), equalTo("3.1416"));
+    }
+
+    @Test
+    public void testResend() throws Exception
+    {
+        final MRChipReadProtocol read = new MRChipReadProtocol("kay_ai");
+        final Encapsulation request = new Encapsulation(
+                Encapsulation.Command.SendUnitData, 0x11,
+                new SendUnitDataProtocol(0x12345678, (short) 1, read));
+        request.setReusable();
+
+        // First encode creates the image..
+        request.encode(this.buf, null);
+        this.buf.flip();
+        final String first = Hexdump.toHexdump(this.buf);
+        final long first_transaction = request.getTransaction();
+
+        // .. which is then re-used with updated header fields
+        request.renew(0x22, (short) 2);
+        this.buf.clear();
+        request.encode(this.buf, null);
+        assertThat(this.buf.position(), equalTo(request.getRequestSize()));
+        this.buf.flip();
+        assertThat(this.buf.getInt(4), equalTo(0x22));
+        assertThat(Encapsulation.getTransaction(this.buf), equalTo(request.getTransaction()));
+        assertThat(this.buf.getShort(24 + 20), equalTo((short) 2));
+
+        // Apart from session, context and sequence, the request is the same
+        this.buf.putInt(4, 0x11);
+        this.buf.putShort(24 + 20, (short) 1);
+        this.buf.position(12);
+        Transaction.format(first_transaction, this.buf);
+        this.buf.position(0);
+        assertThat(Hexdump.toHexdump(this.buf), equalTo(first));
+    }
+}
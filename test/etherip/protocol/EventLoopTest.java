@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import etherip.AsyncEtherNetIP;
+import etherip.TestSettings;
+import etherip.types.CIPData;
+
+/**
+ * JUnit test of the {@link EventLoop} and {@link AsyncEtherNetIP}, using a fake device on localhost
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class EventLoopTest
+{
+    /** Fake device: Answers the first RegisterSession, then stays quiet */
+    private static void fakeDevice(final ServerSocket server)
+    {
+        try (Socket client = server.accept())
+        {
+            final DataInputStream in = new DataInputStream(client.getInputStream());
+            final OutputStream out = client.getOutputStream();
+            final byte[] request = new byte[28];
+            in.readFully(request);
+
+            // Response with wrong context must be skipped
+            final byte[] response = request.clone();
+            response[4] = 0x34;
+            response[5] = 0x12;
+            response[12] = 'X';
+            out.write(response);
+            // Actual response
+            response[12] = request[12];
+            out.write(response);
+            out.flush();
+
+            // Read the next request, but don't reply
+            in.readFully(request);
+            Thread.sleep(5000);
+        }
+        catch (final Exception ex)
+        {
+            // Test ended
+        }
+    }
+
+    @Test
+    public void testEventLoop() throws Exception
+    {
+        TestSettings.logAll();
+        try (final ServerSocket server = new ServerSocket(0xAF12, 1, InetAddress.getLoopbackAddress());
+             final EventLoop loop = new EventLoop("Test Loop"))
+        {
+            final Thread device = new Thread(() -> fakeDevice(server));
+            device.start();
+
+            final EventLoopConnection connection = loop.connectTcp("127.0.0.1", 0);
+
+            // Blocking call
+            final RegisterSession register = new RegisterSession();
+            connection.execute(register);
+            assertThat(register.getSession(), equalTo(0x1234));
+
+            // Callback
+            final CompletableFuture<Exception> result = new CompletableFuture<>();
+            connection.submit(new RegisterSession(), error -> result.complete(error));
+            final Exception error = result.get(5, TimeUnit.SECONDS);
+            System.out.println("Expected error: " + error.getMessage());
+            assertThat(error.getMessage(), containsString("Timeout"));
+
+            connection.close();
+            try
+            {
+                connection.execute(new RegisterSession());
+                fail("Closed connection handled request");
+            }
+            catch (final Exception ex)
+            {
+                assertThat(ex.getMessage(), containsString("closed"));
+            }
+            device.interrupt();
+        }
+    }
+
+    @Test
+    public void testClosedLoop() throws Exception
+    {
+        final EventLoop loop = new EventLoop("Test Loop");
+        loop.close();
+        try
+        {
+            loop.connectTcp("127.0.0.1", 0);
+            fail("Closed event loop accepted connection");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("Event loop closed"));
+        }
+    }
+
+    /** Send response to a read request: REAL 3.14 */
+    private static void replyRead(final OutputStream out, final byte[] header) throws Exception
+    {
+        final ByteBuffer response = ByteBuffer.allocate(24 + 16 + 10);
+        response.order(Connection.BYTE_ORDER);
+        response.put(header);
+        response.putShort(2, (short) 26);
+        // RR Data: Interface, timeout, UCMM and unconnected message items
+        response.putInt(0).putShort((short) 0).putShort((short) 2);
+        response.putShort((short) 0).putShort((short) 0);
+        response.putShort((short) 0xB2).putShort((short) 10);
+        // Read response: REAL 3.14
+        response.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xCA, 0 });
+        response.putFloat(3.14f);
+        out.write(response.array());
+        out.flush();
+    }
+
+    /** Fake device: Answers RegisterSession, then reads of a REAL tag until the session is un-registered.
+     *  Holds the response to the second read until released.
+     *  @param server Server socket
+     *  @param release Released when the second read may be answered
+     *  @param requests Receives the requests as text
+     */
+    private static void fakeReadDevice(final ServerSocket server, final CountDownLatch release,
+                                       final List<String> requests)
+    {
+        try (Socket client = server.accept())
+        {
+            final DataInputStream in = new DataInputStream(client.getInputStream());
+            final OutputStream out = client.getOutputStream();
+            final byte[] header = new byte[24];
+            in.readFully(header);
+            in.readFully(new byte[4]);
+            header[4] = 0x34;
+            header[5] = 0x12;
+            out.write(header);
+            out.write(new byte[] { 1, 0, 0, 0 });
+
+            // Read requests
+            while (true)
+            {
+                in.readFully(header);
+                if (header[0] == 0x66)
+                {
+                    requests.add("UnRegisterSession");
+                    return;
+                }
+                final byte[] body = new byte[(header[2] & 0xFF) | (header[3] & 0xFF) << 8];
+                in.readFully(body);
+                requests.add(new String(body, StandardCharsets.ISO_8859_1));
+                if (requests.size() == 2)
+                    release.await();
+                replyRead(out, header);
+            }
+        }
+        catch (final Exception ex)
+        {
+            // Test ended
+        }
+    }
+
+    @Test
+    public void testAsyncRead() throws Exception
+    {
+        TestSettings.logAll();
+        try (final ServerSocket server = new ServerSocket(0xAF12, 1, InetAddress.getLoopbackAddress());
+             final EventLoop loop = new EventLoop("Test Loop"))
+        {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<String> requests = new CopyOnWriteArrayList<>();
+            final Thread device = new Thread(() -> fakeReadDevice(server, release, requests));
+            device.start();
+
+            final AsyncEtherNetIP plc = new AsyncEtherNetIP(loop, "127.0.0.1", 0);
+            final CompletableFuture<CIPData> value = plc.connect()
+                    .thenCompose(ignored -> plc.withTimeout(1, TimeUnit.SECONDS).readTag("kay_ai"));
+            final CIPData data = value.get(5, TimeUnit.SECONDS);
+            System.out.println(data);
+            assertThat(plc.getConnection().getSession(), equalTo(0x1234));
+            assertThat(data.getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+
+            // Device holds the response to this read..
+            final CompletableFuture<CIPData> blocked = plc.readTag("blocked");
+            // .. so this one is queued and can be cancelled before it's sent
+            final CompletableFuture<CIPData> cancelled = plc.readTag("cancelled");
+            cancelled.cancel(true);
+            final CompletableFuture<CIPData> later = plc.readTag("later");
+            release.countDown();
+
+            assertThat(blocked.get(5, TimeUnit.SECONDS).getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+            assertThat(later.get(5, TimeUnit.SECONDS).getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+            assertThat(cancelled.isCancelled(), equalTo(true));
+            // Device received 'later' right after 'blocked', never 'cancelled'
+            assertThat(requests.size(), equalTo(3));
+            assertThat(requests.get(1), containsString("blocked"));
+            assertThat(requests.get(2), containsString("later"));
+            for (final String request : requests)
+                assertThat(request, not(containsString("cancelled")));
+
+            // Closing un-registers the session
+            plc.close();
+            device.join(5000);
+            assertThat(device.isAlive(), equalTo(false));
+            assertThat(requests.size(), equalTo(4));
+            assertThat(requests.get(3), equalTo("UnRegisterSession"));
+        }
+    }
+}
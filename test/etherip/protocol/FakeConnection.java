@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+/**
+ * {@link Connection} without network for tests
+ * <p>
+ * Always open. Writing or reading fails unless a test overrides it.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class FakeConnection extends Connection
+{
+    public FakeConnection() throws Exception
+    {
+        super("fake", 0);
+    }
+
+    @Override
+    public void write(final ProtocolEncoder encoder) throws Exception
+    {
+        throw new Exception("Not expected");
+    }
+
+    @Override
+    protected void read(final ProtocolDecoder decoder) throws Exception
+    {
+        throw new Exception("Not expected");
+    }
+
+    @Override
+    public boolean isOpen() throws Exception
+    {
+        return true;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        // NOP
+    }
+}
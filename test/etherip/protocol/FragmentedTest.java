@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import etherip.TestSettings;
+import etherip.types.CIPData;
+import etherip.util.Hexdump;
+
+/** @author Kay Kasemir */
+@SuppressWarnings("nls")
+public class FragmentedTest
+{
+    private final ByteBuffer buf = TestSettings.getBuffer();
+
+    @Before
+    public void setup()
+    {
+        TestSettings.logAll();
+    }
+
+    /** Fake response for REAL data
+     *  @param status Status of the response
+     *  @param values Values in the response
+     */
+    private void fakeReadResponse(final int status, final float... values)
+    {
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0xD2, 0, (byte) status, 0, (byte) 0xCA, 0 });
+        for (float value : values)
+            this.buf.putFloat(value);
+        this.buf.flip();
+    }
+
+    @Test
+    public void testReadFragmented() throws Exception
+    {
+        final CIPData data = new CIPData(CIPData.Type.REAL, 4);
+        MRChipReadFragmentedProtocol read = new MRChipReadFragmentedProtocol("kay_ai", (short) 4, 0, data);
+        assertThat(read.getRequestSize(), equalTo(16));
+
+        StringBuilder log = new StringBuilder();
+        read.encode(this.buf, log);
+        System.out.println(log.toString());
+        this.buf.flip();
+        assertThat(Hexdump.toCompactHexdump(this.buf), equalTo(
+                "0000 - 52 04 91 06 6B 61 79 5F 61 69 04 00 00 00 00 00 - R...kay_ai......"));
+
+        // First fragment: Partial transfer
+        fakeReadResponse(0x06, 1.0f, 2.0f);
+        log = new StringBuilder();
+        read.decode(this.buf, this.buf.remaining(), log);
+        System.out.println(log.toString());
+        assertThat(read.isComplete(), equalTo(false));
+        assertThat(read.getType(), equalTo(CIPData.Type.REAL));
+        assertThat(read.getFragmentSize(), equalTo(8));
+
+        // Last fragment
+        read = new MRChipReadFragmentedProtocol("kay_ai", (short) 4, 8, data);
+        fakeReadResponse(0x00, 3.0f, 4.0f);
+        read.decode(this.buf, this.buf.remaining(), null);
+        assertThat(read.isComplete(), equalTo(true));
+        System.out.println(data);
+        assertThat(data.getNumber(0), equalTo((Number) Float.valueOf(1.0f)));
+        assertThat(data.getNumber(3), equalTo((Number) Float.valueOf(4.0f)));
+
+        // Same into a buffer
+        final ByteBuffer target = ByteBuffer.allocate(16);
+        target.order(Connection.BYTE_ORDER);
+        read = new MRChipReadFragmentedProtocol("kay_ai", (short) 4, 0, target);
+        fakeReadResponse(0x06, 1.0f, 2.0f, 3.0f);
+        read.decode(this.buf, this.buf.remaining(), null);
+        assertThat(target.position(), equalTo(12));
+        assertThat(target.getFloat(8), equalTo(3.0f));
+    }
+
+    @Test
+    public void testWriteFragmented() throws Exception
+    {
+        final CIPData data = new CIPData(CIPData.Type.REAL, 4);
+        for (int i=0; i<4; ++i)
+            data.set(i, i + 1.0f);
+        final int[] confirmed = new int[] { -1, -1 };
+        final MRChipWriteFragmentedProtocol write = new MRChipWriteFragmentedProtocol("kay_ai", data, 8, 8,
+                (tag, offset, length, total) ->
+                {
+                    confirmed[0] = offset;
+                    confirmed[1] = total;
+                });
+        assertThat(write.getRequestSize(), equalTo(10 + 8 + 8));
+
+        final StringBuilder log = new StringBuilder();
+        write.encode(this.buf, log);
+        System.out.println(log.toString());
+        this.buf.flip();
+        final String dump = Hexdump.toHexdump(this.buf);
+        System.out.println(dump);
+        assertThat(dump, equalTo(
+                "0000 - 53 04 91 06 6B 61 79 5F 61 69 CA 00 04 00 08 00 - S...kay_ai......\n" +
+                "0010 - 00 00 00 00 40 40 00 00 80 40                   - ....@@...@      \n"));
+
+        // Fake response
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0xD3, 0, 0, 0 });
+        this.buf.flip();
+        assertThat(write.isDone(), equalTo(false));
+        write.decode(this.buf, this.buf.remaining(), null);
+        assertThat(write.isDone(), equalTo(true));
+        assertThat(confirmed[0], equalTo(8));
+        assertThat(confirmed[1], equalTo(16));
+    }
+}
@@ -8,9 +8,11 @@
 package etherip.protocol;
 
 import static etherip.types.CNPath.Identity;
+import static etherip.types.CNPath.MessageRouter;
 import static etherip.types.CNPath.Symbol;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.nio.ByteBuffer;
 
@@ -18,6 +20,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import etherip.TestSettings;
+import etherip.data.CipException;
+import etherip.types.CIPData;
 import etherip.types.CNService;
 import etherip.util.Hexdump;
 
@@ -114,4 +118,102 @@ public class MessageRouterPDUTest
         }
         System.out.println();
     }
+
+    /** Fake response for REAL data */
+    private void fakeReadResponse(final float value)
+    {
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xCA, 0 });
+        this.buf.putFloat(value);
+        this.buf.flip();
+    }
+
+    @Test
+    public void testReadInPlace() throws Exception
+    {
+        final CIPData target = new CIPData(CIPData.Type.REAL, 1);
+        MRChipReadProtocol read = new MRChipReadProtocol(Symbol("kay_ai"), (short) 1, target);
+        fakeReadResponse(3.5f);
+        read.decode(this.buf, this.buf.remaining(), null);
+        assertThat(read.getData() == target, equalTo(true));
+        assertThat(target.getFloat(0), equalTo(3.5f));
+
+        // Different size requires new data
+        final CIPData other = new CIPData(CIPData.Type.REAL, 2);
+        read = new MRChipReadProtocol(Symbol("kay_ai"), (short) 1, other);
+        fakeReadResponse(4.5f);
+        read.decode(this.buf, this.buf.remaining(), null);
+        assertThat(read.getData() == other, equalTo(false));
+        assertThat(read.getData().getFloat(0), equalTo(4.5f));
+    }
+
+    @Test
+    public void testSharedRequest() throws Exception
+    {
+        final CIPReadRequest request = new CIPReadRequest("kay_ai", (short) 1);
+        final MRChipReadProtocol read1 = new MRChipReadProtocol(request);
+        final MRChipReadProtocol read2 = new MRChipReadProtocol(request);
+        assertThat(read1.getRequestSize(), equalTo(12));
+
+        this.buf.clear();
+        read2.encode(this.buf, null);
+        this.buf.flip();
+        assertThat(Hexdump.toCompactHexdump(this.buf), equalTo(
+                "0000 - 4C 04 91 06 6B 61 79 5F 61 69 01 00 - L...kay_ai.."));
+
+        // Each exchange has its own response
+        fakeReadResponse(1.0f);
+        read1.decode(this.buf, this.buf.remaining(), null);
+        fakeReadResponse(2.0f);
+        read2.decode(this.buf, this.buf.remaining(), null);
+        assertThat(read1.getData().getFloat(0), equalTo(1.0f));
+        assertThat(read2.getData().getFloat(0), equalTo(2.0f));
+        assertThat(read1.getRequest() == read2.getRequest(), equalTo(true));
+    }
+
+    @Test
+    public void testDefaultResponseSize() throws Exception
+    {
+        // STRING: Structure handle, length, 82 characters and padding
+        final byte[] data = new byte[2 + 88];
+        data[0] = (byte) 0xCE;
+        data[1] = (byte) 0x0F;
+        final CIPData value = new CIPData(CIPData.Type.STRUCT, data);
+        assertThat(MRChipReadProtocol.getResponseSize(value), equalTo(96));
+        assertThat(MRChipReadProtocol.getResponseSize((CIPData) null), equalTo(MRChipReadProtocol.getResponseSize(value)));
+    }
+
+    @Test
+    public void testEmbeddedError() throws Exception
+    {
+        final MRChipReadProtocol good = new MRChipReadProtocol("good");
+        final MRChipReadProtocol bad = new MRChipReadProtocol("bad");
+        final MessageRouterProtocol pdu = new MessageRouterProtocol(
+                CNService.CIP_MultiRequest, MessageRouter(),
+                new CIPMultiRequestProtocol(good, bad));
+        assertThat(good.getStatus(), equalTo(-1));
+
+        // Multi-request reply with 'embedded service error',
+        // first read returns DINT 42, second read 'path destination unknown'
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0x8A, 0, 0x1E, 0 });
+        this.buf.putShort((short) 2).putShort((short) 6).putShort((short) 16);
+        this.buf.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xC4, 0 }).putInt(42);
+        this.buf.put(new byte[] { (byte) 0xCC, 0, 0x05, 0 });
+        this.buf.flip();
+        try
+        {
+            pdu.decode(this.buf, this.buf.remaining(), null);
+            fail("Error was not reported");
+        }
+        catch (final CipException ex)
+        {
+            assertThat(ex.getStatusCode(), equalTo(0x05));
+        }
+        // Status of each embedded service
+        assertThat(pdu.getStatus(), equalTo(0x1E));
+        assertThat(good.getStatus(), equalTo(0));
+        assertThat(good.getData().getNumber(0), equalTo((Number) Integer.valueOf(42)));
+        assertThat(bad.getStatus(), equalTo(0x05));
+    }
 }
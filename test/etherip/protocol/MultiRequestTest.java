@@ -11,13 +11,22 @@ import static etherip.protocol.Encapsulation.Command.SendRRData;
 import static etherip.types.CNPath.MessageRouter;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import etherip.TestSettings;
+import etherip.data.CipException;
+import etherip.data.Symbol;
+import etherip.data.SymbolTable;
 import etherip.types.CNService;
 import etherip.util.Hexdump;
 
@@ -27,6 +36,91 @@ public class MultiRequestTest
 {
     private final ByteBuffer buf = TestSettings.getBuffer();
 
+    /** Connection that answers multi-request reads of "smallN" with DINT N, "largeN" with 40 DINTs, "bad" with an error.
+     *  Like a device, it reports 'reply data too large' for replies that do not fit.
+     */
+    private static class DeviceConnection extends FakeConnection
+    {
+        final static Pattern TAG = Pattern.compile("(small|large|bad)([0-9]*)");
+        final AtomicInteger transactions = new AtomicInteger();
+        private final byte[] header = new byte[24];
+        private String request;
+
+        DeviceConnection() throws Exception
+        {
+            super();
+        }
+
+        @Override
+        public void write(final ProtocolEncoder encoder) throws Exception
+        {
+            final ByteBuffer buffer = this.getBuffer();
+            buffer.clear();
+            encoder.encode(buffer, null);
+            buffer.flip();
+            final byte[] bytes = new byte[buffer.limit()];
+            buffer.get(bytes);
+            System.arraycopy(bytes, 0, this.header, 0, this.header.length);
+            this.request = new String(bytes, StandardCharsets.ISO_8859_1);
+            this.transactions.incrementAndGet();
+        }
+
+        @Override
+        protected void read(final ProtocolDecoder decoder) throws Exception
+        {
+            final int limit = this.getMaxMessageSize();
+            final ByteBuffer response = ByteBuffer.allocate(limit);
+            response.order(Connection.BYTE_ORDER);
+            final Matcher matcher = TAG.matcher(this.request);
+            int count = 0;
+            while (matcher.find())
+                ++count;
+            matcher.reset();
+            // Multi-request reply with count, offsets, replies
+            response.put(new byte[] { (byte) 0x8A, 0, 0, 0 });
+            response.putShort((short) count);
+            response.position(response.position() + 2 * count);
+            boolean errors = false;
+            for (int i=0; i<count; ++i)
+            {
+                matcher.find();
+                response.putShort(6 + 2 * i, (short) (response.position() - 4));
+                final int size = matcher.group(1).equals("large") ? 6 + 40*4 : 6 + 4;
+                if (matcher.group(1).equals("bad"))
+                {
+                    // Path destination unknown
+                    response.put(new byte[] { (byte) 0xCC, 0, 0x05, 0 });
+                    errors = true;
+                }
+                else if (response.position() + size + 4 * (count - i - 1) > limit)
+                {   // Keep room for the status of remaining replies
+                    response.put(new byte[] { (byte) 0xCC, 0, (byte) MRChipReadProtocol.REPLY_TOO_LARGE, 0 });
+                    errors = true;
+                }
+                else
+                {
+                    response.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xC4, 0 });
+                    for (int e = size - 6; e > 0; e -= 4)
+                        response.putInt(Integer.parseInt(matcher.group(2)));
+                }
+            }
+            if (errors) // Embedded service error
+                response.put(2, (byte) 0x1E);
+            response.flip();
+
+            final ByteBuffer receive = this.getReceiveBuffer();
+            receive.clear();
+            receive.put(this.header);
+            receive.putShort(2, (short) (16 + response.limit()));
+            // RR Data: Interface, timeout, UCMM and unconnected message items
+            receive.putInt(0).putShort((short) 0).putShort((short) 2);
+            receive.putShort((short) 0).putShort((short) 0);
+            receive.putShort((short) 0xB2).putShort((short) response.limit());
+            receive.put(response);
+            this.decode(decoder, receive.position());
+        }
+    }
+
     @Before
     public void setup()
     {
@@ -62,4 +156,148 @@ public class MultiRequestTest
                         + "0040 - 91 06 6B 61 79 5F 61 69 01 00 4C 04 91 06 6B 61 - ..kay_ai..L...ka\n"
                         + "0050 - 79 5F 61 6F 01 00 01 00 01 00                   - y_ao......      \n"));
     }
+
+    @Test
+    public void testPack() throws Exception
+    {
+        final MRChipReadProtocol[] reads = new MRChipReadProtocol[100];
+        final int[] response_sizes = new int[reads.length];
+        for (int i = 0; i < reads.length; ++i)
+        {
+            // Request size 12
+            reads[i] = new MRChipReadProtocol("tag" + (100 + i));
+            response_sizes[i] = 10;
+        }
+
+        // Request: 6 + 2 + 100 * (2 + 12) = 1408
+        // Response: 4 + 2 + 100 * (2 + 10) = 1206
+        List<CIPMultiRequestProtocol> packets = CIPMultiRequestProtocol
+                .pack(reads, response_sizes, 504, 504);
+        int total = 0;
+        for (final CIPMultiRequestProtocol packet : packets)
+        {
+            assertThat(6 + packet.getRequestSize() <= 504, equalTo(true));
+            total += (packet.getRequestSize() - 2) / 14;
+        }
+        assertThat(total, equalTo(reads.length));
+        // 35 requests fit into 504 bytes
+        assertThat(packets.size(), equalTo(3));
+
+        // Response is the limit
+        packets = CIPMultiRequestProtocol.pack(reads, response_sizes, 4000, 130);
+        // 10 responses fit into 130 bytes
+        assertThat(packets.size(), equalTo(10));
+
+        // Oversized service is sent on its own,
+        // 41 responses fit into 500 bytes:
+        // 0..40, 41..49, 50, 51..91, 92..99
+        response_sizes[50] = 1000;
+        packets = CIPMultiRequestProtocol.pack(reads, response_sizes, 4000, 500);
+        assertThat(packets.size(), equalTo(5));
+        assertThat(packets.get(2).getRequestSize(), equalTo(2 + 14));
+    }
+
+    @Test
+    public void testResponseSizes() throws Exception
+    {
+        final DeviceConnection connection = new DeviceConnection();
+
+        // Unknown tags are assumed to be DINT, REAL, ..
+        assertThat(connection.getReadResponseSize("small1", (short) 1), equalTo(4 + 2 + 4));
+        assertThat(connection.getReadResponseSize("small1", (short) 10), equalTo(4 + 2 + 40));
+
+        // Symbol table provides the actual sizes
+        final SymbolTable symbols = new SymbolTable();
+        symbols.add(new Symbol(null, 1, "lreal", (short) 0xCB, 8, new int[] { 0, 0, 0 }));
+        symbols.add(new Symbol(null, 2, "text", (short) (Symbol.STRUCTURE | 0x0FCE), 88, new int[] { 0, 0, 0 }));
+        symbols.add(new Symbol(null, 3, "array", (short) 0x20C4, 4, new int[] { 100, 0, 0 }));
+        connection.setSymbolTable(symbols);
+        assertThat(connection.getReadResponseSize("lreal", (short) 1), equalTo(4 + 2 + 8));
+        assertThat(connection.getReadResponseSize("text", (short) 1), equalTo(4 + 4 + 88));
+        assertThat(connection.getReadResponseSize("text.LEN", (short) 1), equalTo(4 + 4 + 88));
+        assertThat(connection.getReadResponseSize("array[10]", (short) 20), equalTo(4 + 2 + 80));
+        assertThat(connection.createReadRequest("array", (short) 5).getResponseSize(), equalTo(4 + 2 + 20));
+        assertThat(connection.createReadRequest("other", (short) 1).getResponseSize(), equalTo(4 + 2 + 4));
+    }
+
+    @Test
+    public void testRepeatReads() throws Exception
+    {
+        // 10 small, 5 large and another 10 small tags
+        final DeviceConnection connection = new DeviceConnection();
+        final MRChipReadProtocol[] reads = new MRChipReadProtocol[25];
+        final int[] response_sizes = new int[reads.length];
+        for (int i = 0; i < reads.length; ++i)
+        {
+            final String tag = (i >= 10 && i < 15 ? "large" : "small") + i;
+            reads[i] = new MRChipReadProtocol(connection.createReadRequest(tag, (short) 1));
+            response_sizes[i] = reads[i].getRequest().getResponseSize();
+        }
+
+        // Optimistic estimate packs all reads into one request.
+        // Replies that did not fit are read again.
+        final int transactions = connection.executeMultiRequest(reads, response_sizes);
+        System.out.println("Read " + reads.length + " tags in " + transactions + " transactions");
+        for (int i = 0; i < reads.length; ++i)
+        {
+            assertThat(reads[i].getStatus(), equalTo(0));
+            assertThat(reads[i].getData().getNumber(0), equalTo((Number) Integer.valueOf(i)));
+            final int elements = i >= 10 && i < 15 ? 40 : 1;
+            assertThat(reads[i].getData().getElementCount(), equalTo(elements));
+            assertThat(reads[i].getData().getNumber(elements - 1), equalTo((Number) Integer.valueOf(i)));
+        }
+        assertThat(transactions, equalTo(connection.transactions.get()));
+        // Assuming 96 bytes for each of the 25 reads would require 5 transactions
+        assertThat(CIPMultiRequestProtocol.pack(reads, new int[] {
+            96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96, 96
+        }, 504, 504).size(), equalTo(5));
+        assertThat(transactions < 5, equalTo(true));
+    }
+
+    @Test
+    public void testReadError() throws Exception
+    {
+        // Error other than a reply that's too large is reported without repeating the reads
+        final DeviceConnection connection = new DeviceConnection();
+        final MRChipReadProtocol[] reads = new MRChipReadProtocol[]
+        {
+            new MRChipReadProtocol(connection.createReadRequest("small1", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("bad", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("small2", (short) 1))
+        };
+        try
+        {
+            connection.executeMultiRequest(reads, new int[] { 10, 10, 10 });
+            fail("Read bad tag");
+        }
+        catch (final CipException ex)
+        {
+            assertThat(ex.getStatusCode(), equalTo(0x05));
+        }
+        assertThat(connection.transactions.get(), equalTo(1));
+        assertThat(reads[0].getData().getNumber(0), equalTo((Number) Integer.valueOf(1)));
+        assertThat(reads[2].getData().getNumber(0), equalTo((Number) Integer.valueOf(2)));
+
+        // With a reply that's too large, only that one is repeated, then the error reported
+        final MRChipReadProtocol[] more = new MRChipReadProtocol[]
+        {
+            new MRChipReadProtocol(connection.createReadRequest("bad", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("large1", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("large2", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("large3", (short) 1)),
+            new MRChipReadProtocol(connection.createReadRequest("large4", (short) 1))
+        };
+        connection.transactions.set(0);
+        try
+        {
+            connection.executeMultiRequest(more, new int[] { 10, 10, 10, 10, 10 });
+            fail("Read bad tag");
+        }
+        catch (final CipException ex)
+        {
+            assertThat(ex.getStatusCode(), equalTo(0x05));
+        }
+        assertThat(connection.transactions.get() > 1, equalTo(true));
+        assertThat(more[4].getData().getNumber(39), equalTo((Number) Integer.valueOf(4)));
+    }
 }
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import etherip.TestSettings;
+
+/**
+ * JUnit test of pipelined requests in the {@link TcpConnection}, using a fake device on localhost
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PipelineTest
+{
+    /** Fake device */
+    private static abstract class FakeDevice implements Runnable
+    {
+        final ServerSocket server;
+        final List<byte[]> requests = new ArrayList<>();
+        final CompletableFuture<Integer> received = new CompletableFuture<>();
+        /** Unexpected error of the device */
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        DataInputStream in;
+        OutputStream out;
+
+        FakeDevice(final ServerSocket server)
+        {
+            this.server = server;
+        }
+
+        /** @return Next RegisterSession request */
+        byte[] readRequest() throws Exception
+        {
+            final byte[] request = new byte[28];
+            this.in.readFully(request);
+            this.requests.add(request);
+            return request;
+        }
+
+        /** Send response to a request, using the session to identify the request
+         *  @param request Request to answer
+         *  @param session Session to return
+         *  @param status Encapsulation status
+         */
+        void reply(final byte[] request, final int session, final int status) throws Exception
+        {
+            final byte[] response = request.clone();
+            response[4] = (byte) session;
+            response[5] = (byte) (session >> 8);
+            response[8] = (byte) status;
+            this.out.write(response);
+        }
+
+        abstract void handle() throws Exception;
+
+        @Override
+        public void run()
+        {
+            try (Socket client = this.server.accept())
+            {
+                this.in = new DataInputStream(client.getInputStream());
+                this.out = client.getOutputStream();
+                this.handle();
+                this.out.flush();
+                // Count remaining requests until client closes the connection
+                try
+                {
+                    while (true)
+                        this.readRequest();
+                }
+                catch (final EOFException ex)
+                {
+                    // Client closed connection
+                }
+            }
+            catch (final Exception ex)
+            {
+                this.error.set(ex);
+            }
+            this.received.complete(this.requests.size());
+        }
+    }
+
+    @Test
+    public void testOutOfOrder() throws Exception
+    {
+        TestSettings.logAll();
+        try (final ServerSocket server = new ServerSocket(0xAF12, 1, InetAddress.getLoopbackAddress()))
+        {
+            final FakeDevice device = new FakeDevice(server)
+            {
+                @Override
+                void handle() throws Exception
+                {
+                    final byte[] first = this.readRequest();
+                    final byte[] second = this.readRequest();
+                    final byte[] third = this.readRequest();
+                    // Foreign context must be skipped
+                    final byte[] foreign = first.clone();
+                    foreign[12] = 'X';
+                    this.reply(foreign, 0x999, 0);
+                    // Responses in reverse order
+                    this.reply(third, 0x103, 0);
+                    this.reply(second, 0x102, 0);
+                    this.reply(first, 0x101, 0);
+                }
+            };
+            new Thread(device).start();
+
+            final RegisterSession[] registers = new RegisterSession[3];
+            try (TcpConnection connection = new TcpConnection("127.0.0.1", 0))
+            {
+                connection.setPipelineDepth(3);
+                for (int i=0; i<registers.length; ++i)
+                    registers[i] = new RegisterSession();
+                connection.execute(registers);
+            }
+            assertThat(device.received.get(5, TimeUnit.SECONDS), equalTo(3));
+            assertThat(device.error.get(), nullValue());
+            for (int i=0; i<registers.length; ++i)
+                assertThat(registers[i].getSession(), equalTo(0x101 + i));
+        }
+    }
+
+    @Test
+    public void testErrorDrainsPipeline() throws Exception
+    {
+        TestSettings.logAll();
+        try (final ServerSocket server = new ServerSocket(0xAF12, 1, InetAddress.getLoopbackAddress()))
+        {
+            final FakeDevice device = new FakeDevice(server)
+            {
+                @Override
+                void handle() throws Exception
+                {
+                    final byte[] first = this.readRequest();
+                    final byte[] second = this.readRequest();
+                    // Error for the second request, received first
+                    this.reply(second, 0x102, 0x65);
+                    this.reply(first, 0x101, 0);
+                }
+            };
+            new Thread(device).start();
+
+            final RegisterSession[] registers = new RegisterSession[4];
+            try (TcpConnection connection = new TcpConnection("127.0.0.1", 0))
+            {
+                connection.setPipelineDepth(2);
+                for (int i=0; i<registers.length; ++i)
+                    registers[i] = new RegisterSession();
+                try
+                {
+                    connection.execute(registers);
+                    fail("Error was not reported");
+                }
+                catch (final Exception ex)
+                {
+                    assertThat(ex.getMessage(), containsString("invalid data length"));
+                }
+            }
+            // No further requests after the error, but response to the first one was still read
+            assertThat(device.received.get(5, TimeUnit.SECONDS), equalTo(2));
+            assertThat(device.error.get(), nullValue());
+            assertThat(registers[0].getSession(), equalTo(0x101));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import etherip.EtherNetIP;
+import etherip.types.CIPData;
+
+/**
+ * JUnit test of the {@link Connection} request queue
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class RequestQueueTest
+{
+    /** Connection that detects concurrent use */
+    private static class SerialConnection extends FakeConnection
+    {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger handled = new AtomicInteger();
+        final List<String> threads = new ArrayList<>();
+
+        SerialConnection() throws Exception
+        {
+            super();
+        }
+
+        @Override
+        public void write(final ProtocolEncoder encoder) throws Exception
+        {
+            if (this.active.incrementAndGet() > 1)
+                this.overlaps.incrementAndGet();
+            synchronized (this.threads)
+            {
+                if (! this.threads.contains(Thread.currentThread().getName()))
+                    this.threads.add(Thread.currentThread().getName());
+            }
+            Thread.sleep(1);
+        }
+
+        @Override
+        protected void read(final ProtocolDecoder decoder) throws Exception
+        {
+            this.handled.incrementAndGet();
+            this.active.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testQueue() throws Exception
+    {
+        final SerialConnection connection = new SerialConnection();
+        connection.setRequestQueue(2);
+
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final List<Thread> callers = new ArrayList<>();
+        for (int i=0; i<4; ++i)
+        {
+            final Thread caller = new Thread(() ->
+            {
+                try
+                {
+                    for (int r=0; r<20; ++r)
+                        connection.execute(new ProtocolAdapter());
+                }
+                catch (final Exception ex)
+                {
+                    error.set(ex);
+                }
+            }, "Caller " + i);
+            callers.add(caller);
+            caller.start();
+        }
+        for (final Thread caller : callers)
+            caller.join();
+        connection.setRequestQueue(0);
+
+        System.out.println("I/O threads: " + connection.threads);
+        assertThat(error.get(), nullValue());
+        assertThat(connection.handled.get(), equalTo(80));
+        assertThat(connection.overlaps.get(), equalTo(0));
+        assertThat(connection.threads.size(), equalTo(1));
+        assertThat(connection.threads.get(0), equalTo("Requests fake"));
+    }
+
+    @Test
+    public void testTaskError() throws Exception
+    {
+        final RequestQueue queue = new RequestQueue("Test", 2, 1000);
+        try
+        {
+            queue.execute(() ->
+            {
+                throw new AssertionError("Bad task");
+            });
+            fail("Error was not reported");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getCause(), instanceOf(AssertionError.class));
+        }
+        // I/O thread still handles requests
+        final AtomicInteger handled = new AtomicInteger();
+        queue.execute(() -> handled.incrementAndGet());
+        assertThat(handled.get(), equalTo(1));
+        queue.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void testStop() throws Exception
+    {
+        final RequestQueue queue = new RequestQueue("Test", 2, 1000);
+        final AtomicInteger handled = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        // Callers keep submitting while the queue is stopped
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final List<Thread> callers = new ArrayList<>();
+        for (int i=0; i<4; ++i)
+        {
+            final Thread caller = new Thread(() ->
+            {
+                try
+                {
+                    while (true)
+                        queue.execute(() -> handled.incrementAndGet());
+                }
+                catch (final Exception ex)
+                {
+                    assertThat(ex.getMessage(), containsString("stopped"));
+                    failed.incrementAndGet();
+                }
+            }, "Caller " + i);
+            callers.add(caller);
+            caller.start();
+        }
+        Thread.sleep(100);
+        queue.stop();
+
+        // No caller hangs
+        for (final Thread caller : callers)
+            caller.join();
+        System.out.println("Handled " + handled.get() + " requests before stopping");
+        assertThat(failed.get(), equalTo(4));
+        try
+        {
+            queue.execute(() -> handled.incrementAndGet());
+            fail("Stopped queue accepted request");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), containsString("stopped"));
+        }
+    }
+
+    /** Fake device: Answers RegisterSession, then reads with DINT 42 */
+    private static void fakeDevice(final ServerSocket server)
+    {
+        try (Socket client = server.accept())
+        {
+            final DataInputStream in = new DataInputStream(client.getInputStream());
+            final OutputStream out = client.getOutputStream();
+            final byte[] header = new byte[24];
+            in.readFully(header);
+            in.readFully(new byte[4]);
+            header[4] = 0x34;
+            header[5] = 0x12;
+            out.write(header);
+            out.write(new byte[] { 1, 0, 0, 0 });
+            while (true)
+            {
+                in.readFully(header);
+                in.readFully(new byte[(header[2] & 0xFF) | (header[3] & 0xFF) << 8]);
+                final ByteBuffer response = ByteBuffer.allocate(24 + 16 + 10);
+                response.order(Connection.BYTE_ORDER);
+                response.put(header);
+                response.putShort(2, (short) 26);
+                // RR Data: Interface, timeout, UCMM and unconnected message items
+                response.putInt(0).putShort((short) 0).putShort((short) 2);
+                response.putShort((short) 0).putShort((short) 0);
+                response.putShort((short) 0xB2).putShort((short) 10);
+                // Read response: DINT 42
+                response.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xC4, 0 });
+                response.putInt(42);
+                out.write(response.array());
+                out.flush();
+            }
+        }
+        catch (final Exception ex)
+        {
+            // Test ended
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testReadTagView() throws Exception
+    {
+        try (final ServerSocket server = new ServerSocket(0xAF12, 1, InetAddress.getLoopbackAddress());
+             final EtherNetIP plc = new EtherNetIP("127.0.0.1", 0))
+        {
+            new Thread(() -> fakeDevice(server)).start();
+            plc.connectTcpBlocking();
+
+            // View of the receive buffer
+            CIPData value = plc.readTagView("x", (short) 1);
+            assertThat(value.isView(), equalTo(true));
+            assertThat(value.getNumber(0), equalTo((Number) Integer.valueOf(42)));
+
+            // With a request queue, the receive buffer is shared, so value is a copy
+            plc.setRequestQueue(2);
+            value = plc.readTagView("x", (short) 1);
+            assertThat(value.isView(), equalTo(false));
+            assertThat(value.getNumber(0), equalTo((Number) Integer.valueOf(42)));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.protocol;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import etherip.TestSettings;
+import etherip.data.Symbol;
+import etherip.data.SymbolTable;
+import etherip.types.CNPath;
+import etherip.util.Hexdump;
+
+/** @author Kay Kasemir */
+@SuppressWarnings("nls")
+public class SymbolListTest
+{
+    private final ByteBuffer buf = TestSettings.getBuffer();
+
+    @Before
+    public void setup()
+    {
+        TestSettings.logAll();
+    }
+
+    @Test
+    public void testSymbolList() throws Exception
+    {
+        final MRSymbolListProtocol list = new MRSymbolListProtocol(0);
+        StringBuilder log = new StringBuilder();
+        list.encode(this.buf, log);
+        System.out.println(log.toString());
+        this.buf.flip();
+        assertThat(Hexdump.toCompactHexdump(this.buf),
+                equalTo("0000 - 55 02 20 6B 24 00 04 00 01 00 02 00 07 00 08 00 - U. k$..........."));
+
+        // Fake response: Partial transfer, two symbols
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0xD5, 0, 0x06, 0 });
+        this.buf.putInt(0x10);
+        this.buf.putShort((short) 3);
+        this.buf.put("abc".getBytes());
+        this.buf.putShort((short) 0x00C4);
+        this.buf.putShort((short) 4);
+        this.buf.putInt(0);
+        this.buf.putInt(0);
+        this.buf.putInt(0);
+        this.buf.putInt(0x1234);
+        this.buf.putShort((short) 1);
+        this.buf.put("x".getBytes());
+        this.buf.putShort((short) 0xA0CA);
+        this.buf.putShort((short) 8);
+        this.buf.putInt(10);
+        this.buf.putInt(0);
+        this.buf.putInt(0);
+        this.buf.flip();
+        log = new StringBuilder();
+        list.decode(this.buf, this.buf.remaining(), log);
+        System.out.println(log.toString());
+
+        assertThat(list.isComplete(), equalTo(false));
+        assertThat(list.getSymbols().size(), equalTo(2));
+        final Symbol abc = list.getSymbols().get(0);
+        assertThat(abc.getName(), equalTo("abc"));
+        assertThat(abc.getInstance(), equalTo(0x10));
+        assertThat(abc.getTypeCode(), equalTo(0xC4));
+        assertThat(abc.getDimensionCount(), equalTo(0));
+        final Symbol x = list.getSymbols().get(1);
+        assertThat(x.getInstance(), equalTo(0x1234));
+        assertThat(x.getDimensionCount(), equalTo(1));
+        assertThat(x.isStructure(), equalTo(true));
+        assertThat(x.getElementCount(), equalTo(10));
+    }
+
+    @Test
+    public void testProgramSymbols() throws Exception
+    {
+        final MRSymbolListProtocol list = new MRSymbolListProtocol("Program:Main", 0x100);
+        list.encode(this.buf, null);
+        this.buf.flip();
+        final String dump = Hexdump.toHexdump(this.buf);
+        System.out.println(dump);
+        assertThat(dump, equalTo(
+                "0000 - 55 0A 91 0C 50 72 6F 67 72 61 6D 3A 4D 61 69 6E - U...Program:Main\n" +
+                "0010 - 20 6B 25 00 00 01 04 00 01 00 02 00 07 00 08 00 -  k%.............\n"));
+
+        // Fake response with one symbol
+        this.buf.clear();
+        this.buf.put(new byte[] { (byte) 0xD5, 0, 0, 0 });
+        this.buf.putInt(0x101);
+        this.buf.putShort((short) 1);
+        this.buf.put("x".getBytes());
+        this.buf.putShort((short) 0x00C4);
+        this.buf.putShort((short) 4);
+        this.buf.putInt(0);
+        this.buf.putInt(0);
+        this.buf.putInt(0);
+        this.buf.flip();
+        list.decode(this.buf, this.buf.remaining(), null);
+        assertThat(list.isComplete(), equalTo(true));
+        final Symbol x = list.getSymbols().get(0);
+        assertThat(x.getName(), equalTo("Program:Main.x"));
+        assertThat(x.getProgram(), equalTo("Program:Main"));
+
+        // Address program tag by instance
+        final SymbolTable table = new SymbolTable("sig");
+        table.add(x);
+        final Connection connection = new Connection("127.0.0.1", 0)
+        {
+            @Override
+            public boolean isOpen()
+            {
+                return false;
+            }
+
+            @Override
+            public void write(final ProtocolEncoder encoder)
+            {
+            }
+
+            @Override
+            protected void read(final ProtocolDecoder decoder)
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        connection.setSymbolTable(table);
+        final CNPath path = connection.getTagPath("program:main.X[2]");
+        this.buf.clear();
+        path.encode(this.buf, null);
+        this.buf.flip();
+        assertThat(Hexdump.toCompactHexdump(this.buf),
+                equalTo("0000 - 0B 91 0C 50 72 6F 67 72 61 6D 3A 4D 61 69 6E 20 - ...Program:Main \n" +
+                        "0010 - 6B 25 00 01 01 28 02 - k%...(."));
+
+        // Save, load
+        final File file = File.createTempFile("symbols", ".txt");
+        try
+        {
+            table.save(file);
+            final SymbolTable loaded = SymbolTable.load(file);
+            assertThat(loaded.getSignature(), equalTo("sig"));
+            assertThat(loaded.get("Program:Main.x").toString(), equalTo(x.toString()));
+            assertThat(loaded.get("Program:Main.x").getProgram(), equalTo("Program:Main"));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+}
@@ -26,5 +26,9 @@ public class TransactionTest
         assertThat(bytes.length, equalTo(8));
         final String text = new String(bytes);
         System.out.println(text);
+
+        assertThat(Transaction.parse(bytes), equalTo(t));
+        assertThat(Transaction.parse(Transaction.format(0xFFFFFFFFL)), equalTo(0xFFFFFFFFL));
+        assertThat(Transaction.parse("Funstuff".getBytes()), equalTo(-1L));
     }
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.scan;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * JUnit test of the {@link ScanList} timing and overrun handling
+ * <p>
+ * Scan start and end times are passed in, no connection or PLC is needed.
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ScanListTimingTest
+{
+    /** Scan period of 1 second */
+    private static final long PERIOD = 1000000000L;
+
+    private static ScanList createList(final Scanner.Timing timing,
+            final Scanner.Overrun overrun)
+    {
+        final ScanList list = new ScanList(1.0, null, null, timing, overrun, null);
+        list.start();
+        return list;
+    }
+
+    @Test
+    public void testFixedRate()
+    {
+        final ScanList list = createList(Scanner.Timing.FIXED_RATE, Scanner.Overrun.SKIP);
+        final long first = list.getNextScan();
+
+        // Scan that's late to start but ends within the period: No overrun
+        list.advance(first + PERIOD / 2, first + PERIOD * 3 / 4);
+        assertThat(list.getNextScan(), equalTo(first + PERIOD));
+        assertThat(list.getOverruns(), equalTo(0L));
+        assertThat(list.getSkipped(), equalTo(0L));
+        assertThat(list.getLastDuration(), equalTo(0.25));
+    }
+
+    @Test
+    public void testFixedRateSkip()
+    {
+        final ScanList list = createList(Scanner.Timing.FIXED_RATE, Scanner.Overrun.SKIP);
+        final long first = list.getNextScan();
+
+        // Scan takes 3.5 periods, missing the scans at +1, +2, +3
+        list.advance(first, first + PERIOD * 7 / 2);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getSkipped(), equalTo(3L));
+        assertThat(list.getNextScan(), equalTo(first + 4 * PERIOD));
+
+        // Next scan is on time again
+        list.advance(first + 4 * PERIOD, first + 4 * PERIOD + PERIOD / 10);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getSkipped(), equalTo(3L));
+        assertThat(list.getNextScan(), equalTo(first + 5 * PERIOD));
+
+        // Ending exactly on the next deadline is no overrun
+        list.advance(first + 5 * PERIOD, first + 6 * PERIOD);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getNextScan(), equalTo(first + 6 * PERIOD));
+
+        // Scan takes 2 periods: Scan at +7 is missed, +8 is due right away
+        list.advance(first + 6 * PERIOD, first + 8 * PERIOD);
+        assertThat(list.getOverruns(), equalTo(2L));
+        assertThat(list.getSkipped(), equalTo(4L));
+        assertThat(list.getNextScan(), equalTo(first + 8 * PERIOD));
+    }
+
+    @Test
+    public void testFixedRateRunLate()
+    {
+        final ScanList list = createList(Scanner.Timing.FIXED_RATE, Scanner.Overrun.RUN_LATE);
+        final long first = list.getNextScan();
+
+        // Scan takes 3.5 periods: Next scan starts right away, none are skipped
+        final long end = first + PERIOD * 7 / 2;
+        list.advance(first, end);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getSkipped(), equalTo(0L));
+        assertThat(list.getNextScan(), equalTo(end));
+
+        // Then continue at the period from there
+        list.advance(end, end + PERIOD / 10);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getNextScan(), equalTo(end + PERIOD));
+    }
+
+    @Test
+    public void testFixedDelay()
+    {
+        final ScanList list = createList(Scanner.Timing.FIXED_DELAY, Scanner.Overrun.SKIP);
+        final long first = list.getNextScan();
+
+        // Next scan is one period after the end of the last one
+        list.advance(first, first + PERIOD / 2);
+        assertThat(list.getOverruns(), equalTo(0L));
+        assertThat(list.getNextScan(), equalTo(first + PERIOD * 3 / 2));
+
+        // Scan that takes longer than the period is an overrun,
+        // but nothing is skipped
+        final long start = list.getNextScan();
+        list.advance(start, start + 3 * PERIOD);
+        assertThat(list.getOverruns(), equalTo(1L));
+        assertThat(list.getSkipped(), equalTo(0L));
+        assertThat(list.getLastDuration(), equalTo(3.0));
+        assertThat(list.getNextScan(), equalTo(start + 4 * PERIOD));
+    }
+}
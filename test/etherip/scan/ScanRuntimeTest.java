@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.scan;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import etherip.Tag;
+import etherip.TestSettings;
+import etherip.protocol.BlockingTcpConnection;
+import etherip.protocol.Connection;
+
+/**
+ * JUnit test of the {@link ScanRuntime} with {@link BlockingTcpConnection}s, using a fake device on localhost
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ScanRuntimeTest
+{
+    /** Fake device: Answers each multi-request read of one tag with REAL 3.14 */
+    private static class FakeDevice implements Runnable
+    {
+        final ServerSocket server;
+        final String[] names;
+
+        /** Names of the tags in the received reads, in order of arrival */
+        final List<String> reads = new ArrayList<>();
+
+        FakeDevice(final ServerSocket server, final String... names)
+        {
+            this.server = server;
+            this.names = names;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket client = this.server.accept();
+                    new Thread(() -> this.handle(client)).start();
+                }
+            }
+            catch (final Exception ex)
+            {
+                // Test ended
+            }
+        }
+
+        private void handle(final Socket client)
+        {
+            try (Socket socket = client)
+            {
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                final OutputStream out = socket.getOutputStream();
+                final byte[] header = new byte[24];
+                while (true)
+                {
+                    in.readFully(header);
+                    final byte[] body = new byte[(header[2] & 0xFF) | (header[3] & 0xFF) << 8];
+                    in.readFully(body);
+                    final String request = new String(body, StandardCharsets.ISO_8859_1);
+                    for (final String name : this.names)
+                    {
+                        if (request.contains(name))
+                        {
+                            synchronized (this.reads)
+                            {
+                                this.reads.add(name);
+                            }
+                        }
+                    }
+
+                    final ByteBuffer response = ByteBuffer.allocate(24 + 16 + 18);
+                    response.order(Connection.BYTE_ORDER);
+                    response.put(header);
+                    response.putShort(2, (short) 34);
+                    // RR Data: Interface, timeout, UCMM and unconnected message items
+                    response.putInt(0).putShort((short) 0).putShort((short) 2);
+                    response.putShort((short) 0).putShort((short) 0);
+                    response.putShort((short) 0xB2).putShort((short) 18);
+                    // Multi-request response with one read response: REAL 3.14
+                    response.put(new byte[] { (byte) 0x8A, 0, 0, 0 });
+                    response.putShort((short) 1).putShort((short) 4);
+                    response.put(new byte[] { (byte) 0xCC, 0, 0, 0, (byte) 0xCA, 0 });
+                    response.putFloat(3.14f);
+                    out.write(response.array());
+                    out.flush();
+                }
+            }
+            catch (final Exception ex)
+            {
+                // Client closed the connection
+            }
+        }
+
+        /** @return Number of reads for tag */
+        int getReads(final String name)
+        {
+            synchronized (this.reads)
+            {
+                int count = 0;
+                for (final String read : this.reads)
+                    if (read.equals(name))
+                        ++count;
+                return count;
+            }
+        }
+
+        /** @return Reads of the given tags, in order of arrival */
+        List<String> getReads(final String... names)
+        {
+            final List<String> result = new ArrayList<>();
+            synchronized (this.reads)
+            {
+                for (final String read : this.reads)
+                    for (final String name : names)
+                        if (read.equals(name))
+                            result.add(read);
+            }
+            return result;
+        }
+
+        /** Wait until tag has been read a number of times */
+        void await(final String name, final int count) throws Exception
+        {
+            while (this.getReads(name) < count)
+                Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testScanRuntime() throws Exception
+    {
+        TestSettings.logAll();
+        try (final ServerSocket server = new ServerSocket(0xAF12, 2, InetAddress.getLoopbackAddress());
+             final BlockingTcpConnection a = new BlockingTcpConnection("127.0.0.1", 0);
+             final BlockingTcpConnection b = new BlockingTcpConnection("127.0.0.1", 0))
+        {
+            final FakeDevice device = new FakeDevice(server, "fast", "slow", "other");
+            new Thread(device).start();
+
+            final ScanRuntime runtime = new ScanRuntime();
+            System.out.println("Virtual threads: " + ScanRuntime.isUsingVirtualThreads());
+
+            // Loop for connection 'a' parks until the slow list is due..
+            final Tag slow = runtime.add(a, 1.0, "slow");
+            Thread.sleep(100);
+            // .. and needs to wake up for the fast list that's added later but due first
+            final long start = System.nanoTime();
+            final Tag fast = runtime.add(a, 0.1, "fast");
+            final Tag other = runtime.add(b, 0.2, "other");
+            assertThat(runtime.getConnectionCount(), equalTo(2));
+
+            device.await("fast", 1);
+            final double first = (System.nanoTime() - start) / 1e9;
+            System.out.println("First fast scan after " + first + " sec");
+            assertTrue(first < 0.5);
+
+            // Lists of 'a' are scanned in the order of their deadlines:
+            // 'fast' at 0.1, 0.2, .., 0.9 before 'slow' at 0.9 sec after adding 'fast'
+            device.await("slow", 1);
+            final List<String> reads = device.getReads("fast", "slow");
+            System.out.println("Reads for 'a': " + reads);
+            assertThat(reads.get(0), equalTo("fast"));
+            final int fast_before_slow = reads.indexOf("slow");
+            assertTrue(fast_before_slow >= 5  &&  fast_before_slow <= 10);
+            // 'b' was scanned independently
+            assertTrue(device.getReads("other") >= 2);
+
+            // Stop scanning 'a', scan in progress may complete
+            runtime.remove(a);
+            assertThat(runtime.getConnectionCount(), equalTo(1));
+            assertThat(runtime.getScanList(a, 0.1), nullValue());
+            assertThat(runtime.getScanList(b, 0.2), notNullValue());
+            Thread.sleep(200);
+            assertThat(fast.getValue().getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+            assertThat(slow.getValue().getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+            assertThat(other.getValue().getNumber(0), equalTo((Number) Float.valueOf(3.14f)));
+            final int fast_reads = device.getReads("fast");
+            final int other_reads = device.getReads("other");
+            Thread.sleep(500);
+            assertThat(device.getReads("fast"), equalTo(fast_reads));
+            assertTrue(device.getReads("other") > other_reads);
+            // Connection remains usable after the loop ended
+            assertThat(a.isOpen(), equalTo(true));
+
+            // Shutdown stops the remaining loop
+            assertThat(runtime.shutdown(5, TimeUnit.SECONDS), equalTo(true));
+            assertThat(runtime.getConnectionCount(), equalTo(0));
+            assertThat(b.isOpen(), equalTo(true));
+            try
+            {
+                runtime.add(b, 0.2, "other");
+                fail("Closed runtime added tag");
+            }
+            catch (final IllegalStateException ex)
+            {
+                // Expected
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -79,4 +80,117 @@ public class CIPDataTest
         value.set(2, 3);
         assertThat(value.toString(), equalTo("CIP_INT (0x00C3): [1, 2, 3]"));
     }
+
+    @Test
+    public void testPrimitives() throws Exception
+    {
+        final CIPData value = new CIPData(Type.REAL, 3);
+        value.setFloat(0, 1.5f);
+        value.setDouble(1, 2.5);
+        value.setInt(2, 3);
+        assertThat(value.getFloat(0), equalTo(1.5f));
+        assertThat(value.getDouble(1), equalTo(2.5));
+        assertThat(value.getInt(0), equalTo(1));
+
+        final float[] floats = new float[5];
+        assertThat(value.getFloats(floats), equalTo(3));
+        assertThat(floats[2], equalTo(3.0f));
+
+        final CIPData ints = new CIPData(Type.INT, 2);
+        ints.setFloat(0, 42.7f);
+        ints.setInt(1, -2);
+        final short[] shorts = new short[1];
+        assertThat(ints.getShorts(shorts), equalTo(1));
+        assertThat(shorts[0], equalTo((short) 42));
+        final int[] values = new int[2];
+        ints.getInts(values);
+        assertThat(values[1], equalTo(-2));
+
+        try
+        {
+            value.getInt(3);
+            Assert.fail("Index not checked");
+        }
+        catch (final IndexOutOfBoundsException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testView() throws Exception
+    {
+        final ByteBuffer buf = TestSettings.getBuffer();
+        buf.put((byte) 0xFF);
+        buf.putFloat(1.0f);
+        buf.putFloat(2.0f);
+        buf.flip();
+        buf.get();
+
+        final CIPData view = CIPData.view(Type.REAL, buf, 8);
+        assertThat(buf.position(), equalTo(1));
+        assertThat(view.isView(), equalTo(true));
+        assertThat(view.getElementCount(), equalTo(2));
+        assertThat(view.getFloat(1), equalTo(2.0f));
+
+        final CIPData copy = view.copy();
+        assertThat(copy.isView(), equalTo(false));
+
+        // View follows changes to the buffer, copy does not
+        buf.putFloat(5, 3.0f);
+        assertThat(view.getFloat(1), equalTo(3.0f));
+        assertThat(copy.getFloat(1), equalTo(2.0f));
+
+        // View can be encoded, but not changed
+        final ByteBuffer encoded = ByteBuffer.allocate(view.getEncodedSize());
+        encoded.order(buf.order());
+        view.encode(encoded);
+        assertThat(encoded.getFloat(8), equalTo(3.0f));
+        try
+        {
+            view.setFloat(0, 4.0f);
+            Assert.fail("View was changed");
+        }
+        catch (final ReadOnlyBufferException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testWideTypes() throws Exception
+    {
+        final CIPData lreal = new CIPData(Type.LREAL, new byte[] {
+                0x18, 0x2D, 0x44, 0x54, (byte) 0xFB, 0x21, 0x09, 0x40 });
+        assertThat(lreal.getElementCount(), equalTo(1));
+        assertThat(lreal.getDouble(0), equalTo(Math.PI));
+        assertThat(lreal.getNumber(0), equalTo((Number) Double.valueOf(Math.PI)));
+
+        final CIPData lint = new CIPData(Type.LINT, 2);
+        lint.setLong(0, 1L << 40);
+        lint.set(1, -5);
+        assertThat(lint.getLong(0), equalTo(1L << 40));
+        assertThat(lint.toString(), equalTo("CIP_LINT (0x00C5): [1099511627776, -5]"));
+
+        final CIPData udint = new CIPData(Type.UDINT, 1);
+        udint.setLong(0, 0xFFFFFFFEL);
+        assertThat(udint.getLong(0), equalTo(0xFFFFFFFEL));
+        assertThat(udint.getNumber(0), equalTo((Number) Long.valueOf(0xFFFFFFFEL)));
+
+        final CIPData usint = new CIPData(Type.USINT, new byte[] { (byte) 200 });
+        assertThat(usint.getInt(0), equalTo(200));
+        assertThat(usint.isNumeric(), equalTo(true));
+
+        assertThat(Type.forCode((short) 0xCB), equalTo(Type.LREAL));
+        assertThat(Type.forCode((short) 0x02A0), equalTo(Type.STRUCT));
+        try
+        {
+            Type.forCode((short) 0xD0);
+            Assert.fail("Unknown type code not detected");
+        }
+        catch (final Exception ex)
+        {
+            assertThat(ex.getMessage(), equalTo("Unknown CIP type code 0xd0"));
+        }
+    }
 }
@@ -9,6 +9,7 @@ package etherip.types;
 
 import static etherip.types.CNPath.Identity;
 import static etherip.types.CNPath.Symbol;
+import static etherip.types.CNPath.SymbolInstance;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
@@ -68,4 +69,72 @@ public class CNPathTest
         assertThat(Hexdump.toCompactHexdump(buf), equalTo(
                 "0000 - 05 91 07 6D 79 5F 74 61 67 32 00 - ...my_tag2."));
     }
+
+    @Test
+    public void testSymbolInstancePath() throws Exception
+    {
+        CNPath path = SymbolInstance(0x12, "my_tag");
+        System.out.println(path.toString());
+        final ByteBuffer buf = ByteBuffer.allocate(20);
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf),
+                equalTo("0000 - 02 20 6B 24 12 - . k$."));
+
+        // 16 bit instance, array element and member
+        path = SymbolInstance(0x1234, "my_tag[2].x");
+        System.out.println(path.toString());
+        assertThat(path.getRequestSize(), equalTo(6 + 2 + 4));
+        buf.clear();
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf),
+                equalTo("0000 - 06 20 6B 25 00 34 12 28 02 91 01 78 00 - . k%.4.(...x."));
+    }
+
+    @Test
+    public void testSymbolPathCache() throws Exception
+    {
+        // Paths are immutable and shared
+        final CNPath path = Symbol("my_tag[3].member");
+        assertThat(Symbol("my_tag[3].member") == path, equalTo(true));
+        assertThat(path.getRequestSize(), equalTo(8 + 2 + 8));
+
+        final ByteBuffer buf = ByteBuffer.allocate(30);
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf), equalTo(
+                "0000 - 09 91 06 6D 79 5F 74 61 67 28 03 91 06 6D 65 6D - ...my_tag(...mem\n" +
+                "0010 - 62 65 72 - ber"));
+    }
+
+    @Test
+    public void testArrayIndex() throws Exception
+    {
+        // 8, 16 and 32 bit element segments
+        final ByteBuffer buf = ByteBuffer.allocate(40);
+        CNPath path = Symbol("a[300]");
+        System.out.println(path);
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf),
+                equalTo("0000 - 04 91 01 61 00 29 00 2C 01 - ...a.).,."));
+
+        path = Symbol("a[70000]");
+        buf.clear();
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf),
+                equalTo("0000 - 05 91 01 61 00 2A 00 70 11 01 00 - ...a.*.p..."));
+
+        // Multi-dimensional
+        path = Symbol("Tbl[3, 7].x");
+        System.out.println(path);
+        assertThat(path.toString(), equalTo("Path Symbol(0x91) 'Tbl[3,7]', 0x00, 'x', 0x00"));
+        buf.clear();
+        path.encode(buf, null);
+        buf.flip();
+        assertThat(Hexdump.toCompactHexdump(buf),
+                equalTo("0000 - 07 91 03 54 62 6C 00 28 03 28 07 91 01 78 00 - ...Tbl.(.(...x."));
+    }
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package etherip.types;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Test;
+
+import etherip.TestSettings;
+import etherip.protocol.Connection;
+import etherip.util.Hexdump;
+
+/**
+ * JUnit test of {@link Template}
+ *
+ * @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class TemplateTest
+{
+    /** @return Template for structure { DINT a; BOOL b; REAL c[2]; } */
+    private static Template createTemplate() throws Exception
+    {
+        final ByteBuffer definition = ByteBuffer.allocate(200);
+        definition.order(Connection.BYTE_ORDER);
+        // Hidden host for BOOL
+        definition.putShort((short) 0).putShort((short) 0xC2).putInt(4);
+        definition.putShort((short) 0).putShort((short) 0xC4).putInt(0);
+        definition.putShort((short) 3).putShort((short) 0xC1).putInt(4);
+        definition.putShort((short) 2).putShort((short) 0x20CA).putInt(8);
+        for (String name : new String[] { "Test;n", "ZZZZZZZZZZTest0", "a", "b", "c" })
+        {
+            definition.put(name.getBytes());
+            definition.put((byte) 0);
+        }
+        definition.flip();
+        return Template.decode(0x123, (short) 0xABCD, 4, 16, definition);
+    }
+
+    @Test
+    public void testTemplate() throws Exception
+    {
+        final Template template = createTemplate();
+        System.out.println(template);
+        assertThat(template.getName(), equalTo("Test"));
+        assertThat(template.getMembers().size(), equalTo(4));
+        assertThat(template.getMember("c").getElementCount(), equalTo(2));
+        assertThat(template.getMemberSize(template.getMember("c")), equalTo(8));
+    }
+
+    @Test
+    public void testStructure() throws Exception
+    {
+        final Template template = createTemplate();
+        // Structure data as read: Handle, a=42, host byte with bit 3, pad, c = { 1.5, -2 }
+        final ByteBuffer raw = ByteBuffer.allocate(2 + 16);
+        raw.order(Connection.BYTE_ORDER);
+        raw.putShort((short) 0xABCD);
+        raw.putInt(42);
+        raw.put((byte) 0x08).put((byte) 0).putShort((short) 0);
+        raw.putFloat(1.5f).putFloat(-2.0f);
+        final CIPData data = new CIPData(CIPData.Type.STRUCT, raw.array());
+        assertThat(data.getElementCount(), equalTo(1));
+        System.out.println(data);
+
+        final Map<String, CIPData> members = data.getMembers(template);
+        System.out.println(members);
+        assertThat(members.get("a").getNumber(0), equalTo((Number) Integer.valueOf(42)));
+        assertThat(members.get("b").getNumber(0), equalTo((Number) Byte.valueOf((byte) 1)));
+        assertThat(members.get("c").getElementCount(), equalTo(2));
+        assertThat(members.get("c").getNumber(1), equalTo((Number) Float.valueOf(-2.0f)));
+
+        // Encode for writing: Type, handle, elements, data
+        final ByteBuffer buf = TestSettings.getBuffer();
+        data.encode(buf);
+        buf.flip();
+        final String dump = Hexdump.toHexdump(buf);
+        System.out.println(dump);
+        assertThat(dump.substring(0, 30), equalTo("0000 - A0 02 CD AB 01 00 2A 00"));
+    }
+
+    @Test
+    public void testStructureArray() throws Exception
+    {
+        // Creating the template registers the size of its structure
+        createTemplate();
+        assertThat(Template.getStructureSize((short) 0xABCD), equalTo(16));
+
+        // Array of 3 structures as read: Handle, data
+        final ByteBuffer raw = ByteBuffer.allocate(2 + 3 * 16);
+        raw.order(Connection.BYTE_ORDER);
+        raw.putShort((short) 0xABCD);
+        for (int i=0; i<3; ++i)
+            raw.putInt(i).putInt(0).putFloat(0).putFloat(0);
+        final CIPData data = new CIPData(CIPData.Type.STRUCT, raw.array());
+        assertThat(data.getElementCount(), equalTo(3));
+
+        // Encoded with the element count
+        final ByteBuffer buf = TestSettings.getBuffer();
+        data.encode(buf);
+        buf.flip();
+        assertThat(Hexdump.toHexdump(buf).substring(0, 30), equalTo("0000 - A0 02 CD AB 03 00 00 00"));
+
+        // Size of the predefined STRING is known, other structures are handled as one element
+        final byte[] text = new byte[2 + 88];
+        text[0] = (byte) 0xCE;
+        text[1] = 0x0F;
+        assertThat(new CIPData(CIPData.Type.STRUCT, text).getElementCount(), equalTo(1));
+        final byte[] unknown = new byte[2 + 32];
+        unknown[0] = 0x34;
+        unknown[1] = 0x12;
+        assertThat(new CIPData(CIPData.Type.STRUCT, unknown).getElementCount(), equalTo(1));
+    }
+}